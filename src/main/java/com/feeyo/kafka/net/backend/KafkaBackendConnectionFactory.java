@@ -37,6 +37,7 @@ public class KafkaBackendConnectionFactory implements BackendConnectionFactory {
 		c.setIdleTimeout( NetSystem.getInstance().getNetConfig().getBackendIdleTimeout() );
 		
 		// 连接 
+		physicalNode.addConnection( c );
 		NetSystem.getInstance().getConnector().postConnect(c);
 		return c;
 	}
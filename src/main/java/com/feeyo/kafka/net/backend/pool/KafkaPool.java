@@ -299,7 +299,7 @@ public class KafkaPool extends AbstractPool {
 			long heartbeatTime = TimeUtil.currentTimeMillis() - timeout;
 			long closeTime = TimeUtil.currentTimeMillis() - (timeout * 2);
 
-			LinkedList<BackendConnection> heartBeatCons = getNeedHeartbeatCons(physicalNode.conQueue.getCons(),
+			LinkedList<BackendConnection> heartBeatCons = getNeedHeartbeatCons(physicalNode.conQueue,
 					heartbeatTime, closeTime);
 			if (!heartBeatCons.isEmpty()) {
 				for (BackendConnection conn : heartBeatCons) {
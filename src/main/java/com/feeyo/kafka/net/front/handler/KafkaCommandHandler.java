@@ -96,7 +96,7 @@ public class KafkaCommandHandler extends AbstractCommandHandler {
 		}
 		
 		byte[] requestKey = request.getArgs()[1];
-		String cmd = new String(request.getArgs()[0]).toUpperCase();
+		String cmd = request.getCmd();
 		
 		// 埋点
 		frontCon.getSession().setRequestTimeMills(TimeUtil.currentTimeMillis());
@@ -137,12 +137,16 @@ public class ConfigLoader {
 				int isAdmin = getIntAttribute(nameNodeMap, "isAdmin", 0);				
 				boolean isReadonly = getBooleanAttribute(nameNodeMap, "readonly", false);
 				boolean isFlowlimit = getBooleanAttribute(nameNodeMap, "flowlimit", false);
+				boolean isReadReplica = getBooleanAttribute(nameNodeMap, "readReplica", false);
 					
 				PoolCfg poolCfg = poolMap.get(poolId);
 				int poolType = poolCfg.getType();
 				
 				UserCfg userCfg = new UserCfg(poolId, poolType, password, prefix, selectDb, isAdmin == 0 ? false : true, 
-						isReadonly, isFlowlimit);
+						isReadonly, isFlowlimit, isReadReplica);
+				userCfg.setNearCache(getAttribute(nameNodeMap, "nearCache", null), getIntAttribute(nameNodeMap, "nearCacheTtl", 3000));
+				userCfg.setRateLimit(getLongAttribute(nameNodeMap, "opsLimit", 0), getLongAttribute(nameNodeMap, "writeOpsLimit", 0), 
+						getLongAttribute(nameNodeMap, "bytesLimit", 0), getIntAttribute(nameNodeMap, "limitBurst", 1000));
 				
 				map.put(password, userCfg);
 			}
@@ -260,6 +264,10 @@ public class ConfigLoader {
 		return getIntValue(map.getNamedItem(attr), defaultVal);
 	}
 	
+	private static long getLongAttribute(NamedNodeMap map, String attr, long defaultVal) {
+		return getLongValue(map.getNamedItem(attr), defaultVal);
+	}
+	
 	static short getShortAttribute(NamedNodeMap map, String attr, short defaultVal) {
 		return getShortValue(map.getNamedItem(attr), defaultVal);
 	}
@@ -277,6 +285,10 @@ public class ConfigLoader {
 		return node == null ? defaultVal : Integer.valueOf(node.getNodeValue());
 	}
 	
+	private static long getLongValue(Node node, long defaultVal) {
+		return node == null ? defaultVal : Long.valueOf(node.getNodeValue());
+	}
+	
 	private static short getShortValue(Node node, short defaultVal) {
 		return node == null ? defaultVal : Short.valueOf(node.getNodeValue());
 	}
@@ -12,6 +12,7 @@ public class UserCfg {
 	private int selectDb;
 	private boolean isAdmin = false;
 	private boolean isReadonly = false;
+	private boolean isReadReplica = false;		// 集群池读指令优先路由到从节点
 	
 	// 通过管理指令 use pool 改变
 	private int usePoolId;
@@ -19,8 +20,18 @@ public class UserCfg {
 	
 	private boolean isFlowLimit = false;
 	
+	// 近端缓存的 key 前缀白名单 (已拼接用户前缀)， null 不启用
+	private byte[][] nearCachePrefixes;
+	private int nearCacheTtl = 3000;
+	
+	// 限流， 每秒指令数、 写指令数、 入口字节数， 0 不限； burst 为空闲时可积累的时长
+	private long opsLimit = 0;
+	private long writeOpsLimit = 0;
+	private long bytesLimit = 0;
+	private int limitBurst = 1000;
+	
 	public UserCfg(int poolId, int poolType, String password,  String prefix, 
-			int selectDb, boolean isAdmin, boolean isReadonly, boolean isFlowLimit) {
+			int selectDb, boolean isAdmin, boolean isReadonly, boolean isFlowLimit, boolean isReadReplica) {
 		super();
 		this.poolId = poolId;
 		this.poolType = poolType;
@@ -29,6 +40,7 @@ public class UserCfg {
 		this.selectDb = selectDb;
 		this.isAdmin = isAdmin;
 		this.isReadonly = isReadonly;
+		this.isReadReplica = isReadReplica;
 		
 		this.usePoolId = poolId;
 		this.usePoolType = poolType;
@@ -69,6 +81,10 @@ public class UserCfg {
 		return isReadonly;
 	}
 
+	public boolean isReadReplica() {
+		return isReadReplica;
+	}
+
 	public void setUsePool(int poolId, int poolType) {
 		this.usePoolId = poolId;
 		this.usePoolType = poolType;
@@ -78,6 +94,63 @@ public class UserCfg {
 	public boolean isFlowLimit() {
 		return isFlowLimit;
 	}
+	
+	/**
+	 * prefixes 以逗号分隔， 为空不启用
+	 */
+	public void setNearCache(String prefixes, int ttl) {
+		this.nearCacheTtl = ttl;
+		if ( prefixes == null || prefixes.trim().equals("") ) {
+			this.nearCachePrefixes = null;
+			return;
+		}
+		
+		String[] arr = prefixes.split(",");
+		byte[][] prefixBytes = new byte[ arr.length ][];
+		for (int i = 0; i < arr.length; i++) {
+			String p = arr[i].trim();
+			prefixBytes[i] = prefix == null ? p.getBytes() : (new String(prefix) + p).getBytes();
+		}
+		this.nearCachePrefixes = prefixBytes;
+	}
+	
+	public byte[][] getNearCachePrefixes() {
+		return nearCachePrefixes;
+	}
+
+	public int getNearCacheTtl() {
+		return nearCacheTtl;
+	}
+
+	public void setRateLimit(long opsLimit, long writeOpsLimit, long bytesLimit, int limitBurst) {
+		if ( isAdmin ) {
+			return;
+		}
+		this.opsLimit = opsLimit;
+		this.writeOpsLimit = writeOpsLimit;
+		this.bytesLimit = bytesLimit;
+		this.limitBurst = limitBurst;
+	}
+	
+	public boolean isRateLimit() {
+		return opsLimit > 0 || writeOpsLimit > 0 || bytesLimit > 0;
+	}
+	
+	public long getOpsLimit() {
+		return opsLimit;
+	}
+
+	public long getWriteOpsLimit() {
+		return writeOpsLimit;
+	}
+
+	public long getBytesLimit() {
+		return bytesLimit;
+	}
+
+	public int getLimitBurst() {
+		return limitBurst;
+	}
 
 	@Override
 	public int hashCode() {
@@ -107,6 +180,7 @@ public class UserCfg {
 	            && other.getPoolId() == poolId
 	            && other.getPoolType() == poolType
 	            && other.getSelectDb() == selectDb
+	            && other.isReadReplica() == isReadReplica
 	            && Arrays.equals(other.getPrefix(), prefix)) {
 	        return true;
 	    } else {
@@ -14,9 +14,13 @@ import com.feeyo.kafka.net.backend.broker.offset.BrokerOffsetService;
 import com.feeyo.redis.config.ConfigLoader;
 import com.feeyo.redis.config.PoolCfg;
 import com.feeyo.redis.config.UserCfg;
+import com.feeyo.redis.engine.manage.metrics.MetricsServer;
 import com.feeyo.redis.net.backend.pool.AbstractPool;
 import com.feeyo.redis.net.backend.pool.PoolFactory;
+import com.feeyo.redis.net.backend.pool.cluster.ClusterSlotCalculator;
 import com.feeyo.redis.net.front.RedisFrontendConnectionFactory;
+import com.feeyo.redis.net.front.cache.NearCache;
+import com.feeyo.redis.net.front.ratelimit.UserRateLimiter;
 import com.feeyo.redis.nio.NIOAcceptor;
 import com.feeyo.redis.nio.NIOConnector;
 import com.feeyo.redis.nio.NIOReactor;
@@ -26,6 +30,8 @@ import com.feeyo.redis.nio.NetSystem;
 import com.feeyo.redis.nio.SystemConfig;
 import com.feeyo.redis.nio.buffer.BufferPool;
 import com.feeyo.redis.nio.buffer.bucket.BucketBufferPool;
+import com.feeyo.redis.nio.buffer.page.PageBufferPool;
+import com.feeyo.redis.nio.buffer.reactor.ReactorBufferPool;
 import com.feeyo.redis.virtualmemory.VirtualMemoryService;
 import com.feeyo.util.ExecutorUtil;
 import com.feeyo.util.keepalived.KeepAlived;
@@ -45,6 +51,8 @@ public class RedisEngineCtx {
 	
 	private volatile NetFlowMonitor flowMonitor;
 	
+	private MetricsServer metricsServer;
+	
 	// 
 	private volatile Map<String, NIOReactor> reactorMap = new HashMap<String, NIOReactor>();
 	
@@ -73,6 +81,7 @@ public class RedisEngineCtx {
 			this.serverMap = ConfigLoader.loadServerMap( ConfigLoader.buidCfgAbsPathFor("server.xml") );
 			this.poolCfgMap = ConfigLoader.loadPoolMap( ConfigLoader.buidCfgAbsPathFor("pool.xml") );
 			this.userMap = ConfigLoader.loadUserMap(poolCfgMap, ConfigLoader.buidCfgAbsPathFor("user.xml") );
+			UserRateLimiter.reload( this.userMap );
 			this.mailProperty = ConfigLoader.loadMailProperties(ConfigLoader.buidCfgAbsPathFor("mail.properties"));
 		} catch (Exception e) {
 			throw e;
@@ -82,6 +91,7 @@ public class RedisEngineCtx {
 		// ---------------------------------------------------------------------------		
 	    String portString = this.serverMap.get("port");
         String reactorSizeString = this.serverMap.get("reactorSize");
+        String reactorTypeString = this.serverMap.get("reactorType");
         String minBufferSizeString = this.serverMap.get("minBufferSize");
         String maxBufferSizeString = this.serverMap.get("maxBufferSize");
         String decomposeBufferSizeString = this.serverMap.get("decomposeBufferSize");
@@ -90,6 +100,7 @@ public class RedisEngineCtx {
         String incrementString = this.serverMap.get("increment"); 
         String maxChunkSizeString = this.serverMap.get("maxChunkSize"); 
         String bufferLocalPercentString = this.serverMap.get("bufferLocalPercent"); 
+        String bufferPoolTypeString = this.serverMap.get("bufferPoolType"); 
         
         String bossSizeString = this.serverMap.get("bossSize");
         String timerSizeString = this.serverMap.get("timerSize"); 
@@ -132,12 +143,20 @@ public class RedisEngineCtx {
         int bossSize = bossSizeString == null ? 10 : Integer.parseInt( bossSizeString ); 
         int timerSize = timerSizeString == null ? 6 : Integer.parseInt( timerSizeString ); 
 
-        //PageBufferPool BucketBufferPool
-        this.bufferPool = new BucketBufferPool(minBufferSize, maxBufferSize, decomposeBufferSize,
-        		minChunkSize, increments, maxChunkSize, threadLocalPercent);   
-        
-//        this.bufferPool = new PageBufferPool(minBufferSize, maxBufferSize, decomposeBufferSize,
-//        		minChunkSize, increments, maxChunkSize);
+        // bucket、page、reactor
+        String bufferPoolType = bufferPoolTypeString == null ? "bucket" : bufferPoolTypeString.trim();
+        if ( "reactor".equalsIgnoreCase( bufferPoolType ) ) {
+        	this.bufferPool = new ReactorBufferPool(minBufferSize, maxBufferSize, decomposeBufferSize,
+            		minChunkSize, increments, maxChunkSize, threadLocalPercent);
+        	
+        } else if ( "page".equalsIgnoreCase( bufferPoolType ) ) {
+        	this.bufferPool = new PageBufferPool(minBufferSize, maxBufferSize, decomposeBufferSize,
+            		minChunkSize, increments, maxChunkSize);
+        	
+        } else {
+        	this.bufferPool = new BucketBufferPool(minBufferSize, maxBufferSize, decomposeBufferSize,
+            		minChunkSize, increments, maxChunkSize, threadLocalPercent);   
+        }
        
         this.virtualMemoryService = new VirtualMemoryService();
         this.virtualMemoryService.start();
@@ -149,19 +168,85 @@ public class RedisEngineCtx {
         int frontIdleTimeout = frontIdleTimeoutString == null ? 5 * 60 * 1000: Integer.parseInt( frontIdleTimeoutString );
         int backendIdleTimeout = backendIdleTimeoutString == null ? 30 * 60 * 1000: Integer.parseInt( backendIdleTimeoutString );
         
+        String zeroCopyDecodeString = this.serverMap.get("zeroCopyDecode");
+        int zeroCopyDecode = zeroCopyDecodeString == null ? 0 : Integer.parseInt( zeroCopyDecodeString );
+        
+        String writeCorkString = this.serverMap.get("writeCork");
+        int writeCork = writeCorkString == null ? 0 : Integer.parseInt( writeCorkString );
+        
+        String backendReactorAffinityString = this.serverMap.get("backendReactorAffinity");
+        int backendReactorAffinity = backendReactorAffinityString == null ? 0 : Integer.parseInt( backendReactorAffinityString );
+        
+        String backendMultiplexString = this.serverMap.get("backendMultiplex");
+        int backendMultiplex = backendMultiplexString == null ? 0 : Integer.parseInt( backendMultiplexString );
+        
+        String singleFlightString = this.serverMap.get("singleFlight");
+        int singleFlight = singleFlightString == null ? 0 : Integer.parseInt( singleFlightString );
+        
+        // 集群热点 key 的 slot 缓存
+        String slotCacheSizeString = this.serverMap.get("slotCacheSize");
+        int slotCacheSize = slotCacheSizeString == null ? 0 : Integer.parseInt( slotCacheSizeString );
+        ClusterSlotCalculator.setCacheSize( slotCacheSize );
+        
+        // 近端缓存， 字节数
+        String nearCacheSizeString = this.serverMap.get("nearCacheSize");
+        long nearCacheSize = nearCacheSizeString == null ? 0 : Long.parseLong( nearCacheSizeString );
+        NearCache.init( nearCacheSize );
+        
+        // 集群从节点读， 复制延迟阈值
+        String replicaMaxLagString = this.serverMap.get("replicaMaxLag");
+        long replicaMaxLag = replicaMaxLagString == null ? 1024 * 1024 : Long.parseLong( replicaMaxLagString );
+        
+        // MGET/MSET/DEL 扇出， 节点期限及失败处理
+        String segmentNodeTimeoutString = this.serverMap.get("segmentNodeTimeout");
+        int segmentNodeTimeout = segmentNodeTimeoutString == null ? 0 : Integer.parseInt( segmentNodeTimeoutString );
+        
+        String segmentNilOnFailureString = this.serverMap.get("segmentNilOnFailure");
+        int segmentNilOnFailure = segmentNilOnFailureString == null ? 0 : Integer.parseInt( segmentNilOnFailureString );
+        
+        // pipeline 应答暂存， 小应答放 buffer， 超大或超出预算写入虚拟内存
+        String pipelineSpillThresholdString = this.serverMap.get("pipelineSpillThreshold");
+        int pipelineSpillThreshold = pipelineSpillThresholdString == null ? 16 * 1024 : Integer.parseInt( pipelineSpillThresholdString );
+        
+        String pipelineMemoryBudgetString = this.serverMap.get("pipelineMemoryBudget");
+        long pipelineMemoryBudget = pipelineMemoryBudgetString == null ? 64 * 1024 * 1024 : Long.parseLong( pipelineMemoryBudgetString );
+        
+        // 写队列水位， 慢客户端积压应答时暂停读取其请求及对应后端的应答
+        String writeQueueHighWatermarkString = this.serverMap.get("writeQueueHighWatermark");
+        String writeQueueLowWatermarkString = this.serverMap.get("writeQueueLowWatermark");
+        long writeQueueHighWatermark = writeQueueHighWatermarkString == null ? 4 * 1024 * 1024 : Long.parseLong( writeQueueHighWatermarkString );
+        long writeQueueLowWatermark = writeQueueLowWatermarkString == null ? 1024 * 1024 : Long.parseLong( writeQueueLowWatermarkString );
+        if ( writeQueueLowWatermark > writeQueueHighWatermark ) {
+        	writeQueueLowWatermark = writeQueueHighWatermark;
+        }
+        
         SystemConfig systemConfig = new SystemConfig();
         systemConfig.setFrontIdleTimeout(  frontIdleTimeout );
         systemConfig.setBackendIdleTimeout( backendIdleTimeout );
+        systemConfig.setFrontZeroCopyDecode( zeroCopyDecode );
+        systemConfig.setFrontWriteCork( writeCork );
+        systemConfig.setBackendReactorAffinity( backendReactorAffinity );
+        systemConfig.setBackendMultiplex( backendMultiplex );
+        systemConfig.setSingleFlight( singleFlight );
+        systemConfig.setReplicaMaxLag( replicaMaxLag );
+        systemConfig.setSegmentNodeTimeout( segmentNodeTimeout );
+        systemConfig.setSegmentNilOnFailure( segmentNilOnFailure );
+        systemConfig.setPipelineSpillThreshold( pipelineSpillThreshold );
+        systemConfig.setPipelineMemoryBudget( pipelineMemoryBudget );
+        systemConfig.setWriteQueueHighWatermark( writeQueueHighWatermark );
+        systemConfig.setWriteQueueLowWatermark( writeQueueLowWatermark );
         NetSystem.getInstance().setNetConfig( systemConfig );
         
         // output
-        System.out.println( String.format("processors=%s, reactorSize=%s, bossSize=%s, timerSize=%s, frontIdleTimeout=%s, backendIdleTimeout=%s", 
-        		processors, reactorSize, bossSize, timerSize, frontIdleTimeout, backendIdleTimeout) );
+        System.out.println( String.format("processors=%s, reactorSize=%s, bossSize=%s, timerSize=%s, frontIdleTimeout=%s, backendIdleTimeout=%s, bufferPoolType=%s", 
+        		processors, reactorSize, bossSize, timerSize, frontIdleTimeout, backendIdleTimeout, bufferPoolType) );
         
         
         // 2、 NIO 反应器配置 
 		// ---------------------------------------------------------------------------
-        NIOReactorPool reactorPool = new NIOReactorPool(BufferPool.LOCAL_BUF_THREAD_PREX + "NioReactor", reactorSize);        
+        // default、spin
+        boolean isSpinReactor = reactorTypeString != null && "spin".equalsIgnoreCase( reactorTypeString.trim() );
+        NIOReactorPool reactorPool = new NIOReactorPool(BufferPool.LOCAL_BUF_THREAD_PREX + "NioReactor", reactorSize, isSpinReactor);        
         NIOReactor[] reactors = reactorPool.getAllReactors();
         for (NIOReactor r : reactors) {
 			this.reactorMap.put(r.getName(), r);
@@ -208,6 +293,14 @@ public class RedisEngineCtx {
         acceptor.start();
         LOGGER.info( acceptor.getName() + " is started and listening on {}", acceptor.getPort());
         
+        // 5.1 OpenMetrics 输出
+        String metricsPortString = this.serverMap.get("metricsPort");
+        int metricsPort = metricsPortString == null ? 0 : Integer.parseInt( metricsPortString );
+        if ( metricsPort > 0 ) {
+        	this.metricsServer = new MetricsServer( metricsPort );
+        	this.metricsServer.start();
+        }
+        
         
         // 6, keepalive hook
         Iterator<String> it = userMap.keySet().iterator();
@@ -286,6 +379,7 @@ public class RedisEngineCtx {
 				this.poolMap = newPoolMap;
 				this.userMap = newUserMap;
 				this.serverMap = newServerMap;
+				UserRateLimiter.reload( this.userMap );
 				this.mailProperty = newMailProperty;
 				
 				// server.xml 部分设置生效
@@ -340,6 +434,7 @@ public class RedisEngineCtx {
 			
 			// 切换 new
 			this.userMap = newUserMap;	
+			UserRateLimiter.reload( this.userMap );
 			
 		} catch (Exception e) {
 			StringBuffer sb = new StringBuffer();
@@ -33,6 +33,9 @@ import com.feeyo.redis.engine.manage.stat.BigKeyCollector.BigKey;
 import com.feeyo.redis.engine.manage.stat.BigLengthCollector.BigLength;
 import com.feeyo.redis.engine.manage.stat.CmdAccessCollector.Command;
 import com.feeyo.redis.engine.manage.stat.CmdAccessCollector.UserCommand;
+import com.feeyo.redis.engine.manage.stat.HotKeyCollector.HotKey;
+import com.feeyo.redis.engine.manage.stat.LatencyCollector.Latency;
+import com.feeyo.redis.engine.manage.stat.LatencyHistogram.Snapshot;
 import com.feeyo.redis.engine.manage.stat.NetFlowCollector.UserNetFlow;
 import com.feeyo.redis.engine.manage.stat.SlowKeyColletor.SlowKey;
 import com.feeyo.redis.engine.manage.stat.StatUtil;
@@ -46,12 +49,14 @@ import com.feeyo.redis.net.backend.pool.cluster.ClusterNode;
 import com.feeyo.redis.net.backend.pool.cluster.RedisClusterPool;
 import com.feeyo.redis.net.codec.RedisRequest;
 import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.net.front.handler.SingleFlight;
 import com.feeyo.redis.nio.AbstractConnection;
 import com.feeyo.redis.nio.NetSystem;
 import com.feeyo.redis.nio.buffer.BufferPool;
 import com.feeyo.redis.nio.buffer.bucket.AbstractBucket;
 import com.feeyo.redis.nio.buffer.bucket.BucketBufferPool;
 import com.feeyo.redis.nio.buffer.page.PageBufferPool;
+import com.feeyo.redis.nio.buffer.reactor.ReactorBufferPool;
 import com.feeyo.util.JavaUtils;
 import com.feeyo.util.ProtoUtils;
 import com.feeyo.util.ShellUtils;
@@ -117,6 +122,9 @@ public class Manage {
 	 *  SHOW BIGKEY
 	 *  SHOW BIGLENGTH
 	 *  SHOW SLOWKEY
+	 *  SHOW COALESCE
+	 *  SHOW HOTKEY [USER]
+	 *  SHOW LATENCY [CMD|USER|NODE]
 	 *  
 	 *  SHOW CMD
 	 *  SHOW USER_CMD
@@ -530,6 +538,32 @@ public class Manage {
 						lines.add( "maxBufferSize=" + JavaUtils.bytesToString2( maxBufferSize ) );
 						lines.add( "usedBufferSize=" + JavaUtils.bytesToString2( usedforNetwork ) );
 
+						return encode( lines );
+						
+					} else if ( bufferPool instanceof ReactorBufferPool ) {
+						
+						List<String> lines = new ArrayList<String>();
+						
+						ReactorBufferPool p = (ReactorBufferPool) bufferPool;
+						for (ReactorBufferPool.ReactorCache cache : p.getReactorCaches()) {
+							long hit = cache.getHit();
+							long miss = cache.getMiss();
+							
+							StringBuffer sBuffer = new StringBuffer();
+							sBuffer.append("reactor=").append( cache.getThreadName() ).append(", ");
+							sBuffer.append("hit=").append( hit ).append(", ");
+							sBuffer.append("miss=").append( miss ).append(", ");
+							sBuffer.append("hitRate=").append( hit + miss == 0 ? 0 : hit * 100 / (hit + miss) ).append("%, ");
+							sBuffer.append("cached=").append( cache.getCachedCount() );
+							lines.add( sBuffer.toString() );
+						}
+						
+						lines.add( "magazineSize=" + p.getMagazineSize() + ", batchSize=" + p.getBatchSize() );
+						lines.add( "minBufferSize=" + JavaUtils.bytesToString2( minBufferSize ) );
+						lines.add( "maxBufferSize=" + JavaUtils.bytesToString2( maxBufferSize ) );
+						lines.add( "usedBufferSize=" + JavaUtils.bytesToString2( usedBufferSize ) );
+						lines.add( "shared=" + sharedOptsCount );
+						
 						return encode( lines );
 					}
 					
@@ -855,6 +889,8 @@ public class Manage {
 					titleLine.append("MaxCon").append("   ");
 					titleLine.append("IdlCon").append("   ");
 					titleLine.append("ActiveCon").append("   ");
+					titleLine.append("ConnectingCon").append("   ");
+					titleLine.append("TotalCon").append("   ");
 					titleLine.append("ClusterNodeState");
 					list.add(titleLine.toString());
 					
@@ -874,7 +910,9 @@ public class Manage {
 							sb.append(physicalNode.getMinCon()).append("       ");
 							sb.append(physicalNode.getMaxCon()).append("       ");
 							sb.append(physicalNode.getIdleCount()).append("          ");
-							sb.append(physicalNode.getActiveCount());
+							sb.append(physicalNode.getBorrowedCount()).append("          ");
+							sb.append(physicalNode.getConnectingCount()).append("          ");
+							sb.append(physicalNode.getTotalCount());
 							list.add(sb.toString());
 							
 						} else if ( pool instanceof RedisClusterPool ) {
@@ -891,7 +929,9 @@ public class Manage {
 								sb.append(physicalNode.getMinCon()).append("       ");
 								sb.append(physicalNode.getMaxCon()).append("       ");
 								sb.append(physicalNode.getIdleCount()).append("       ");
-								sb.append(physicalNode.getActiveCount()).append("          ");;
+								sb.append(physicalNode.getBorrowedCount()).append("          ");
+								sb.append(physicalNode.getConnectingCount()).append("          ");
+								sb.append(physicalNode.getTotalCount()).append("          ");
 								sb.append(!clusterNode.isFail());
 								clusterInfo.add(sb.toString());
 								sb.append(clusterNode.getConnectInfo());
@@ -910,7 +950,9 @@ public class Manage {
 								sb.append(physicalNode.getMinCon()).append("       ");
 								sb.append(physicalNode.getMaxCon()).append("       ");
 								sb.append(physicalNode.getIdleCount()).append("          ");
-								sb.append(physicalNode.getActiveCount());
+								sb.append(physicalNode.getBorrowedCount()).append("          ");
+								sb.append(physicalNode.getConnectingCount()).append("          ");
+								sb.append(physicalNode.getTotalCount());
 								list.add(sb.toString());
 							}
 							
@@ -979,6 +1021,69 @@ public class Manage {
 						lines.add(line1.toString());
 					}
 					return encode(lines);
+				
+				// SHOW HOTKEY [USER]
+				} else if (arg2.equalsIgnoreCase("HOTKEY") && (numArgs == 2 || numArgs == 3) ) {
+					String user = numArgs == 3 ? new String( request.getArgs()[2] ) : null;
+					
+					List<String> lines = new ArrayList<String>();
+					StringBuffer titleLine = new StringBuffer();
+					titleLine.append("user").append(",  ");
+					titleLine.append("rank").append(",  ");
+					titleLine.append("key").append(",  ");
+					titleLine.append("qps").append(",  ");
+					titleLine.append("bytes/s");
+					lines.add(titleLine.toString());
+					
+					addHotKeyLines(lines, "by qps", StatUtil.getHotKeysByCount(), user);
+					addHotKeyLines(lines, "by bytes", StatUtil.getHotKeysByBytes(), user);
+					return encode(lines);
+					
+				// SHOW LATENCY [CMD|USER|NODE]
+				} else if (arg2.equalsIgnoreCase("LATENCY") && (numArgs == 2 || numArgs == 3) ) {
+					String type = numArgs == 3 ? new String( request.getArgs()[2] ).toUpperCase() : null;
+					
+					List<String> lines = new ArrayList<String>();
+					StringBuffer titleLine = new StringBuffer();
+					titleLine.append("type").append(",  ");
+					titleLine.append("name").append(",  ");
+					titleLine.append("time").append(",  ");
+					titleLine.append("count").append(",  ");
+					titleLine.append("p50").append(",  ");
+					titleLine.append("p99").append(",  ");
+					titleLine.append("p999").append(",  ");
+					titleLine.append("max");
+					lines.add(titleLine.toString());
+					
+					if ( type == null || type.equals("CMD") ) {
+						addLatencyLines(lines, "cmd", StatUtil.getCmdLatencys());
+					}
+					if ( type == null || type.equals("USER") ) {
+						addLatencyLines(lines, "user", StatUtil.getUserLatencys());
+					}
+					if ( type == null || type.equals("NODE") ) {
+						addLatencyLines(lines, "node", StatUtil.getNodeLatencys());
+					}
+					return encode(lines);
+					
+				// SHOW COALESCE
+				} else if (arg2.equalsIgnoreCase("COALESCE")) {
+					List<String> lines = new ArrayList<String>();
+					StringBuffer titleLine = new StringBuffer();
+					titleLine.append("cmd").append(",  ");
+					titleLine.append("coalesced");
+					lines.add(titleLine.toString());
+					for (Entry<String, AtomicLong> entry : StatUtil.getCoalescedCountMap().entrySet()) {
+						StringBuffer line1 = new StringBuffer();
+						line1.append(entry.getKey()).append(", ");
+						line1.append(entry.getValue().get());
+						lines.add(line1.toString());
+					}
+					StringBuffer line2 = new StringBuffer();
+					line2.append("inflight").append(", ");
+					line2.append(SingleFlight.getFlightCount());
+					lines.add(line2.toString());
+					return encode(lines);
 					
 				// SHOW TOPIC 
 				} else if (arg2.equalsIgnoreCase("TOPIC") && (numArgs == 3 || numArgs == 2) ) {
@@ -1184,6 +1289,51 @@ public class Manage {
 		return "-ERR Not supported. \r\n".getBytes();
 	}
 	
+	// 上一个完整统计周期的耗时分布
+	private static void addLatencyLines(List<String> lines, String type, Map<String, Latency> latencyMap) {
+		for (Entry<String, Latency> entry : latencyMap.entrySet()) {
+			addLatencyLine(lines, type, entry.getKey(), "proc", entry.getValue().procHistogram.getLast());
+			addLatencyLine(lines, type, entry.getKey(), "wait", entry.getValue().waitHistogram.getLast());
+		}
+	}
+	
+	private static void addLatencyLine(List<String> lines, String type, String name, String time, Snapshot snapshot) {
+		if ( snapshot.getTotalCount() == 0 ) {
+			return;
+		}
+		
+		StringBuffer line = new StringBuffer();
+		line.append(type).append(", ");
+		line.append(name).append(", ");
+		line.append(time).append(", ");
+		line.append(snapshot.getTotalCount()).append(", ");
+		line.append(snapshot.getValueAtPercentile(50)).append(", ");
+		line.append(snapshot.getValueAtPercentile(99)).append(", ");
+		line.append(snapshot.getValueAtPercentile(99.9)).append(", ");
+		line.append(snapshot.getMax());
+		lines.add(line.toString());
+	}
+	
+	private static void addHotKeyLines(List<String> lines, String title, Map<String, List<HotKey>> hotKeyMap, String user) {
+		lines.add( "------ " + title );
+		for (Entry<String, List<HotKey>> entry : hotKeyMap.entrySet()) {
+			if ( user != null && !user.equals( entry.getKey() ) ) {
+				continue;
+			}
+			
+			int rank = 1;
+			for (HotKey hotKey : entry.getValue()) {
+				StringBuffer line = new StringBuffer();
+				line.append(entry.getKey()).append(", ");
+				line.append(rank++).append(", ");
+				line.append(hotKey.key).append(", ");
+				line.append(hotKey.qps).append(", ");
+				line.append(hotKey.bytesPerSecond);
+				lines.add(line.toString());
+			}
+		}
+	}
+	
 	public static synchronized byte[] encode2(List<String> lines) {
 		StringBuffer sb = new StringBuffer();
 		if (lines == null || lines.size() <= 0) {
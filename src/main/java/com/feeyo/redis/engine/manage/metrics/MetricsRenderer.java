@@ -0,0 +1,240 @@
+package com.feeyo.redis.engine.manage.metrics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.feeyo.kafka.net.backend.pool.KafkaPool;
+import com.feeyo.redis.engine.RedisEngineCtx;
+import com.feeyo.redis.engine.manage.stat.CmdAccessCollector.Command;
+import com.feeyo.redis.engine.manage.stat.LatencyCollector.Latency;
+import com.feeyo.redis.engine.manage.stat.LatencyHistogram.Snapshot;
+import com.feeyo.redis.engine.manage.stat.StatUtil;
+import com.feeyo.redis.net.backend.pool.AbstractPool;
+import com.feeyo.redis.net.backend.pool.PhysicalNode;
+import com.feeyo.redis.net.backend.pool.RedisStandalonePool;
+import com.feeyo.redis.net.backend.pool.cluster.ClusterNode;
+import com.feeyo.redis.net.backend.pool.cluster.RedisClusterPool;
+import com.feeyo.redis.nio.NIOReactor;
+import com.feeyo.redis.nio.NetFlowMonitor;
+import com.feeyo.redis.nio.NetSystem;
+import com.feeyo.redis.nio.buffer.BufferPool;
+import com.feeyo.redis.nio.buffer.bucket.AbstractBucket;
+import com.feeyo.redis.nio.buffer.bucket.BucketBufferPool;
+import com.feeyo.redis.virtualmemory.VirtualMemoryService;
+
+/**
+ * OpenMetrics 文本输出
+ *
+ * 只读取已有的原子计数及统计周期的快照， 不加锁， 不经过 reactor
+ */
+public class MetricsRenderer {
+
+	private static final String PREFIX = "redisproxy_";
+
+	private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+	private final StringBuilder sb = new StringBuilder( 16 * 1024 );
+
+	public String render() {
+
+		sb.setLength( 0 );
+
+		renderReactors();
+		renderBufferPool();
+		renderBackendConnections();
+		renderNetFlow();
+		renderVirtualMemory();
+		renderCommands();
+		renderLatency();
+
+		sb.append("# EOF\n");
+		return sb.toString();
+	}
+
+	private void renderReactors() {
+		type("reactor_react", "counter", "reactor select loop iterations");
+		for (Entry<String, NIOReactor> entry : RedisEngineCtx.INSTANCE().getReactorMap().entrySet()) {
+			sample("reactor_react_total", entry.getValue().getReactCount(), "reactor", entry.getKey());
+		}
+	}
+
+	private void renderBufferPool() {
+
+		BufferPool bufferPool = NetSystem.getInstance().getBufferPool();
+
+		type("buffer_pool_capacity_bytes", "gauge", "buffer pool max size");
+		sample("buffer_pool_capacity_bytes", bufferPool.getMaxBufferSize());
+
+		type("buffer_pool_used_bytes", "gauge", "buffer pool allocated size");
+		sample("buffer_pool_used_bytes", bufferPool.getUsedBufferSize().get());
+
+		type("buffer_pool_shared_opts", "counter", "buffer pool shared allocate and recycle operations");
+		sample("buffer_pool_shared_opts_total", bufferPool.getSharedOptsCount());
+
+		if ( bufferPool instanceof BucketBufferPool ) {
+			AbstractBucket[] buckets = ((BucketBufferPool) bufferPool).buckets();
+
+			type("buffer_bucket_chunks", "gauge", "chunks created in the bucket");
+			for (AbstractBucket bucket : buckets) {
+				sample("buffer_bucket_chunks", bucket.getCount(), "chunk_size", String.valueOf( bucket.getChunkSize() ));
+			}
+
+			type("buffer_bucket_used_chunks", "gauge", "chunks borrowed from the bucket");
+			for (AbstractBucket bucket : buckets) {
+				sample("buffer_bucket_used_chunks", bucket.getUsedCount(), "chunk_size", String.valueOf( bucket.getChunkSize() ));
+			}
+		}
+	}
+
+	private void renderBackendConnections() {
+
+		type("backend_connections", "gauge", "backend connections per node and state");
+		for (AbstractPool pool : RedisEngineCtx.INSTANCE().getPoolMap().values()) {
+
+			if ( pool instanceof RedisStandalonePool ) {
+				renderNode( ((RedisStandalonePool) pool).getPhysicalNode(), "master" );
+
+			} else if ( pool instanceof RedisClusterPool ) {
+				RedisClusterPool clusterPool = (RedisClusterPool) pool;
+				for (ClusterNode clusterNode : clusterPool.getMasters().values()) {
+					renderNode( clusterNode.getPhysicalNode(), "master" );
+				}
+				for (ClusterNode[] replicas : clusterPool.getReplicas().values()) {
+					for (ClusterNode replica : replicas) {
+						renderNode( replica.getPhysicalNode(), "replica" );
+					}
+				}
+
+			} else if ( pool instanceof KafkaPool ) {
+				for (PhysicalNode physicalNode : ((KafkaPool) pool).getPhysicalNodes().values()) {
+					renderNode( physicalNode, "broker" );
+				}
+			}
+		}
+	}
+
+	private void renderNode(PhysicalNode physicalNode, String role) {
+		if ( physicalNode == null ) {
+			return;
+		}
+		String pool = physicalNode.getPoolName();
+		String node = physicalNode.getName();
+		sample("backend_connections", physicalNode.getIdleCount(), "pool", pool, "node", node, "role", role, "state", "idle");
+		sample("backend_connections", physicalNode.getBorrowedCount(), "pool", pool, "node", node, "role", role, "state", "active");
+		sample("backend_connections", physicalNode.getConnectingCount(), "pool", pool, "node", node, "role", role, "state", "connecting");
+	}
+
+	private void renderNetFlow() {
+
+		NetFlowMonitor flowMonitor = RedisEngineCtx.INSTANCE().getFlowMonitor();
+		if ( flowMonitor == null ) {
+			return;
+		}
+
+		type("netflow_limit_bytes", "gauge", "network flow limit per second, 0 means unlimited");
+		sample("netflow_limit_bytes", flowMonitor.getMaxByteSize());
+
+		type("netflow_remaining_bytes", "gauge", "network flow left in the current second");
+		sample("netflow_remaining_bytes", flowMonitor.getRemainingBytes());
+
+		type("netflow_overproof", "gauge", "1 when the flow limit is exceeded");
+		sample("netflow_overproof", flowMonitor.isOverproof() ? 1 : 0);
+	}
+
+	private void renderVirtualMemory() {
+
+		VirtualMemoryService vm = RedisEngineCtx.INSTANCE().getVirtualMemoryService();
+		if ( vm == null ) {
+			return;
+		}
+
+		type("vm_commitlog_bytes", "gauge", "virtual memory commit log data not yet cleaned");
+		sample("vm_commitlog_bytes", vm.getCommitLogSize());
+
+		type("vm_commitlog_mapped_bytes", "gauge", "virtual memory commit log mapped file size");
+		sample("vm_commitlog_mapped_bytes", vm.getCommitLogMappedSize());
+	}
+
+	private void renderCommands() {
+
+		type("commands", "counter", "commands processed, pipeline sub commands are labeled with parent=pipeline");
+		for (Command command : StatUtil.getCommandCountMap().values()) {
+			sample("commands_total", command.count.get(), "cmd", command.cmd);
+			if ( command.childs != null ) {
+				for (Command child : command.childs.values()) {
+					sample("commands_total", child.count.get(), "cmd", child.cmd, "parent", command.cmd);
+				}
+			}
+		}
+
+		type("commands_coalesced", "counter", "reads served by an identical in-flight request");
+		for (Entry<String, AtomicLong> entry : StatUtil.getCoalescedCountMap().entrySet()) {
+			sample("commands_coalesced_total", entry.getValue().get(), "cmd", entry.getKey());
+		}
+	}
+
+	// 上一个完整统计周期
+	private void renderLatency() {
+		type("latency_milliseconds", "summary", "latency of the last stats period");
+		renderLatency("cmd", StatUtil.getCmdLatencys());
+		renderLatency("node", StatUtil.getNodeLatencys());
+	}
+
+	private void renderLatency(String dimension, Map<String, Latency> latencyMap) {
+		for (Entry<String, Latency> entry : latencyMap.entrySet()) {
+			renderSnapshot(dimension, entry.getKey(), "proc", entry.getValue().procHistogram.getLast());
+			renderSnapshot(dimension, entry.getKey(), "wait", entry.getValue().waitHistogram.getLast());
+		}
+	}
+
+	private void renderSnapshot(String dimension, String name, String time, Snapshot snapshot) {
+		for (double quantile : QUANTILES) {
+			sample("latency_milliseconds", snapshot.getValueAtPercentile( quantile * 100 ),
+					dimension, name, "time", time, "quantile", String.valueOf( quantile ));
+		}
+		sample("latency_milliseconds_count", snapshot.getTotalCount(), dimension, name, "time", time);
+	}
+
+
+	private void type(String name, String type, String help) {
+		sb.append("# TYPE ").append( PREFIX ).append( name ).append(' ').append( type ).append('\n');
+		sb.append("# HELP ").append( PREFIX ).append( name ).append(' ').append( help ).append('\n');
+	}
+
+	// labels 为 name, value 交替
+	private void sample(String name, long value, String... labels) {
+		sb.append( PREFIX ).append( name );
+		if ( labels.length > 0 ) {
+			sb.append('{');
+			for (int i = 0; i + 1 < labels.length; i += 2) {
+				if ( i > 0 ) {
+					sb.append(',');
+				}
+				sb.append( labels[i] ).append("=\"");
+				escape( labels[i + 1] );
+				sb.append('"');
+			}
+			sb.append('}');
+		}
+		sb.append(' ').append( value ).append('\n');
+	}
+
+	private void escape(String value) {
+		if ( value == null ) {
+			return;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ( c == '\\' ) {
+				sb.append("\\\\");
+			} else if ( c == '"' ) {
+				sb.append("\\\"");
+			} else if ( c == '\n' ) {
+				sb.append("\\n");
+			} else {
+				sb.append( c );
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.feeyo.redis.engine.manage.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.nio.NameableThreadFactory;
+import com.feeyo.redis.nio.util.TimeUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 内嵌的 HTTP 监听， GET /metrics 输出 OpenMetrics 文本
+ *
+ * 单独的单线程处理， 与 reactor 无关； 1 秒内的重复抓取直接返回上次的结果
+ */
+public class MetricsServer {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( MetricsServer.class );
+
+	private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+	private static final long CACHE_MILLS = 1000L;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final int port;
+
+	private HttpServer httpServer;
+	private ExecutorService executor;
+
+	private final MetricsRenderer renderer = new MetricsRenderer();
+	private byte[] cached = null;
+	private long cachedTime = 0;
+
+	public MetricsServer(int port) {
+		this.port = port;
+	}
+
+	public void start() throws IOException {
+
+		executor = Executors.newSingleThreadExecutor( new NameableThreadFactory("MetricsServer", true) );
+
+		httpServer = HttpServer.create(new InetSocketAddress( port ), 16);
+		httpServer.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if ( !"GET".equalsIgnoreCase( exchange.getRequestMethod() ) ) {
+						exchange.sendResponseHeaders(405, -1);
+						return;
+					}
+
+					byte[] body = getBody();
+					exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write( body );
+					out.flush();
+
+				} catch (Exception e) {
+					LOGGER.warn("metrics render err:", e);
+					exchange.sendResponseHeaders(500, -1);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		httpServer.setExecutor( executor );
+		httpServer.start();
+
+		LOGGER.info("metrics server started, port={}", port);
+	}
+
+	// 仅在 executor 单线程内调用
+	private byte[] getBody() {
+		long now = TimeUtil.currentTimeMillis();
+		if ( cached == null || now - cachedTime >= CACHE_MILLS ) {
+			cached = renderer.render().getBytes( UTF8 );
+			cachedTime = now;
+		}
+		return cached;
+	}
+
+	public void stop() {
+		if ( httpServer != null ) {
+			httpServer.stop(0);
+			httpServer = null;
+		}
+		if ( executor != null ) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package com.feeyo.redis.engine.manage.stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.feeyo.redis.net.codec.RedisRequestType;
+
+/**
+ * 热点 key 统计， 按用户给出 QPS 及流量的 top N， 内存固定
+ *
+ * 1、每个采集线程独占一个窗口， 窗口内为 Count-Min Sketch 与按估计值排序的 top-K 小顶堆， 无锁更新
+ * 2、统计周期到达时替换各线程的窗口， 上一周期换下的窗口已无线程写入， 此时合并为结果， 结果滞后一个周期
+ */
+public class HotKeyCollector implements StatCollector {
+
+	public static final int TOP_N = 20;
+
+	private static final int TOP_K = 64;				// 单个窗口内每个用户保留的候选数
+	private static final int DEPTH = 4;
+	private static final int WIDTH = 2048;				// 2 的幂
+
+	private static final int[] SEEDS = { 0x97cb3127, 0xb1a2c3d5, 0x5f1e8d3b, 0x2c9277b5 };
+
+	private static final String PIPELINE_CMD = RedisRequestType.PIPELINE.getCmd();
+
+	// 采集线程的窗口
+	private final CopyOnWriteArrayList<AtomicReference<Window>> shards = new CopyOnWriteArrayList<AtomicReference<Window>>();
+	private final ThreadLocal<AtomicReference<Window>> localShard = new ThreadLocal<AtomicReference<Window>>() {
+		@Override
+		protected AtomicReference<Window> initialValue() {
+			AtomicReference<Window> shard = new AtomicReference<Window>( new Window() );
+			shards.add( shard );
+			return shard;
+		}
+	};
+
+	// 上一周期换下、 待合并的窗口
+	private List<Window> retired = new ArrayList<Window>();
+
+	// 合并结果， password -> hot keys
+	private volatile Map<String, List<HotKey>> topByCount = new HashMap<String, List<HotKey>>();
+	private volatile Map<String, List<HotKey>> topByBytes = new HashMap<String, List<HotKey>>();
+
+	@Override
+	public void onCollect(String password, String cmd, String key, int requestSize, int responseSize,
+			int procTimeMills, int waitTimeMills, boolean isCommandOnly) {
+
+		if ( password == null || key == null || PIPELINE_CMD.equals( cmd ) ) {
+			return;
+		}
+
+		localShard.get().get().add(password, key, requestSize + responseSize);
+	}
+
+	@Override
+	public void onScheduleToZore() {
+		// ignore
+	}
+
+	@Override
+	public void onSchedulePeroid(int peroid) {
+
+		List<Window> windows = retired;
+
+		List<Window> newRetired = new ArrayList<Window>( shards.size() );
+		for (AtomicReference<Window> shard : shards) {
+			newRetired.add( shard.getAndSet( new Window() ) );
+		}
+		retired = newRetired;
+
+		merge(windows, peroid);
+	}
+
+	private void merge(List<Window> windows, int peroid) {
+
+		// password -> key -> 合计
+		Map<String, Map<String, HotKey>> userKeys = new HashMap<String, Map<String, HotKey>>();
+		for (Window window : windows) {
+			for (Map.Entry<String, UserTop> entry : window.users.entrySet()) {
+
+				Map<String, HotKey> keys = userKeys.get( entry.getKey() );
+				if ( keys == null ) {
+					keys = new HashMap<String, HotKey>();
+					userKeys.put(entry.getKey(), keys);
+				}
+
+				UserTop userTop = entry.getValue();
+				mergeTop(keys, userTop.byCount, window);
+				mergeTop(keys, userTop.byBytes, window);
+			}
+		}
+
+		Map<String, List<HotKey>> newTopByCount = new HashMap<String, List<HotKey>>();
+		Map<String, List<HotKey>> newTopByBytes = new HashMap<String, List<HotKey>>();
+		for (Map.Entry<String, Map<String, HotKey>> entry : userKeys.entrySet()) {
+
+			List<HotKey> hotKeys = new ArrayList<HotKey>( entry.getValue().values() );
+			for (HotKey hotKey : hotKeys) {
+				hotKey.qps = hotKey.count / peroid;
+				hotKey.bytesPerSecond = hotKey.bytes / peroid;
+			}
+
+			newTopByCount.put(entry.getKey(), top(hotKeys, true));
+			newTopByBytes.put(entry.getKey(), top(hotKeys, false));
+		}
+
+		topByCount = newTopByCount;
+		topByBytes = newTopByBytes;
+	}
+
+	// 同一 key 在每个窗口内只累加一次
+	private void mergeTop(Map<String, HotKey> keys, TopK topK, Window window) {
+		for (int i = 0; i < topK.size; i++) {
+			Candidate candidate = topK.heap[i];
+			HotKey hotKey = keys.get( candidate.key );
+			if ( hotKey == null ) {
+				hotKey = new HotKey( candidate.key );
+				keys.put(candidate.key, hotKey);
+
+			} else if ( hotKey.lastWindow == window ) {
+				continue;
+			}
+			hotKey.lastWindow = window;
+			hotKey.count += window.estimate(window.countTable, candidate.hash);
+			hotKey.bytes += window.estimate(window.bytesTable, candidate.hash);
+		}
+	}
+
+	private List<HotKey> top(List<HotKey> hotKeys, final boolean isByCount) {
+		List<HotKey> list = new ArrayList<HotKey>( hotKeys );
+		Collections.sort(list, new Comparator<HotKey>() {
+			@Override
+			public int compare(HotKey o1, HotKey o2) {
+				long v1 = isByCount ? o1.count : o1.bytes;
+				long v2 = isByCount ? o2.count : o2.bytes;
+				return v1 > v2 ? -1 : (v1 == v2 ? 0 : 1);
+			}
+		});
+		return list.size() > TOP_N ? new ArrayList<HotKey>( list.subList(0, TOP_N) ) : list;
+	}
+
+	public Map<String, List<HotKey>> getTopByCount() {
+		return topByCount;
+	}
+
+	public Map<String, List<HotKey>> getTopByBytes() {
+		return topByBytes;
+	}
+
+
+	private static int hash(String password, String key) {
+		int h = password.hashCode() * 31 + key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static int indexOf(int hash, int i) {
+		int h = (hash ^ SEEDS[i]) * 0x9e3779b9;
+		h ^= h >>> 16;
+		return h & (WIDTH - 1);
+	}
+
+	/**
+	 * 单个采集线程在一个周期内的数据， 仅该线程写入
+	 */
+	private static class Window {
+
+		final long[] countTable = new long[ DEPTH * WIDTH ];
+		final long[] bytesTable = new long[ DEPTH * WIDTH ];
+
+		final Map<String, UserTop> users = new HashMap<String, UserTop>();
+
+		void add(String password, String key, int bytes) {
+
+			int hash = hash(password, key);
+			long count = increment(countTable, hash, 1);
+			long totalBytes = increment(bytesTable, hash, bytes);
+
+			UserTop userTop = users.get( password );
+			if ( userTop == null ) {
+				userTop = new UserTop();
+				users.put(password, userTop);
+			}
+			userTop.byCount.offer(key, hash, count);
+			userTop.byBytes.offer(key, hash, totalBytes);
+		}
+
+		// 返回更新后的估计值
+		private long increment(long[] table, int hash, long delta) {
+			long min = Long.MAX_VALUE;
+			for (int i = 0; i < DEPTH; i++) {
+				int idx = i * WIDTH + indexOf(hash, i);
+				table[idx] += delta;
+				min = Math.min(min, table[idx]);
+			}
+			return min;
+		}
+
+		long estimate(long[] table, int hash) {
+			long min = Long.MAX_VALUE;
+			for (int i = 0; i < DEPTH; i++) {
+				min = Math.min(min, table[ i * WIDTH + indexOf(hash, i) ]);
+			}
+			return min;
+		}
+	}
+
+	private static class UserTop {
+		final TopK byCount = new TopK();
+		final TopK byBytes = new TopK();
+	}
+
+	private static class Candidate {
+		final String key;
+		final int hash;
+		long value;
+		int index;			// 堆内下标
+
+		Candidate(String key, int hash) {
+			this.key = key;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * 按估计值的小顶堆， 估计值超过堆顶的 key 替换堆顶
+	 */
+	private static class TopK {
+
+		final Candidate[] heap = new Candidate[ TOP_K ];
+		final Map<String, Candidate> index = new HashMap<String, Candidate>( TOP_K * 2 );
+		int size = 0;
+
+		void offer(String key, int hash, long value) {
+
+			Candidate candidate = index.get( key );
+			if ( candidate != null ) {
+				candidate.value = value;
+				siftDown( candidate.index );
+				return;
+			}
+
+			if ( size < TOP_K ) {
+				candidate = new Candidate(key, hash);
+				candidate.value = value;
+				candidate.index = size;
+				heap[ size++ ] = candidate;
+				index.put(key, candidate);
+				siftUp( candidate.index );
+				return;
+			}
+
+			Candidate min = heap[0];
+			if ( value <= min.value ) {
+				return;
+			}
+
+			index.remove( min.key );
+			candidate = new Candidate(key, hash);
+			candidate.value = value;
+			candidate.index = 0;
+			heap[0] = candidate;
+			index.put(key, candidate);
+			siftDown( 0 );
+		}
+
+		private void siftUp(int i) {
+			while ( i > 0 ) {
+				int parent = (i - 1) >>> 1;
+				if ( heap[parent].value <= heap[i].value ) {
+					break;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			for (;;) {
+				int left = 2 * i + 1;
+				if ( left >= size ) {
+					break;
+				}
+				int smallest = left;
+				int right = left + 1;
+				if ( right < size && heap[right].value < heap[left].value ) {
+					smallest = right;
+				}
+				if ( heap[i].value <= heap[smallest].value ) {
+					break;
+				}
+				swap(i, smallest);
+				i = smallest;
+			}
+		}
+
+		private void swap(int i, int j) {
+			Candidate tmp = heap[i];
+			heap[i] = heap[j];
+			heap[j] = tmp;
+			heap[i].index = i;
+			heap[j].index = j;
+		}
+	}
+
+
+	public static class HotKey {
+
+		public final String key;
+		public long count;
+		public long bytes;
+		public long qps;
+		public long bytesPerSecond;
+
+		private Window lastWindow;
+
+		HotKey(String key) {
+			this.key = key;
+		}
+	}
+
+}
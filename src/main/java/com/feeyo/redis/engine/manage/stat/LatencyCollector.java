@@ -0,0 +1,84 @@
+package com.feeyo.redis.engine.manage.stat;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 耗时分布， 按指令、 用户、 后端节点分别记录处理耗时 (proc) 与后端等待耗时 (wait)
+ *
+ * 在 StatUtil.collect 的调用线程 (后端 reactor) 上同步记录， 统计周期到达时切换
+ */
+public class LatencyCollector implements StatCollector {
+
+	private final ConcurrentHashMap<String, Latency> cmdLatencys = new ConcurrentHashMap<String, Latency>();
+	private final ConcurrentHashMap<String, Latency> userLatencys = new ConcurrentHashMap<String, Latency>();
+	private final ConcurrentHashMap<String, Latency> nodeLatencys = new ConcurrentHashMap<String, Latency>();
+
+	public void record(String password, String cmd, int procTimeMills, int waitTimeMills) {
+		getLatency(cmdLatencys, cmd).record(procTimeMills, waitTimeMills);
+		if ( password != null ) {
+			getLatency(userLatencys, password).record(procTimeMills, waitTimeMills);
+		}
+	}
+
+	public void recordNode(String nodeName, int procTimeMills, int waitTimeMills) {
+		getLatency(nodeLatencys, nodeName).record(procTimeMills, waitTimeMills);
+	}
+
+	private Latency getLatency(ConcurrentHashMap<String, Latency> map, String name) {
+		Latency latency = map.get( name );
+		if ( latency == null ) {
+			map.putIfAbsent(name, new Latency());
+			latency = map.get( name );
+		}
+		return latency;
+	}
+
+	@Override
+	public void onCollect(String password, String cmd, String key, int requestSize, int responseSize,
+			int procTimeMills, int waitTimeMills, boolean isCommandOnly) {
+		// 已在 StatUtil.collect 调用线程同步记录
+	}
+
+	@Override
+	public void onScheduleToZore() {
+		// ignore
+	}
+
+	@Override
+	public void onSchedulePeroid(int peroid) {
+		rollover( cmdLatencys );
+		rollover( userLatencys );
+		rollover( nodeLatencys );
+	}
+
+	private void rollover(ConcurrentHashMap<String, Latency> map) {
+		for (Latency latency : map.values()) {
+			latency.procHistogram.rollover();
+			latency.waitHistogram.rollover();
+		}
+	}
+
+	public ConcurrentHashMap<String, Latency> getCmdLatencys() {
+		return cmdLatencys;
+	}
+
+	public ConcurrentHashMap<String, Latency> getUserLatencys() {
+		return userLatencys;
+	}
+
+	public ConcurrentHashMap<String, Latency> getNodeLatencys() {
+		return nodeLatencys;
+	}
+
+	public static class Latency {
+
+		public final LatencyHistogram procHistogram = new LatencyHistogram();
+		public final LatencyHistogram waitHistogram = new LatencyHistogram();
+
+		void record(int procTimeMills, int waitTimeMills) {
+			procHistogram.record( procTimeMills );
+			waitHistogram.record( waitTimeMills );
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.feeyo.redis.engine.manage.stat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数分桶的耗时直方图 (HDR 风格)， 单位毫秒
+ *
+ * 小于 32 的值每个值一个桶， 之后每个 2 的幂区间切分为 16 个子桶， 相对误差约 6%；
+ * 记录只有原子自增， 无锁； 周期切换时整体替换计数数组， 切换瞬间在途的少量记录计入上一周期
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR_COUNT = 32;
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKET_COUNT = LINEAR_COUNT + (31 - 5) * SUB_COUNT;
+
+	private volatile Recorder active = new Recorder();
+	private volatile Snapshot last = new Snapshot(new long[ BUCKET_COUNT ], 0, 0);
+
+	public void record(int value) {
+		if ( value < 0 ) {
+			value = 0;
+		}
+		active.record( value );
+	}
+
+	/**
+	 * 结束当前周期， 返回并保留该周期的快照
+	 */
+	public Snapshot rollover() {
+		Recorder old = active;
+		active = new Recorder();
+		last = old.snapshot();
+		return last;
+	}
+
+	/**
+	 * 上一个完整周期
+	 */
+	public Snapshot getLast() {
+		return last;
+	}
+
+	/**
+	 * 当前周期， 仍在记录中
+	 */
+	public Snapshot getCurrent() {
+		return active.snapshot();
+	}
+
+
+	static int bucketIndex(int value) {
+		if ( value < LINEAR_COUNT ) {
+			return value;
+		}
+		int m = 31 - Integer.numberOfLeadingZeros( value );
+		return LINEAR_COUNT + (m - 5) * SUB_COUNT + ((value >>> (m - SUB_BITS)) - SUB_COUNT);
+	}
+
+	// 桶内的最大值
+	static long bucketValue(int index) {
+		if ( index < LINEAR_COUNT ) {
+			return index;
+		}
+		int m = 5 + (index - LINEAR_COUNT) / SUB_COUNT;
+		long sub = SUB_COUNT + (index - LINEAR_COUNT) % SUB_COUNT;
+		return ((sub + 1) << (m - SUB_BITS)) - 1;
+	}
+
+	private static class Recorder {
+
+		final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT );
+		final AtomicLong total = new AtomicLong(0);
+		final AtomicLong max = new AtomicLong(0);
+
+		void record(int value) {
+			counts.incrementAndGet( bucketIndex(value) );
+			total.incrementAndGet();
+
+			long m;
+			while ( value > (m = max.get()) ) {
+				if ( max.compareAndSet(m, value) ) {
+					break;
+				}
+			}
+		}
+
+		Snapshot snapshot() {
+			long[] arr = new long[ BUCKET_COUNT ];
+			long count = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				arr[i] = counts.get(i);
+				count += arr[i];
+			}
+			return new Snapshot(arr, count, max.get());
+		}
+	}
+
+	/**
+	 * 不可变的统计快照
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long totalCount;
+		private final long max;
+
+		Snapshot(long[] counts, long totalCount, long max) {
+			this.counts = counts;
+			this.totalCount = totalCount;
+			this.max = max;
+		}
+
+		public long getTotalCount() {
+			return totalCount;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * percentile 取值 (0, 100]
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if ( totalCount == 0 ) {
+				return 0;
+			}
+
+			long threshold = (long) Math.ceil( totalCount * percentile / 100.0D );
+			if ( threshold < 1 ) {
+				threshold = 1;
+			}
+
+			long sum = 0;
+			for (int i = 0; i < counts.length; i++) {
+				sum += counts[i];
+				if ( sum >= threshold ) {
+					return Math.min(bucketValue(i), max);
+				}
+			}
+			return max;
+		}
+	}
+}
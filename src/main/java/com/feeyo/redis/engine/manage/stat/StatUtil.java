@@ -21,6 +21,8 @@ import com.feeyo.redis.engine.manage.stat.BigKeyCollector.BigKey;
 import com.feeyo.redis.engine.manage.stat.BigLengthCollector.BigLength;
 import com.feeyo.redis.engine.manage.stat.CmdAccessCollector.Command;
 import com.feeyo.redis.engine.manage.stat.CmdAccessCollector.UserCommand;
+import com.feeyo.redis.engine.manage.stat.HotKeyCollector.HotKey;
+import com.feeyo.redis.engine.manage.stat.LatencyCollector.Latency;
 import com.feeyo.redis.engine.manage.stat.NetFlowCollector.UserNetFlow;
 import com.feeyo.redis.engine.manage.stat.SlowKeyColletor.SlowKey;
 import com.feeyo.redis.nio.NetSystem;
@@ -54,6 +56,9 @@ public class StatUtil {
 	
 	public static long zeroTimeMillis = 0;
 	
+	// 合并到在途请求、 未访问后端的请求数
+	private static ConcurrentHashMap<String, AtomicLong> coalescedCountMap = new ConcurrentHashMap<>();
+	
 	// 收集器
 	private static List<StatCollector> collectors = new CopyOnWriteArrayList<>();
 	
@@ -62,6 +67,8 @@ public class StatUtil {
 	private static BigKeyCollector bigKeyCollector = new BigKeyCollector();
 	private static BigLengthCollector bigLengthCollector = new BigLengthCollector();
 	private static SlowKeyColletor slowKeyCollector = new SlowKeyColletor();
+	private static HotKeyCollector hotKeyCollector = new HotKeyCollector();
+	private static LatencyCollector latencyCollector = new LatencyCollector();
 	
 	static {
 		
@@ -70,6 +77,8 @@ public class StatUtil {
 		addCollector( bigKeyCollector );
 		addCollector( bigLengthCollector );
 		addCollector( slowKeyCollector );
+		addCollector( hotKeyCollector );
+		addCollector( latencyCollector );
 		
 		scheduledFuture = executorService.scheduleAtFixedRate(new Runnable() {
 			@Override
@@ -232,6 +241,11 @@ public class StatUtil {
 			return;
 		}
 		
+		// 耗时分布， 无锁， 在调用线程记录
+		if ( !isCommandOnly ) {
+			latencyCollector.record(password, cmd, procTimeMills, waitTimeMills);
+		}
+		
 		// 线程池
 		NetSystem.getInstance().getBusinessExecutor().execute( new Runnable() {
 			
@@ -271,6 +285,32 @@ public class StatUtil {
 	
 	
 	
+	/**
+	 * 后端节点的耗时分布， 在调用线程记录
+	 */
+	public static void collectNode(String nodeName, int procTimeMills, int waitTimeMills) {
+		if ( nodeName != null ) {
+			latencyCollector.recordNode(nodeName, procTimeMills, waitTimeMills);
+		}
+	}
+	
+	/**
+	 * 相同读请求合并， count 为本次共用一个后端应答的请求数 (不含首个请求)
+	 */
+	public static void collectCoalesced(String cmd, int count) {
+		
+		if ( cmd == null ) {
+			return;
+		}
+		
+		AtomicLong counter = coalescedCountMap.get( cmd );
+		if ( counter == null ) {
+			coalescedCountMap.putIfAbsent(cmd, new AtomicLong(0));
+			counter = coalescedCountMap.get( cmd );
+		}
+		counter.addAndGet( count );
+	}
+	
     private static AccessStatInfo getAccessStatInfo(String key, long currentTime) {
         AccessStatInfo item = accessStats.get(key);
         if (item == null) {
@@ -312,6 +352,30 @@ public class StatUtil {
     	return netflowCollector.getUserFlowMap();
     }
     
+    public static Map<String, List<HotKey>> getHotKeysByCount() {
+    	return hotKeyCollector.getTopByCount();
+    }
+    
+    public static Map<String, List<HotKey>> getHotKeysByBytes() {
+    	return hotKeyCollector.getTopByBytes();
+    }
+    
+    public static ConcurrentHashMap<String, Latency> getCmdLatencys() {
+    	return latencyCollector.getCmdLatencys();
+    }
+    
+    public static ConcurrentHashMap<String, Latency> getUserLatencys() {
+    	return latencyCollector.getUserLatencys();
+    }
+    
+    public static ConcurrentHashMap<String, Latency> getNodeLatencys() {
+    	return latencyCollector.getNodeLatencys();
+    }
+    
+    public static ConcurrentHashMap<String, AtomicLong> getCoalescedCountMap() {
+    	return coalescedCountMap;
+    }
+    
     public static List<SlowKey> getSlowKey() {
     	return slowKeyCollector.getSlowKeys();
     }
@@ -1,6 +1,9 @@
 package com.feeyo.redis.net.backend;
 
+import java.io.IOException;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.feeyo.redis.net.Connection;
 import com.feeyo.redis.net.backend.callback.BackendCallback;
@@ -22,6 +25,14 @@ public class BackendConnection extends Connection {
     
     protected volatile long heartbeatTime = 0;	//心跳应答时间
     
+    // 连接池计数的状态， 状态迁移通过 CAS， 保证 PhysicalNode 的计数准确
+    public static final int POOL_CONNECTING = 0;
+    public static final int POOL_IDLE = 1;
+    public static final int POOL_BORROWED = 2;
+    public static final int POOL_CLOSED = 3;
+    
+    private final AtomicInteger poolState = new AtomicInteger( POOL_CONNECTING );
+    
 	public BackendConnection(SocketChannel channel) {
 		super(channel);
 	}
@@ -49,6 +60,16 @@ public class BackendConnection extends Connection {
 
 	public void setBorrowed(boolean borrowed) {
 		this.borrowed = borrowed;
+		
+		if ( physicalNode != null ) {
+			if ( borrowed ) {
+				if ( poolState.compareAndSet(POOL_IDLE, POOL_BORROWED) ) 
+					physicalNode.onBorrowed( true );
+			} else {
+				if ( poolState.compareAndSet(POOL_BORROWED, POOL_IDLE) ) 
+					physicalNode.onBorrowed( false );
+			}
+		}
 	}
 	
 	public boolean isBorrowed() {
@@ -56,9 +77,24 @@ public class BackendConnection extends Connection {
     }
 
 	
+	@Override
+	public void register(Selector selector) throws IOException {
+		if ( physicalNode != null && poolState.compareAndSet(POOL_CONNECTING, POOL_IDLE) ) {
+			physicalNode.onConnected( this );
+		}
+		super.register(selector);
+	}
+	
 	@Override
 	public void close(String reason) {
 		super.close(reason);
+		
+		if ( physicalNode != null ) {
+			int oldState = poolState.getAndSet( POOL_CLOSED );
+			if ( oldState != POOL_CLOSED ) {
+				physicalNode.onClosed(this, oldState);
+			}
+		}
 	}
 
 	public long getHeartbeatTime() {
@@ -122,6 +122,12 @@ public class RedisBackendConnection extends BackendConnection {
 		write( sBuffer.toString().getBytes() );			
 	}
 	
+	// 应答解析均支持半包，大应答按 readBuffer 大小分段交付
+	@Override
+	protected boolean isStreamRead() {
+		return true;
+	}
+	
 	public long getHeartbeatTime() {
 		return heartbeatTime;
 	}
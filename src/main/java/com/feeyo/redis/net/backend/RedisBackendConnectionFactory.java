@@ -35,6 +35,7 @@ public class RedisBackendConnectionFactory implements BackendConnectionFactory {
 		c.setIdleTimeout( NetSystem.getInstance().getNetConfig().getBackendIdleTimeout() );
 		
 		// 连接 
+		physicalNode.addConnection( c );
 		NetSystem.getInstance().getConnector().postConnect(c);
 		return c;
 	}
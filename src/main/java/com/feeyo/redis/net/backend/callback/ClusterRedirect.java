@@ -0,0 +1,185 @@
+package com.feeyo.redis.net.backend.callback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.engine.RedisEngineCtx;
+import com.feeyo.redis.net.backend.BackendConnection;
+import com.feeyo.redis.net.backend.TodoTask;
+import com.feeyo.redis.net.backend.pool.AbstractPool;
+import com.feeyo.redis.net.backend.pool.PhysicalNode;
+import com.feeyo.redis.net.backend.pool.cluster.RedisClusterPool;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.nio.NetSystem;
+
+/**
+ * 集群 MOVED / ASK 重定向
+ *
+ * -MOVED 3999 127.0.0.1:6381
+ * -ASK 3999 127.0.0.1:6381
+ *
+ * MOVED 立即修正路由快照后重发； ASK 先发送 ASKING 再重发， 不修改路由；
+ * 超过 MAX_REDIRECTS 或目标节点未知时，错误原样返回给前端
+ */
+public class ClusterRedirect {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( ClusterRedirect.class );
+
+	public static final int MAX_REDIRECTS = 5;
+
+	private static final byte[] ASKING = "*1\r\n$6\r\nASKING\r\n".getBytes();
+
+	private final boolean isAsk;
+	private final int slot;
+	private final String host;
+	private final int port;
+
+	private ClusterRedirect(boolean isAsk, int slot, String host, int port) {
+		this.isAsk = isAsk;
+		this.slot = slot;
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * 解析 [offset, end) 内的错误应答， 非重定向返回 null
+	 */
+	public static ClusterRedirect parse(byte[] buf, int offset, int end) {
+
+		int len = end - offset;
+		if ( len < 8 || buf[offset] != '-' ) {
+			return null;
+		}
+
+		boolean isAsk;
+		int pos;
+		if ( buf[offset + 1] == 'M' && buf[offset + 2] == 'O' && buf[offset + 3] == 'V'
+				&& buf[offset + 4] == 'E' && buf[offset + 5] == 'D' && buf[offset + 6] == ' ' ) {
+			isAsk = false;
+			pos = offset + 7;
+
+		} else if ( buf[offset + 1] == 'A' && buf[offset + 2] == 'S' && buf[offset + 3] == 'K' && buf[offset + 4] == ' ' ) {
+			isAsk = true;
+			pos = offset + 5;
+
+		} else {
+			return null;
+		}
+
+		// slot
+		int slot = 0;
+		while ( pos < end && buf[pos] >= '0' && buf[pos] <= '9' ) {
+			slot = slot * 10 + (buf[pos++] - '0');
+		}
+		if ( pos >= end || buf[pos] != ' ' || slot > 16383 ) {
+			return null;
+		}
+		pos++;
+
+		// host:port
+		int lineEnd = pos;
+		while ( lineEnd < end && buf[lineEnd] != '\r' && buf[lineEnd] != '\n' ) {
+			lineEnd++;
+		}
+
+		String address = new String(buf, pos, lineEnd - pos);
+		int idx = address.lastIndexOf(':');
+		if ( idx <= 0 ) {
+			return null;
+		}
+
+		try {
+			int port = Integer.parseInt( address.substring(idx + 1) );
+			return new ClusterRedirect(isAsk, slot, address.substring(0, idx), port);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 尝试重定向, 已接管返回 true， 否则调用方将错误应答透传给前端
+	 */
+	public static boolean redirect(RedisFrontConnection frontCon, RedisRequest request,
+			byte[] buf, int offset, int end, int redirects, List<ResponseListener> listeners) {
+
+		if ( request == null || frontCon == null || frontCon.isClosed() || redirects >= MAX_REDIRECTS ) {
+			return false;
+		}
+
+		ClusterRedirect redirect = parse(buf, offset, end);
+		if ( redirect == null ) {
+			return false;
+		}
+
+		AbstractPool pool = RedisEngineCtx.INSTANCE().getPoolMap().get( frontCon.getUserCfg().getPoolId() );
+		if ( !(pool instanceof RedisClusterPool) ) {
+			return false;
+		}
+
+		RedisClusterPool clusterPool = (RedisClusterPool) pool;
+		PhysicalNode target = redirect.isAsk ? clusterPool.onAsk(redirect.slot, redirect.host, redirect.port)
+				: clusterPool.onMoved(redirect.slot, redirect.host, redirect.port);
+		if ( target == null ) {
+			return false;
+		}
+
+		if ( LOGGER.isDebugEnabled() ) {
+			LOGGER.debug("redirect {} slot={} to {}, redirects={}",
+					new Object[]{ redirect.isAsk ? "ASK" : "MOVED", redirect.slot, target.getName(), redirects + 1 });
+		}
+
+		ByteBuffer buffer = request.encode();
+		if ( redirect.isAsk ) {
+			buffer = withAsking( buffer );
+		}
+
+		CutThroughTransTofrontCallBack callback = new CutThroughTransTofrontCallBack(request, redirects + 1, redirect.isAsk);
+		callback.addResponseListeners( listeners );
+		try {
+			write(target, frontCon, buffer, callback);
+		} catch (IOException e) {
+			LOGGER.warn("redirect err: " + target.getName(), e);
+			NetSystem.getInstance().getBufferPool().recycle( buffer );
+			frontCon.writeErrMessage( e.getMessage() );
+			if ( listeners != null ) {
+				for (ResponseListener listener : listeners) {
+					listener.onError( e.getMessage() );
+				}
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer withAsking(ByteBuffer buffer) {
+		buffer.flip();
+		ByteBuffer newBuffer = NetSystem.getInstance().getBufferPool().allocate( ASKING.length + buffer.remaining() );
+		newBuffer.put( ASKING );
+		newBuffer.put( buffer );
+		NetSystem.getInstance().getBufferPool().recycle( buffer );
+		return newBuffer;
+	}
+
+	// 集群无需 SELECT， 没有闲置连接时新建
+	private static void write(PhysicalNode node, RedisFrontConnection frontCon,
+			final ByteBuffer buffer, AbstractBackendCallback callback) throws IOException {
+
+		BackendConnection backendCon = node.getConnection(callback, frontCon);
+		if ( backendCon == null ) {
+			callback.addTodoTask(new TodoTask() {
+				@Override
+				public void execute(BackendConnection conn) throws Exception {
+					conn.write( buffer );
+				}
+			});
+			node.createNewConnection(callback, frontCon);
+
+		} else {
+			backendCon.write( buffer );
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package com.feeyo.redis.net.backend.callback;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.engine.manage.stat.StatUtil;
+import com.feeyo.redis.net.backend.BackendConnection;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.codec.RedisResponseFrameScanner;
+import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.nio.util.TimeUtil;
+
+/**
+ * 单指令的透传， 后端数据到达即写入前端， 只识别应答的边界，不缓存完整应答
+ *
+ * 大 value 不再受后端 readBuffer 上限的约束，且首字节更早到达客户端
+ */
+public class CutThroughTransTofrontCallBack extends DirectTransTofrontCallBack {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( CutThroughTransTofrontCallBack.class );
+
+	private RedisResponseFrameScanner scanner = new RedisResponseFrameScanner();
+
+	private int responseSize = 0;
+	
+	// 集群 MOVED / ASK 重定向， 非集群为 null
+	private final RedisRequest request;
+	private final int redirects;
+	
+	// ASK 重定向时先跳过 ASKING 的应答
+	private boolean isAsking;
+	
+	// 应答旁路 (近端缓存填充、 合并请求的扇出)， 没有为 null
+	private List<ResponseListener> listeners;
+	
+	// 应答结束后仍有多余字节， 连接已失步， 不能再归还连接池
+	private boolean isDesync;
+	
+	public CutThroughTransTofrontCallBack() {
+		this(null, 0, false);
+	}
+	
+	public CutThroughTransTofrontCallBack(RedisRequest request, int redirects, boolean isAsking) {
+		this.request = request;
+		this.redirects = redirects;
+		this.isAsking = isAsking;
+	}
+	
+	public void addResponseListener(ResponseListener listener) {
+		if ( listeners == null ) {
+			listeners = new ArrayList<ResponseListener>(2);
+		}
+		listeners.add( listener );
+	}
+	
+	public void addResponseListeners(List<ResponseListener> listeners) {
+		if ( listeners != null ) {
+			for (ResponseListener listener : listeners) {
+				addResponseListener( listener );
+			}
+		}
+	}
+
+	@Override
+	public void handleResponse(BackendConnection backendCon, byte[] byteBuff) throws IOException {
+
+		RedisFrontConnection frontCon = getFrontCon( backendCon );
+		
+		int offset = 0;
+		if ( isAsking ) {
+			offset = scanner.scan(byteBuff, 0, byteBuff.length);
+			if ( offset == -1 ) {
+				return;
+			}
+			isAsking = false;
+			if ( offset == byteBuff.length ) {
+				return;
+			}
+		}
+
+		int end = scanner.scan(byteBuff, offset, byteBuff.length - offset);
+		
+		// 重定向， 由新的后端连接应答
+		if ( end != -1 && responseSize == 0 && request != null && byteBuff[offset] == '-' ) {
+			if ( ClusterRedirect.redirect(frontCon, request, byteBuff, offset, end, redirects, listeners) ) {
+				backendCon.release();
+				return;
+			}
+		}
+		
+		try {
+			if ( end == -1 ) {
+				// 应答未结束, 直接透传
+				write(frontCon, slice(byteBuff, offset, byteBuff.length), false);
+				backPressure(frontCon, backendCon);
+				return;
+			}
+
+			if ( end < byteBuff.length ) {
+				LOGGER.warn("backend response has extra bytes, close it: end={}, len={}, con={}",
+						new Object[] { end, byteBuff.length, backendCon });
+				isDesync = true;
+			}
+			write(frontCon, slice(byteBuff, offset, end), true);
+
+		} catch(IOException e2) {
+
+			fireError( e2.toString() );
+
+			if ( frontCon != null) {
+				frontCon.close("write err");
+			}
+
+			// 由 reactor close
+			LOGGER.error("backend write to front err:", e2);
+			throw e2;
+		}
+
+		// 应答完整
+		String password = frontCon.getPassword();
+		String cmd = frontCon.getSession().getRequestCmd();
+		byte[] key = frontCon.getSession().getRequestKey();
+		int requestSize = frontCon.getSession().getRequestSize();
+		long requestTimeMills = frontCon.getSession().getRequestTimeMills();
+		long responseTimeMills = TimeUtil.currentTimeMillis();
+
+		int procTimeMills =  (int)(responseTimeMills - requestTimeMills);
+		int backendWaitTimeMills = (int)(backendCon.getLastReadTime() - backendCon.getLastWriteTime());
+
+		// 后段链接释放， 失步的连接直接关闭
+		if ( isDesync ) {
+			backendCon.close("backend response has extra bytes");
+		} else {
+			backendCon.release();
+		}
+
+		// 数据收集
+		StatUtil.collect(password, cmd, key, requestSize, responseSize, procTimeMills, backendWaitTimeMills, false);
+		StatUtil.collectNode(backendCon.getPhysicalNode().getName(), procTimeMills, backendWaitTimeMills);
+	}
+
+	/*
+	 * 旁路监听先于前端写入， 前端已关闭时若有监听仍继续接收应答
+	 */
+	private void write(RedisFrontConnection frontCon, byte[] buf, boolean isComplete) throws IOException {
+		
+		if ( listeners != null ) {
+			for (ResponseListener listener : listeners) {
+				listener.onData( buf );
+				if ( isComplete ) {
+					listener.onComplete();
+				}
+			}
+			
+			if ( frontCon == null || frontCon.isClosed() ) {
+				responseSize += buf.length;
+				return;
+			}
+		}
+		responseSize = this.writeToFront(frontCon, buf, responseSize);
+	}
+	
+	private void fireError(String reason) {
+		if ( listeners != null ) {
+			for (ResponseListener listener : listeners) {
+				listener.onError( reason );
+			}
+			listeners = null;
+		}
+	}
+
+	private byte[] slice(byte[] byteBuff, int start, int end) {
+		if ( start == 0 && end == byteBuff.length ) {
+			return byteBuff;
+		}
+		byte[] buf = new byte[ end - start ];
+		System.arraycopy(byteBuff, start, buf, 0, buf.length);
+		return buf;
+	}
+
+	// 已向前端写出部分应答，不能再追加错误信息，只能关闭前端
+	private boolean closeFrontIfPartial(BackendConnection backendCon, String reason) {
+		if ( scanner.isPartial() && responseSize > 0 ) {
+			RedisFrontConnection frontCon = getFrontCon( backendCon );
+			if ( frontCon != null ) {
+				frontCon.close( "backend broken in the middle of response, " + reason );
+			}
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void connectionError(Exception e, BackendConnection backendCon) {
+		fireError( e.toString() );
+		if ( !closeFrontIfPartial(backendCon, e.toString()) ) {
+			super.connectionError(e, backendCon);
+		}
+	}
+
+	@Override
+	public void connectionClose(BackendConnection backendCon, String reason) {
+		
+		// 应答已完整写出， 只清理连接池
+		if ( isDesync ) {
+			backendCon.getPhysicalNode().removeConnection(backendCon);
+			return;
+		}
+		
+		fireError( reason );
+		if ( closeFrontIfPartial(backendCon, reason) ) {
+			backendCon.getPhysicalNode().removeConnection(backendCon);
+		} else {
+			super.connectionClose(backendCon, reason);
+		}
+	}
+
+}
@@ -95,6 +95,15 @@ public class DirectTransTofrontCallBack extends AbstractBackendCallback {
 		return tmpSize;
 	}
 	
+	/**
+	 * 前端写队列超过高水位时暂停后端连接的读， 仅用于独占的后端连接， 多路复用连接由多个前端共享不能暂停
+	 */
+	protected void backPressure(RedisFrontConnection frontCon, BackendConnection backendCon) {
+		if ( frontCon != null && frontCon.isWriteQueueHigh() ) {
+			frontCon.pauseReadUntilWritable( backendCon );
+		}
+	}
+	
 	@Override
 	public void handleResponse(BackendConnection backendCon, byte[] byteBuff) throws IOException {
 
@@ -133,6 +142,7 @@ public class DirectTransTofrontCallBack extends AbstractBackendCallback {
 				
 				// 数据收集
 				StatUtil.collect(password, cmd, key, requestSize, responseSize, procTimeMills, backendWaitTimeMills, false);
+				StatUtil.collectNode(backendCon.getPhysicalNode().getName(), procTimeMills, backendWaitTimeMills);
 				
 			} catch(IOException e2) {
 				
@@ -0,0 +1,210 @@
+package com.feeyo.redis.net.backend.callback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.engine.manage.stat.StatUtil;
+import com.feeyo.redis.net.backend.BackendConnection;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.codec.RedisResponseFrameScanner;
+import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.nio.util.TimeUtil;
+
+/**
+ * 多路复用的共享后端连接
+ *
+ * 多个前端的请求以 pipeline 方式写入同一后端连接， 请求上下文按写出顺序入 FIFO 队列，
+ * 应答按边界切分后依次透传给队首的前端
+ *
+ * 入队与写出在同一把锁内完成， 保证队列顺序与线路上的请求顺序一致； 应答只在后端 reactor 线程处理
+ */
+public class MultiplexCallback implements BackendCallback {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( MultiplexCallback.class );
+
+	private final ConcurrentLinkedQueue<RequestContext> pendingQueue = new ConcurrentLinkedQueue<RequestContext>();
+	private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+	private final RedisResponseFrameScanner scanner = new RedisResponseFrameScanner();
+
+	private volatile BackendConnection backendCon;
+	private volatile boolean isReady = false;
+	private volatile boolean isBroken = false;
+
+	private final long createTime = TimeUtil.currentTimeMillis();
+
+	public boolean isReady() {
+		return isReady && !isBroken;
+	}
+
+	public boolean isBroken() {
+		return isBroken;
+	}
+
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * 写出请求, 连接不可用时返回 false，由调用方走独占连接
+	 */
+	public boolean send(RequestContext ctx, ByteBuffer buffer) {
+		synchronized ( this ) {
+			if ( !isReady || isBroken ) {
+				return false;
+			}
+
+			ctx.writeTimeMills = TimeUtil.currentTimeMillis();
+			pendingQueue.offer( ctx );
+			pendingCount.incrementAndGet();
+			backendCon.write( buffer );
+		}
+		return true;
+	}
+
+	@Override
+	public void connectionAcquired(BackendConnection conn) {
+		this.backendCon = conn;
+		this.isReady = true;
+	}
+
+	@Override
+	public void handleResponse(BackendConnection conn, byte[] byteBuff) throws IOException {
+
+		int offset = 0;
+		int length = byteBuff.length;
+
+		while ( offset < length ) {
+
+			RequestContext ctx = pendingQueue.peek();
+			if ( ctx == null ) {
+				LOGGER.warn("multiplex con has no pending request, drop {} bytes, con={}", (length - offset), conn);
+				return;
+			}
+
+			int end = scanner.scan(byteBuff, offset, length - offset);
+			if ( end == -1 ) {
+				// 应答未结束, 直接透传
+				writeToFront(ctx, byteBuff, offset, length);
+				return;
+			}
+			
+			// 集群重定向， 改由独占连接重发
+			if ( ctx.request != null && ctx.responseSize == 0 && byteBuff[offset] == '-'
+					&& ClusterRedirect.redirect(ctx.frontCon, ctx.request, byteBuff, offset, end, 0, null) ) {
+				pendingQueue.poll();
+				pendingCount.decrementAndGet();
+				offset = end;
+				continue;
+			}
+
+			writeToFront(ctx, byteBuff, offset, end);
+			offset = end;
+
+			// 应答完整
+			pendingQueue.poll();
+			pendingCount.decrementAndGet();
+
+			// 共享连接的 lastWriteTime 属于最近写出的请求， 等待时间按本请求的写出时间计算
+			int procTimeMills = (int)(TimeUtil.currentTimeMillis() - ctx.requestTimeMills);
+			int backendWaitTimeMills = (int)(conn.getLastReadTime() - ctx.writeTimeMills);
+			StatUtil.collect(ctx.password, ctx.cmd, ctx.key, ctx.requestSize, ctx.responseSize, procTimeMills, backendWaitTimeMills, false);
+			StatUtil.collectNode(conn.getPhysicalNode().getName(), procTimeMills, backendWaitTimeMills);
+		}
+	}
+
+	// 前端已关闭的应答直接丢弃
+	private void writeToFront(RequestContext ctx, byte[] byteBuff, int start, int end) {
+
+		ctx.responseSize += end - start;
+
+		RedisFrontConnection frontCon = ctx.frontCon;
+		if ( frontCon.isClosed() ) {
+			return;
+		}
+
+		if ( start == 0 && end == byteBuff.length ) {
+			frontCon.write( byteBuff );
+		} else {
+			byte[] buf = new byte[ end - start ];
+			System.arraycopy(byteBuff, start, buf, 0, buf.length);
+			frontCon.write( buf );
+		}
+	}
+
+	// 连接失效， 未完成的请求全部回错误， 已写出部分应答的前端只能关闭
+	private void broken(String reason) {
+
+		synchronized ( this ) {
+			isBroken = true;
+		}
+
+		boolean isHead = true;
+		RequestContext ctx;
+		while ( (ctx = pendingQueue.poll()) != null ) {
+			pendingCount.decrementAndGet();
+
+			RedisFrontConnection frontCon = ctx.frontCon;
+			if ( !frontCon.isClosed() ) {
+				if ( isHead && scanner.isPartial() && ctx.responseSize > 0 ) {
+					frontCon.close( "backend broken in the middle of response, " + reason );
+				} else {
+					frontCon.writeErrMessage( reason );
+				}
+			}
+			isHead = false;
+		}
+	}
+
+	@Override
+	public void connectionError(Exception e, BackendConnection conn) {
+		LOGGER.warn("multiplex con err: " + conn, e);
+		broken( e.toString() );
+	}
+
+	@Override
+	public void connectionClose(BackendConnection conn, String reason) {
+		broken( reason );
+	}
+
+	/**
+	 * 在途请求的上下文
+	 */
+	public static class RequestContext {
+
+		final RedisFrontConnection frontCon;
+		final String password;
+		final String cmd;
+		final byte[] key;
+		final int requestSize;
+		final long requestTimeMills;
+		
+		// 集群 MOVED / ASK 重发使用， 非集群为 null
+		final RedisRequest request;
+
+		int responseSize = 0;
+		
+		// 写入后端连接的时间， 在锁内入队时记录
+		long writeTimeMills;
+
+		public RequestContext(RedisFrontConnection frontCon, RedisRequest request, String cmd, byte[] key, int requestSize, long requestTimeMills) {
+			this.frontCon = frontCon;
+			this.request = request;
+			this.password = frontCon.getPassword();
+			this.cmd = cmd;
+			this.key = key;
+			this.requestSize = requestSize;
+			this.requestTimeMills = requestTimeMills;
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.feeyo.redis.net.backend.callback;
+
+import java.io.IOException;
+
+import com.feeyo.redis.net.backend.BackendConnection;
+import com.feeyo.redis.net.backend.pool.PhysicalNode;
+
+/**
+ * 集群从节点连接建立后先发送 READONLY， 应答 +OK 后再交给真正的回调
+ * 
+ * READONLY 对连接持续有效， 连接归还连接池后无需重发
+ */
+public class ReadOnlyCallback extends DelegateCallback {
+	
+	private static final byte[] READONLY = "*1\r\n$8\r\nREADONLY\r\n".getBytes();
+	
+	private long sendNanos;
+	
+	public ReadOnlyCallback(BackendCallback target) {
+		super(target);
+	}
+	
+	@Override
+	public void connectionAcquired(BackendConnection conn) {
+		sendNanos = System.nanoTime();
+		conn.write( READONLY );
+	}
+
+	@Override
+	public void handleResponse(BackendConnection conn, byte[] byteBuff) throws IOException {
+		
+		// +OK\r\n
+		if ( byteBuff.length == 5 &&  byteBuff[0] == '+' &&  byteBuff[1] == 'O' &&  byteBuff[2] == 'K' ) {
+			
+			// 握手往返作为首个时延样本
+			PhysicalNode physicalNode = conn.getPhysicalNode();
+			if ( physicalNode != null ) {
+				physicalNode.updateRtt( (System.nanoTime() - sendNanos) / 1000 );
+			}
+			
+			conn.setCallback( target );
+			target.connectionAcquired( conn );
+			
+		} else {
+			conn.close("readonly err:" + new String( byteBuff ) );
+		}
+	}
+	
+}
@@ -0,0 +1,18 @@
+package com.feeyo.redis.net.backend.callback;
+
+/**
+ * 透传应答的旁路监听， 与写入前端的数据一致
+ * 
+ * 均在后端 reactor 线程回调
+ */
+public interface ResponseListener {
+	
+	// 应答片段， 不可修改
+	void onData(byte[] data);
+	
+	// 应答完整
+	void onComplete();
+	
+	// 后端失败， 应答不完整
+	void onError(String reason);
+}
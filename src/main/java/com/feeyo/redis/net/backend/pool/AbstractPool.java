@@ -78,22 +78,31 @@ public abstract class AbstractPool {
 	//TODO: 此处几个方法待进一步优化
 	//-------------------------------------------------
 	protected LinkedList<BackendConnection> getNeedHeartbeatCons(
-			ConcurrentLinkedQueue<BackendConnection> checkLis, long heartbeatTime, long closeTime) {
+			ConQueue conQueue, long heartbeatTime, long closeTime) {
 		
-		int maxConsInOneCheck = 10;
 		LinkedList<BackendConnection> heartbeatCons = new LinkedList<BackendConnection>();
+		for (ConcurrentLinkedQueue<BackendConnection> checkLis : conQueue.getQueues()) {
+			getNeedHeartbeatCons(conQueue, checkLis, heartbeatTime, closeTime, heartbeatCons);
+		}
+		return heartbeatCons;
+	}
+	
+	private void getNeedHeartbeatCons(ConQueue conQueue, ConcurrentLinkedQueue<BackendConnection> checkLis, 
+			long heartbeatTime, long closeTime, LinkedList<BackendConnection> heartbeatCons) {
+		
+		int maxConsInOneCheck = 10;
 		
 		Iterator<BackendConnection> checkListItor = checkLis.iterator();
 		while (checkListItor.hasNext()) {
 			BackendConnection con = checkListItor.next();
 			if ( con.isClosed() ) {
-				checkListItor.remove();
+				conQueue.removeCon(con);
 				continue;
 			}
 			
 			// 关闭 闲置过久的 connection
 			if (con.getLastTime() < closeTime) {
-				if(checkLis.remove(con)) { 
+				if(conQueue.removeCon(con)) { 
 					con.close("heartbeate idle close ");
 					continue;
 				}
@@ -102,14 +111,13 @@ public abstract class AbstractPool {
 			// 提取需要做心跳检测的 connection
 			if (con.getLastTime() < heartbeatTime && heartbeatCons.size() < maxConsInOneCheck) {
 				// 如果移除失败，说明该连接已经被其他线程使用
-				if(checkLis.remove(con)) { 
+				if(conQueue.removeCon(con)) { 
 					con.setBorrowed(true);
 					heartbeatCons.add(con);
 				}
 			} 
 		}
 		
-		return heartbeatCons;
 	}
 	
 	protected void closeByIdleMany(PhysicalNode physicalNode, int ildeCloseCount) {	
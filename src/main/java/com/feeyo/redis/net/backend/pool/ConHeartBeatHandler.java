@@ -122,11 +122,17 @@ public class ConHeartBeatHandler implements BackendCallback {
 	public void handleResponse(BackendConnection conn, byte[] byteBuff)
 			throws IOException {
 		
-		removeFinished(conn);
+		HeartbeatCon hbCon = this.allCons.remove( conn.getId() );
 		
 		// +PONG\r\n
 		if ( byteBuff.length == 7 &&  byteBuff[0] == '+' &&  byteBuff[1] == 'P' &&  byteBuff[2] == 'O' &&  byteBuff[3] == 'N' &&  byteBuff[4] == 'G'  ) {
 			conn.setHeartbeatTime( TimeUtil.currentTimeMillis() );
+			
+			// 往返时延， 供从节点读选择
+			PhysicalNode physicalNode = conn.getPhysicalNode();
+			if ( hbCon != null && physicalNode != null ) {
+				physicalNode.updateRtt( (System.nanoTime() - hbCon.sendNanos) / 1000 );
+			}
 			conn.release();	
 
 		} else {
@@ -148,11 +154,13 @@ public class ConHeartBeatHandler implements BackendCallback {
 class HeartbeatCon {
 	
 	public final long timeoutTimestamp;
+	public final long sendNanos;
 	public final BackendConnection conn;
 
 	public HeartbeatCon(BackendConnection conn) {
 		super();
 		this.timeoutTimestamp = System.currentTimeMillis() + ( 20 * 1000L );
+		this.sendNanos = System.nanoTime();
 		this.conn = conn;
 	}
 }
@@ -1,88 +1,160 @@
 package com.feeyo.redis.net.backend.pool;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.feeyo.redis.net.backend.BackendConnection;
-import com.feeyo.redis.net.backend.RedisBackendConnection;
-import com.feeyo.redis.nio.AbstractConnection;
-import com.feeyo.redis.nio.NetSystem;
 
+/**
+ * 后端闲置连接
+ * 
+ * reactor 亲和模式下，按连接所在的 reactor 拆分为多个子队列，优先取与前端同一 reactor 的连接，没有再从其它 reactor 窃取
+ */
 public class ConQueue {
+	
+	private static final String NONE_REACTOR = "";
+	
+	private final boolean isReactorAffinity;
+	
+	// 闲置连接数， 所有入队、出队都经过本类
+	private final AtomicInteger idleCount = new AtomicInteger(0);
 
 	//后端连接
 	private final ConcurrentLinkedQueue<BackendConnection> cons = new ConcurrentLinkedQueue<BackendConnection>();
+	
+	// reactor -> 后端连接
+	private final ConcurrentHashMap<String, ConcurrentLinkedQueue<BackendConnection>> reactorCons = 
+			new ConcurrentHashMap<String, ConcurrentLinkedQueue<BackendConnection>>();
+	
+	public ConQueue() {
+		this(false);
+	}
+	
+	public ConQueue(boolean isReactorAffinity) {
+		this.isReactorAffinity = isReactorAffinity;
+	}
+	
+	public boolean isReactorAffinity() {
+		return isReactorAffinity;
+	}
 
-	public BackendConnection takeIdleCon() {		
-		ConcurrentLinkedQueue<BackendConnection> f1 = cons;
-		BackendConnection con = f1.poll();
+	public BackendConnection takeIdleCon() {
+		return takeIdleCon( null );
+	}
+	
+	public BackendConnection takeIdleCon(String reactor) {	
+		
+		BackendConnection con;
+		if ( !isReactorAffinity ) {
+			con = cons.poll();
+			
+		} else {
+			ConcurrentLinkedQueue<BackendConnection> local = reactor == null ? null : reactorCons.get( reactor );
+			con = local == null ? null : local.poll();
+			
+			// 窃取
+			if ( con == null ) {
+				for (ConcurrentLinkedQueue<BackendConnection> queue : reactorCons.values()) {
+					if ( queue != local && (con = queue.poll()) != null ) {
+						break;
+					}
+				}
+			}
+		}
+		
+		if ( con != null ) {
+			idleCount.decrementAndGet();
+		}
+		
 		if (con == null || con.isClosed() || !con.isConnected() ) {
 			return null;
 		} else {
 			return con;
 		}
 	}
+	
+	public boolean offer(BackendConnection con) {
+		boolean ok;
+		if ( !isReactorAffinity ) {
+			ok = cons.offer( con );
+		} else {
+			ok = queueFor( con.getReactor() ).offer( con );
+		}
+		
+		if ( ok ) {
+			idleCount.incrementAndGet();
+		}
+		return ok;
+	}
 
-	public void removeCon(BackendConnection con) {
-		cons.remove(con);
+	public boolean removeCon(BackendConnection con) {
+		boolean isRemoved = false;
+		if ( !isReactorAffinity ) {
+			isRemoved = cons.remove(con);
+			
+		} else if ( queueFor( con.getReactor() ).remove( con ) ) {
+			isRemoved = true;
+			
+		} else {
+			for (ConcurrentLinkedQueue<BackendConnection> queue : reactorCons.values()) {
+				if ( queue.remove( con ) ) {
+					isRemoved = true;
+					break;
+				}
+			}
+		}
+		
+		if ( isRemoved ) {
+			idleCount.decrementAndGet();
+		}
+		return isRemoved;
+	}
+	
+	private ConcurrentLinkedQueue<BackendConnection> queueFor(String reactor) {
+		if ( reactor == null ) {
+			reactor = NONE_REACTOR;
+		}
+		
+		ConcurrentLinkedQueue<BackendConnection> queue = reactorCons.get( reactor );
+		if ( queue == null ) {
+			queue = new ConcurrentLinkedQueue<BackendConnection>();
+			ConcurrentLinkedQueue<BackendConnection> old = reactorCons.putIfAbsent(reactor, queue);
+			if ( old != null ) {
+				queue = old;
+			}
+		}
+		return queue;
 	}
 
-	public ConcurrentLinkedQueue<BackendConnection> getCons() {
-		return cons;
+	/**
+	 * 全部闲置连接的队列，只读，出队请使用 takeIdleCon、removeCon
+	 */
+	public Collection<ConcurrentLinkedQueue<BackendConnection>> getQueues() {
+		if ( !isReactorAffinity ) {
+			return Collections.singletonList( cons );
+		}
+		return reactorCons.values();
+	}
+	
+	public int getIdleCount() {
+		return idleCount.get();
 	}
 
 	public ArrayList<BackendConnection> getIdleConsToClose(int count) {
 		ArrayList<BackendConnection> readyCloseCons = new ArrayList<BackendConnection>(count);
-		while (!cons.isEmpty() && readyCloseCons.size() < count) {
-			BackendConnection theCon = cons.poll();
-			if (theCon != null) {
-				readyCloseCons.add(theCon);
+		for (ConcurrentLinkedQueue<BackendConnection> queue : getQueues()) {
+			while (!queue.isEmpty() && readyCloseCons.size() < count) {
+				BackendConnection theCon = queue.poll();
+				if (theCon != null) {
+					idleCount.decrementAndGet();
+					readyCloseCons.add(theCon);
+				}
 			}
 		}
 		return readyCloseCons;
-	}	
-	
-	public int getActiveCountForNode(PhysicalNode node) {
-        int total = 0;
-        for (AbstractConnection conn : NetSystem.getInstance().getAllConnectios().values()) {
-            if (conn instanceof RedisBackendConnection) {
-            	RedisBackendConnection theCon = (RedisBackendConnection) conn;
-                if (theCon.getPhysicalNode() == node) {
-                    if (theCon.isBorrowed()) {
-                        total++;
-                    }
-                }
-            }
-        }
-        return total;
-    }
-
-    public void clearConnections(String reason, PhysicalNode node) {
-        Iterator<Entry<Long, AbstractConnection>> itor = NetSystem.getInstance().getAllConnectios().entrySet().iterator();
-        while ( itor.hasNext() ) {
-            Entry<Long, AbstractConnection> entry = itor.next();
-            AbstractConnection con = entry.getValue();
-            if (con instanceof RedisBackendConnection) {
-                if (((RedisBackendConnection) con).getPhysicalNode() == node) {
-                    con.close(reason);
-                    itor.remove();
-                }
-            }
-        }
-    }
-    
-    public void setIdleTimeConnections(PhysicalNode node, long idleTimeout) {    	
-        Iterator<Entry<Long, AbstractConnection>> itor = NetSystem.getInstance().getAllConnectios().entrySet().iterator();
-        while ( itor.hasNext() ) {
-            Entry<Long, AbstractConnection> entry = itor.next();
-            AbstractConnection con = entry.getValue();
-            if (con instanceof RedisBackendConnection) {
-                if (((RedisBackendConnection) con).getPhysicalNode() == node) {
-                	con.setIdleTimeout( idleTimeout );
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
+	}
+}
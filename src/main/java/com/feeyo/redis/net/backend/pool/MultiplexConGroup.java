@@ -0,0 +1,90 @@
+package com.feeyo.redis.net.backend.pool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.net.backend.callback.MultiplexCallback;
+import com.feeyo.redis.net.backend.callback.MultiplexCallback.RequestContext;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.nio.util.TimeUtil;
+
+/**
+ * 节点上共享的多路复用连接组
+ *
+ * 同一前端固定映射到同一共享连接， 保证该前端发往本节点的请求按序应答；
+ * 连接未就绪、失效或在途请求过多时返回 false， 由调用方回退到独占连接， 失效的连接在下次使用时重建
+ */
+public class MultiplexConGroup {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( MultiplexConGroup.class );
+
+	private static final int MAX_PENDING = 1024;			// 单连接在途请求上限
+	private static final long RECREATE_INTERVAL = 1000L;	// 重建间隔, 避免节点不可用时反复建连
+
+	private final PhysicalNode physicalNode;
+	private final AtomicReferenceArray<MultiplexCallback> slots;
+
+	public MultiplexConGroup(PhysicalNode physicalNode, int size) {
+		this.physicalNode = physicalNode;
+		this.slots = new AtomicReferenceArray<MultiplexCallback>( size );
+	}
+
+	public boolean write(RedisFrontConnection frontCon, RedisRequest request, ByteBuffer buffer,
+			String cmd, byte[] key, int requestSize, long requestTimeMills) {
+
+		int idx = (int) (frontCon.getId() % slots.length());
+
+		MultiplexCallback callback = slots.get( idx );
+		if ( callback == null || callback.isBroken() ) {
+			recreate(idx, callback);
+			return false;
+		}
+
+		if ( !callback.isReady() || callback.getPendingCount() >= MAX_PENDING ) {
+			return false;
+		}
+
+		RequestContext ctx = new RequestContext(frontCon, request, cmd, key, requestSize, requestTimeMills);
+		return callback.send(ctx, buffer);
+	}
+
+	private void recreate(int idx, MultiplexCallback old) {
+
+		if ( old != null && TimeUtil.currentTimeMillis() - old.getCreateTime() < RECREATE_INTERVAL ) {
+			return;
+		}
+
+		MultiplexCallback callback = new MultiplexCallback();
+		if ( slots.compareAndSet(idx, old, callback) ) {
+			try {
+				physicalNode.createNewConnection(callback, null);
+			} catch (IOException e) {
+				LOGGER.warn("create multiplex con err, node=" + physicalNode.getName(), e);
+				callback.connectionError(e, null);
+			}
+		}
+	}
+
+	/**
+	 * 共享连接的在途请求数
+	 */
+	public int getPendingCount() {
+		int count = 0;
+		for (int i = 0; i < slots.length(); i++) {
+			MultiplexCallback callback = slots.get(i);
+			if ( callback != null ) {
+				count += callback.getPendingCount();
+			}
+		}
+		return count;
+	}
+
+	public int size() {
+		return slots.length();
+	}
+}
@@ -1,6 +1,8 @@
 package com.feeyo.redis.net.backend.pool;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,6 +10,9 @@ import org.slf4j.LoggerFactory;
 import com.feeyo.redis.net.backend.BackendConnection;
 import com.feeyo.redis.net.backend.BackendConnectionFactory;
 import com.feeyo.redis.net.backend.callback.BackendCallback;
+import com.feeyo.redis.nio.AbstractConnection;
+import com.feeyo.redis.nio.NetSystem;
+import com.feeyo.redis.nio.SystemConfig;
 import com.feeyo.redis.nio.util.TimeUtil;
 
 
@@ -24,8 +29,19 @@ public class PhysicalNode {
 	protected final String name;
 	protected final int size;
 	
-	// TODO: 待优化
-	public final ConQueue conQueue = new ConQueue();
+	public final ConQueue conQueue;
+	
+	// 共享的多路复用连接， 未开启时为 null
+	private final MultiplexConGroup multiplexGroup;
+	
+	// 本节点的全部后端连接及计数， 不再遍历 NetSystem 的全部连接
+	private final ConcurrentHashMap<Long, BackendConnection> allCons = new ConcurrentHashMap<Long, BackendConnection>();
+	private final AtomicInteger connectingCount = new AtomicInteger(0);
+	private final AtomicInteger borrowedCount = new AtomicInteger(0);
+	
+	// 心跳测得的往返时延滑动平均(微秒)， 0 表示尚无样本
+	private static final double RTT_ALPHA = 0.2;
+	private volatile double rttEwma = 0;
 	
 	protected final int poolType;
 	protected final String poolName;
@@ -51,6 +67,12 @@ public class PhysicalNode {
 		
 		this.size = maxCon;
 		this.name = host + ":" + port;		
+		
+		SystemConfig config = NetSystem.getInstance() == null ? null : NetSystem.getInstance().getNetConfig();
+		this.conQueue = new ConQueue( config != null && config.getBackendReactorAffinity() == 1 );
+		
+		int multiplex = config == null ? 0 : config.getBackendMultiplex();
+		this.multiplexGroup = multiplex > 0 && poolType != PoolType.KAFKA_CLUSTER ? new MultiplexConGroup(this, multiplex) : null;
 	}
 	
 	// 新建连接，异步填充后端连接池
@@ -59,11 +81,11 @@ public class PhysicalNode {
 		createNewConnection(new BackendCallback() {
 			@Override
 			public void connectionAcquired(BackendConnection conn) {
-				conQueue.getCons().add( conn ); 
+				conQueue.offer( conn ); 
 			}	
 			
 			public void connectionClose(BackendConnection conn, String reason) {
-				conQueue.getCons().remove( conn );  
+				conQueue.removeCon( conn );  
 			}
 
 			@Override
@@ -113,29 +135,85 @@ public class PhysicalNode {
     }
 	
 	
+	/**
+	 * 借出及正在建立的连接数
+	 */
 	public int getActiveCount() {
-        return this.conQueue.getActiveCountForNode(this);
+        return this.borrowedCount.get() + this.connectingCount.get();
     }
 	
+	public int getBorrowedCount() {
+		return this.borrowedCount.get();
+	}
+	
+	public int getConnectingCount() {
+		return this.connectingCount.get();
+	}
+	
 	public int getIdleCount() {
-		return this.conQueue.getCons().size();
+		return this.conQueue.getIdleCount();
+	}
+	
+	/**
+	 * 本节点未关闭的连接总数
+	 */
+	public int getTotalCount() {
+		return this.allCons.size();
+	}
+	
+	// 连接计数
+	// ---------------------------------------------------------------------
+	public void addConnection(BackendConnection c) {
+		connectingCount.incrementAndGet();
+		allCons.put(c.getId(), c);
+	}
+	
+	public void onConnected(BackendConnection c) {
+		connectingCount.decrementAndGet();
+	}
+	
+	public void onBorrowed(boolean isBorrowed) {
+		if ( isBorrowed ) {
+			borrowedCount.incrementAndGet();
+		} else {
+			borrowedCount.decrementAndGet();
+		}
+	}
+	
+	public void onClosed(BackendConnection c, int oldState) {
+		if ( oldState == BackendConnection.POOL_CONNECTING ) {
+			connectingCount.decrementAndGet();
+		} else if ( oldState == BackendConnection.POOL_BORROWED ) {
+			borrowedCount.decrementAndGet();
+		}
+		allCons.remove( c.getId() );
 	}
 
     public void clearConnections(String reason, boolean isForce) {    	
     	LOGGER.info("{} node cleanup, reason={}, force={}", new Object[] { this.name, reason, isForce });    	
     	if ( isForce ) {
-    		this.conQueue.clearConnections(reason, this);
+    		for (BackendConnection con : allCons.values()) {
+    			con.close(reason);
+    		}
     		
     	} else {
         	long idleTimeout = 1000 * 45;  //45s 超时 
-    		this.conQueue.setIdleTimeConnections(this, idleTimeout);
+        	for (BackendConnection con : allCons.values()) {
+        		con.setIdleTimeout( idleTimeout );
+        	}
     	}
     }
 
     public BackendConnection getConnection(BackendCallback callback, Object attachment)
             throws IOException {
     	
-    	BackendConnection con = this.conQueue.takeIdleCon();
+    	// 优先取与前端连接同一 reactor 的后端连接
+    	String reactor = null;
+    	if ( attachment instanceof AbstractConnection ) {
+    		reactor = ((AbstractConnection) attachment).getReactor();
+    	}
+    	
+    	BackendConnection con = this.conQueue.takeIdleCon( reactor );
         if (con != null) {
         	con.setAttachement( attachment );
         	con.setCallback( callback );        	
@@ -156,7 +234,7 @@ public class PhysicalNode {
         
         ConQueue queue = this.conQueue;
         boolean ok = false;
-        ok = queue.getCons().offer(c);
+        ok = queue.offer(c);
         if ( !ok ) {
         	LOGGER.warn("can't return to pool ,so close con " + c);
             c.close("can't return to pool ");
@@ -175,6 +253,22 @@ public class PhysicalNode {
 		}
 	}	
 	
+	/**
+	 * 记录一次往返时延， 多个 reactor 线程并发更新时丢失个别样本不影响平均值
+	 */
+	public void updateRtt(long rttMicros) {
+		double old = this.rttEwma;
+		this.rttEwma = old == 0 ? rttMicros : old + RTT_ALPHA * (rttMicros - old);
+	}
+	
+	public double getRttEwma() {
+		return rttEwma;
+	}
+	
+	public MultiplexConGroup getMultiplexGroup() {
+		return multiplexGroup;
+	}
+	
 	public String getName() {
 		return name;
 	}
@@ -23,6 +23,8 @@ public class ClusterNode {
 	private boolean isFail = false;			// 可用状态
 	private boolean isConnected = true;		// 连接状态
 	
+	private volatile boolean isLagging = false;		// slave 复制延迟超出阈值
+	
 	private long pingSentTs;
 	private long pongReceivedTs;
 	
@@ -108,6 +110,21 @@ public class ClusterNode {
 		this.isConnected = isConnected;
 	}
 
+	public boolean isLagging() {
+		return isLagging;
+	}
+
+	public void setLagging(boolean isLagging) {
+		this.isLagging = isLagging;
+	}
+	
+	/**
+	 * slave 可读： 连接正常、未失效且复制未落后
+	 */
+	public boolean isReadable() {
+		return isConnected && !isFail && !isLagging && physicalNode != null;
+	}
+
 	public long getPingSentTs() {
 		return pingSentTs;
 	}
@@ -0,0 +1,124 @@
+package com.feeyo.redis.net.backend.pool.cluster;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.feeyo.redis.net.backend.pool.PhysicalNode;
+
+/**
+ * 集群路由快照， 构建完成后不可变
+ *
+ * 拓扑变化时在旁路构建新的快照， 通过 volatile 引用整体替换， 路由只做一次数组下标访问，
+ * 不会读到迁移过程中半新半旧的 slot 映射
+ */
+public final class ClusterRouteTable {
+
+	public static final int SLOT_COUNT = 16384;
+
+	private final long version;
+
+	private final Map<String, ClusterNode> masters;
+	
+	// masterId -> slaves， 未开启从节点读时为空
+	private final Map<String, ClusterNode[]> replicas;
+
+	// slot -> 可用 master 的物理节点， master 不可用时为 null
+	private final PhysicalNode[] nodes;
+
+	// slot -> master， 仅用于异常日志
+	private final ClusterNode[] slotMasters;
+	
+	// slot -> master 的 slaves， 无 slave 时为 null
+	private final ClusterNode[][] slotReplicas;
+
+	private ClusterRouteTable(long version, Map<String, ClusterNode> masters, Map<String, ClusterNode[]> replicas,
+			PhysicalNode[] nodes, ClusterNode[] slotMasters, ClusterNode[][] slotReplicas) {
+		this.version = version;
+		this.masters = masters;
+		this.replicas = replicas;
+		this.nodes = nodes;
+		this.slotMasters = slotMasters;
+		this.slotReplicas = slotReplicas;
+	}
+
+	/**
+	 * masters、 replicas 的物理节点需已初始化
+	 */
+	public static ClusterRouteTable build(long version, Map<String, ClusterNode> masters, Map<String, ClusterNode[]> replicas) {
+
+		PhysicalNode[] nodes = new PhysicalNode[ SLOT_COUNT ];
+		ClusterNode[] slotMasters = new ClusterNode[ SLOT_COUNT ];
+		ClusterNode[][] slotReplicas = new ClusterNode[ SLOT_COUNT ][];
+
+		for (ClusterNode master : masters.values()) {
+
+			PhysicalNode physicalNode = master.isConnected() && !master.isFail() ? master.getPhysicalNode() : null;
+			ClusterNode[] slaves = replicas.get( master.getId() );
+			for (SlotRange slotRange : master.getSlotRanges()) {
+				for (int i = slotRange.getStart(); i <= slotRange.getEnd(); i++) {
+					nodes[i] = physicalNode;
+					slotMasters[i] = master;
+					slotReplicas[i] = slaves;
+				}
+			}
+		}
+
+		Map<String, ClusterNode> copy = Collections.unmodifiableMap( new HashMap<String, ClusterNode>( masters ) );
+		Map<String, ClusterNode[]> replicasCopy = Collections.unmodifiableMap( new HashMap<String, ClusterNode[]>( replicas ) );
+		return new ClusterRouteTable(version, copy, replicasCopy, nodes, slotMasters, slotReplicas);
+	}
+
+	public static ClusterRouteTable empty() {
+		Map<String, ClusterNode> masters = Collections.emptyMap();
+		Map<String, ClusterNode[]> replicas = Collections.emptyMap();
+		return new ClusterRouteTable(0, masters, replicas, new PhysicalNode[ SLOT_COUNT ], new ClusterNode[ SLOT_COUNT ], 
+				new ClusterNode[ SLOT_COUNT ][]);
+	}
+
+	/**
+	 * 复制出新版本， 单个 slot 改为指向 master (MOVED)
+	 */
+	public ClusterRouteTable withSlot(int slot, ClusterNode master) {
+		PhysicalNode[] newNodes = nodes.clone();
+		ClusterNode[] newSlotMasters = slotMasters.clone();
+		ClusterNode[][] newSlotReplicas = slotReplicas.clone();
+		newNodes[ slot ] = master.getPhysicalNode();
+		newSlotMasters[ slot ] = master;
+		newSlotReplicas[ slot ] = replicas.get( master.getId() );
+		return new ClusterRouteTable(version + 1, masters, replicas, newNodes, newSlotMasters, newSlotReplicas);
+	}
+	
+	public ClusterNode findMaster(String host, int port) {
+		for (ClusterNode master : masters.values()) {
+			if ( master.getPort() == port && master.getHost().equals( host ) ) {
+				return master;
+			}
+		}
+		return null;
+	}
+
+	public PhysicalNode getNode(int slot) {
+		return nodes[ slot ];
+	}
+
+	public ClusterNode getMaster(int slot) {
+		return slotMasters[ slot ];
+	}
+
+	public ClusterNode[] getReplicas(int slot) {
+		return slotReplicas[ slot ];
+	}
+
+	public Map<String, ClusterNode> getMasters() {
+		return masters;
+	}
+	
+	public Map<String, ClusterNode[]> getReplicas() {
+		return replicas;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+}
@@ -0,0 +1,163 @@
+package com.feeyo.redis.net.backend.pool.cluster;
+
+import java.util.Arrays;
+
+/**
+ * 基于 byte[] 的 slot 计算， 不需要构建 String
+ *
+ * 1、hash tag 规则与 redis cluster 一致， 取第一个 '{' 与其后第一个 '}' 之间的非空内容
+ * 2、CRC16 (XMODEM, 多项式 0x1021) 采用 slicing-by-8 查表， 每轮处理 8 个字节
+ * 3、可选的直接映射缓存， 用于热点 key， 无锁
+ */
+public final class ClusterSlotCalculator {
+
+	private static final int SLOT_MASK = 16383;
+
+	private static final int MAX_CACHED_KEY_LENGTH = 128;
+
+	// T[k][b] 为字节 b 后跟 k 个 0 字节的 CRC16
+	private static final int[][] T = new int[ 8 ][ 256 ];
+
+	static {
+		for (int b = 0; b < 256; b++) {
+			int crc = b << 8;
+			for (int i = 0; i < 8; i++) {
+				crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+			}
+			T[0][b] = crc & 0xFFFF;
+		}
+
+		for (int k = 1; k < 8; k++) {
+			for (int b = 0; b < 256; b++) {
+				int crc = T[k - 1][b];
+				T[k][b] = ((crc << 8) ^ T[0][ (crc >>> 8) & 0xFF ]) & 0xFFFF;
+			}
+		}
+	}
+
+	// 热点 key 缓存， 未开启时为 null
+	private static volatile SlotCache cache = null;
+
+	private ClusterSlotCalculator() {
+		throw new InstantiationError("Must not instantiate this class");
+	}
+
+	/**
+	 * 开启热点 key 缓存， size 向上取 2 的幂， <= 0 关闭
+	 */
+	public static void setCacheSize(int size) {
+		cache = size > 0 ? new SlotCache( size ) : null;
+	}
+
+	public static int getSlot(byte[] key) {
+		SlotCache c = cache;
+		if ( c != null && key.length <= MAX_CACHED_KEY_LENGTH ) {
+			return c.getSlot( key );
+		}
+		return calculate(key, 0, key.length);
+	}
+
+	/**
+	 * 不经过缓存计算 [offset, offset + length) 的 slot
+	 */
+	public static int calculate(byte[] key, int offset, int length) {
+
+		int end = offset + length;
+
+		// hash tag
+		for (int i = offset; i < end; i++) {
+			if ( key[i] == '{' ) {
+				for (int j = i + 1; j < end; j++) {
+					if ( key[j] == '}' ) {
+						if ( j != i + 1 ) {
+							return crc16(key, i + 1, j - i - 1) & SLOT_MASK;
+						}
+						break;
+					}
+				}
+				break;
+			}
+		}
+		return crc16(key, offset, length) & SLOT_MASK;
+	}
+
+	public static int crc16(byte[] buf, int offset, int length) {
+
+		int crc = 0;
+		int i = offset;
+		int end = offset + length;
+
+		// 每轮 8 字节， 前两个字节与当前 crc 异或
+		for (int limit = end - 7; i < limit; i += 8) {
+			crc = T[7][ ((crc >>> 8) ^ buf[i]) & 0xFF ]
+				^ T[6][ (crc ^ buf[i + 1]) & 0xFF ]
+				^ T[5][ buf[i + 2] & 0xFF ]
+				^ T[4][ buf[i + 3] & 0xFF ]
+				^ T[3][ buf[i + 4] & 0xFF ]
+				^ T[2][ buf[i + 5] & 0xFF ]
+				^ T[1][ buf[i + 6] & 0xFF ]
+				^ T[0][ buf[i + 7] & 0xFF ];
+		}
+
+		// 剩余字节
+		for (; i < end; i++) {
+			crc = ((crc << 8) ^ T[0][ ((crc >>> 8) ^ buf[i]) & 0xFF ]) & 0xFFFF;
+		}
+		return crc;
+	}
+
+	/**
+	 * 直接映射的 slot 缓存
+	 *
+	 * 槽位存放不可变的 Entry， 并发下最多是互相覆盖或重复计算，不会读到错误结果；
+	 * 索引只取 key 的长度与首尾各 8 个字节， 比完整的 CRC16 更省
+	 */
+	static final class SlotCache {
+
+		private final Entry[] entries;
+		private final int mask;
+
+		SlotCache(int size) {
+			int capacity = Integer.highestOneBit( Math.max(size - 1, 1) ) << 1;
+			this.entries = new Entry[ capacity ];
+			this.mask = capacity - 1;
+		}
+
+		int getSlot(byte[] key) {
+			int idx = index( key ) & mask;
+
+			Entry e = entries[ idx ];
+			if ( e != null && Arrays.equals(e.key, key) ) {
+				return e.slot;
+			}
+
+			int slot = calculate(key, 0, key.length);
+			entries[ idx ] = new Entry( key.clone(), slot );
+			return slot;
+		}
+
+		private static int index(byte[] key) {
+			int len = key.length;
+			int h = len;
+			int n = Math.min(len, 8);
+			for (int i = 0; i < n; i++) {
+				h = 31 * h + key[i];
+			}
+			for (int i = Math.max(n, len - 8); i < len; i++) {
+				h = 31 * h + key[i];
+			}
+			h *= 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+
+	static final class Entry {
+		final byte[] key;
+		final int slot;
+
+		Entry(byte[] key, int slot) {
+			this.key = key;
+			this.slot = slot;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.feeyo.redis.net.backend.pool.cluster;
+
+/**
+ * ClusterSlotCalculator 与 ClusterCRC16Util 的结果校验及吞吐对比
+ */
+public class ClusterSlotCalculatorTest {
+
+	private static final int TOTAL_OPERATIONS = 100000000;
+
+	private static String[] TEST_SET = { "", "123456789", "sfger132515", "hae9Napahngaikeethievubaibogiech",
+			"AAAAAAAAAAAAAAAAAAAAAA", "Hello, World!", "user:{10086}:profile", "{}abc", "order:2018:09:30:CA1234:PEK:SHA" };
+
+	public static void main(String[] args) {
+
+		byte[][] keys = new byte[ TEST_SET.length ][];
+		for (int i = 0; i < TEST_SET.length; i++) {
+			keys[i] = TEST_SET[i].getBytes();
+
+			int expected = ClusterCRC16Util.getSlot( TEST_SET[i] );
+			int actual = ClusterSlotCalculator.calculate(keys[i], 0, keys[i].length);
+			if ( expected != actual ) {
+				throw new IllegalStateException("slot mismatch, key=" + TEST_SET[i] + ", expected=" + expected + ", actual=" + actual);
+			}
+		}
+
+		// 3 轮， 第 1 轮预热
+		for (int round = 0; round < 3; round++) {
+			long sum = 0;
+
+			long begin = System.currentTimeMillis();
+			for (int n = 0; n < TOTAL_OPERATIONS; n++) {
+				sum += ClusterCRC16Util.getSlot( TEST_SET[n % TEST_SET.length] );
+			}
+			long elapsed1 = System.currentTimeMillis() - begin;
+
+			begin = System.currentTimeMillis();
+			for (int n = 0; n < TOTAL_OPERATIONS; n++) {
+				sum += ClusterCRC16Util.getSlot( keys[n % keys.length] );
+			}
+			long elapsed2 = System.currentTimeMillis() - begin;
+
+			ClusterSlotCalculator.setCacheSize( 0 );
+			begin = System.currentTimeMillis();
+			for (int n = 0; n < TOTAL_OPERATIONS; n++) {
+				sum += ClusterSlotCalculator.getSlot( keys[n % keys.length] );
+			}
+			long elapsed3 = System.currentTimeMillis() - begin;
+
+			ClusterSlotCalculator.setCacheSize( 1024 );
+			begin = System.currentTimeMillis();
+			for (int n = 0; n < TOTAL_OPERATIONS; n++) {
+				sum += ClusterSlotCalculator.getSlot( keys[n % keys.length] );
+			}
+			long elapsed4 = System.currentTimeMillis() - begin;
+
+			System.out.println("round " + round + ", sum=" + sum);
+			System.out.println("  ClusterCRC16Util(String)       " + ((1000L * TOTAL_OPERATIONS) / Math.max(elapsed1, 1)) + " ops");
+			System.out.println("  ClusterCRC16Util(byte[])       " + ((1000L * TOTAL_OPERATIONS) / Math.max(elapsed2, 1)) + " ops");
+			System.out.println("  ClusterSlotCalculator          " + ((1000L * TOTAL_OPERATIONS) / Math.max(elapsed3, 1)) + " ops");
+			System.out.println("  ClusterSlotCalculator(cache)   " + ((1000L * TOTAL_OPERATIONS) / Math.max(elapsed4, 1)) + " ops");
+		}
+	}
+
+}
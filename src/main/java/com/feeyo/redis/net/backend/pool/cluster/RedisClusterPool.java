@@ -3,18 +3,25 @@ package com.feeyo.redis.net.backend.pool.cluster;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.feeyo.redis.config.PoolCfg;
+import com.feeyo.redis.config.UserCfg;
+import com.feeyo.redis.engine.RedisEngineCtx;
 import com.feeyo.redis.net.backend.BackendConnection;
 import com.feeyo.redis.net.backend.RedisBackendConnectionFactory;
 import com.feeyo.redis.net.backend.pool.AbstractPool;
 import com.feeyo.redis.net.backend.pool.ConHeartBeatHandler;
 import com.feeyo.redis.net.backend.pool.PhysicalNode;
+import com.feeyo.redis.nio.NetSystem;
 import com.feeyo.redis.nio.util.TimeUtil;
 import com.feeyo.util.jedis.RedisCommand;
 import com.feeyo.util.jedis.JedisConnection;
@@ -24,6 +31,8 @@ import com.google.common.collect.Sets;
 /**
  * 新的实现，去除了对 slave 关系的维护
  * 
+ * 存在 readReplica 用户时， 额外维护 slave 的只读连接， 仅用于这些用户的读指令
+ * 
  * @author zhuam 
  */
 
@@ -31,6 +40,7 @@ public class RedisClusterPool extends AbstractPool {
 	
 	protected ConHeartBeatHandler conHeartBeatHanler = new ConHeartBeatHandler();
 	protected RedisBackendConnectionFactory backendConFactory = new RedisBackendConnectionFactory();
+	protected RedisBackendConnectionFactory replicaConFactory = new ReplicaConnectionFactory();
 	
 	public static final String LOCALHOST_STR = getLocalHostQuietly();
 	
@@ -38,15 +48,22 @@ public class RedisClusterPool extends AbstractPool {
 	public volatile long heartbeatTime = -1;
 	
 	/**
-	 * 主节点
+	 * 路由快照， 包含主节点及 [0-16383] slot 到物理节点的映射， 整体替换
+	 */
+	private volatile ClusterRouteTable routeTable = ClusterRouteTable.empty();
+	
+	/**
+	 * MOVED/ASK 触发的拓扑刷新， 限频
 	 */
-	private Map<String, ClusterNode> masters = new HashMap<String, ClusterNode>(6);
+	private static final long REFRESH_INTERVAL = 1000L;
+	private final AtomicLong lastRefreshTime = new AtomicLong(0);
 	
 	/**
-	 * cluster把所有的物理节点映射到[0-16383]slot 的数组
-	 * masterIds[ slot ] = masterId
+	 * slave 复制延迟探测， 每个节点保持一条探测长连接， 单次检测的总耗时有上限
 	 */
-	private String[] masterIds = new String[ 16384 ];				
+	private static final int PROBE_TIMEOUT = 500;
+	private static final long MAX_LAG_CHECK_MILLS = 1500L;
+	private final Map<String, JedisConnection> probeCons = new ConcurrentHashMap<String, JedisConnection>();
 	
 	
 	/**
@@ -110,16 +127,7 @@ public class RedisClusterPool extends AbstractPool {
 						continue;
 					}
 					
-					if (host.equals("127.0.0.1") 
-							|| host.startsWith("localhost") 
-							|| host.equals("0.0.0.0")
-							|| host.startsWith("169.254") 
-							|| host.startsWith("::1") 
-							|| host.startsWith("0:0:0:0:0:0:0:1")) {
-						node.setHost( LOCALHOST_STR );
-					} else {
-						node.setHost( host );
-					}
+					node.setHost( normalizeHost( host ) );
 					
 					// 端口
 					node.setPort(Integer.parseInt(fields[1].split(":")[1]));
@@ -215,6 +223,7 @@ public class RedisClusterPool extends AbstractPool {
 	public boolean startup() {	
 		
 		// 基于配置 自动发现 NODES 		
+		Map<String, ClusterNode> masters = new HashMap<String, ClusterNode>(6);
 		List<ClusterNode> clusterNodes = this.discoverClusterNodes();
 		for(ClusterNode clusterNode: clusterNodes) {			
 			
@@ -224,13 +233,6 @@ public class RedisClusterPool extends AbstractPool {
 				String masterId = clusterNode.getId();
 				masters.put(masterId , clusterNode);
 				
-				// 构造 基于 slots 做index 的 masterId 数组				
-				for(SlotRange slotRange: clusterNode.getSlotRanges() ) {
-					for(int i = slotRange.getStart(); i <= slotRange.getEnd(); i++) {
-						masterIds[i] = masterId;
-					}
-				}
-				
 				// 初始化 master 后端连接				
 				int type = poolCfg.getType();
 				String name = poolCfg.getName();
@@ -244,14 +246,34 @@ public class RedisClusterPool extends AbstractPool {
 				clusterNode.setPhysicalNode(physicalNode);				
 			}			
 		}
+		
+		// slave 只读连接
+		Map<String, ClusterNode[]> replicas = buildReplicas(clusterNodes, ClusterRouteTable.empty().getReplicas(),
+				new ArrayList<ClusterNode>(), new ArrayList<ClusterNode>());
+		if ( !replicas.isEmpty() ) {
+			checkReplicaLag(masters, replicas);
+		}
+		
+		// 构造 基于 slots 做index 的路由快照
+		this.routeTable = ClusterRouteTable.build(1, masters, replicas);
 		return true;
 	}
 	
 	@Override
 	public boolean close(boolean isForce) {
-		for (ClusterNode clusterNode : masters.values()) {
+		for (ClusterNode clusterNode : routeTable.getMasters().values()) {
 			clusterNode.getPhysicalNode().clearConnections("manual reload", isForce);
 		}
+		for (ClusterNode[] slaves : routeTable.getReplicas().values()) {
+			for (ClusterNode slave : slaves) {
+				slave.getPhysicalNode().clearConnections("manual reload", isForce);
+			}
+		}
+		
+		for (JedisConnection conn : probeCons.values()) {
+			disconnectQuietly( conn );
+		}
+		probeCons.clear();
 		return true;
 	}
 
@@ -276,7 +298,7 @@ public class RedisClusterPool extends AbstractPool {
 	public PhysicalNode getPhysicalNode(String cmd, byte[] key) {
 		int slot = 0;
 		if( key != null ) {
-			 slot = ClusterCRC16Util.getSlot( key );
+			 slot = ClusterSlotCalculator.getSlot( key );
 		}
 		PhysicalNode node = getPhysicalNodeBySlot( slot );
 		return node;
@@ -289,24 +311,56 @@ public class RedisClusterPool extends AbstractPool {
 			return null;
 		}
 		
-		String masterId = this.masterIds[ slot ];
-		ClusterNode master = this.masters.get( masterId );
-		if ( master == null ) {
-			return null;
+		ClusterRouteTable table = this.routeTable;
+		PhysicalNode physicalNode = table.getNode( slot );
+		if ( physicalNode != null ) {
+			return physicalNode;
 		}
 		
-		if ( LOGGER.isDebugEnabled() ) {
-			LOGGER.debug("Get physical node {}:{}, masterId={}, slot={} " , new Object[] { master.getHost(), master.getPort(), masterId, slot } );
+		ClusterNode master = table.getMaster( slot );
+		if ( master != null ) {
+			LOGGER.error("Get physical node err: slot={}, masterId={}, master={}, version={}",
+					new Object[]{ slot, master.getId(), master, table.getVersion() } );
 		}
+		return null;
+	}
+
+	/**
+	 * 读指令优先选择复制未落后、 心跳往返时延最低的 slave， 没有可读 slave 时回退到 master
+	 */
+	public PhysicalNode getReplicaNodeBySlot(int slot) {
 		
-		if ( master.isConnected() && !master.isFail() ) {
-			return master.getPhysicalNode();
-		}	
-		
-		LOGGER.error("Get physical node err: slot={}, masterId={}, master={}",
-				new Object[]{ slot, masterId, master } );
+		if ( heartbeatStatus == -1 ) {
+			return null;
+		}
 		
-		return null;
+		ClusterNode[] slaves = this.routeTable.getReplicas( slot );
+		if ( slaves != null ) {
+			
+			PhysicalNode best = null;
+			double bestRtt = Double.MAX_VALUE;
+			for (ClusterNode slave : slaves) {
+				if ( !slave.isReadable() ) {
+					continue;
+				}
+				
+				// 尚无样本的排在最后
+				PhysicalNode physicalNode = slave.getPhysicalNode();
+				double rtt = physicalNode.getRttEwma();
+				if ( rtt == 0 ) {
+					rtt = Double.MAX_VALUE;
+				}
+				if ( best == null || rtt < bestRtt ) {
+					best = physicalNode;
+					bestRtt = rtt;
+				}
+			}
+			
+			if ( best != null ) {
+				return best;
+			}
+		}
+		return getPhysicalNodeBySlot( slot );
 	}
 
 	@Override
@@ -350,7 +404,6 @@ public class RedisClusterPool extends AbstractPool {
 				 *  新的节点信息
 				 */
 				Map<String, ClusterNode> newMasters = new HashMap<String, ClusterNode>(6);
-				String[] newMasterIds = new String[ 16384 ];	
 				
 				/**
 				 * 1、提取所有的 master
@@ -361,16 +414,23 @@ public class RedisClusterPool extends AbstractPool {
 					if ( clusterNode.getType().equalsIgnoreCase("master") ) {
 						String masterId = clusterNode.getId();
 						newMasters.put(masterId, clusterNode);
-						
-						// 构造 newMasterIds
-						for(SlotRange slotRange: clusterNode.getSlotRanges() ) {
-							for(int i = slotRange.getStart(); i <= slotRange.getEnd(); i++) {
-								newMasterIds[i] = masterId;
-							}
-						}
 					}			
 				}	
 				
+				ClusterRouteTable oldTable = this.routeTable;
+				Map<String, ClusterNode> masters = oldTable.getMasters();
+				
+				/**
+				 * 1.1、 slave 只读连接， 成员变化时重建路由快照， 可用状态在路由时实时判断
+				 */
+				List<ClusterNode> addedReplicas = new ArrayList<ClusterNode>();
+				List<ClusterNode> removedReplicas = new ArrayList<ClusterNode>();
+				Map<String, ClusterNode[]> newReplicas = buildReplicas(clusterNodes, oldTable.getReplicas(), addedReplicas, removedReplicas);
+				if ( !newReplicas.isEmpty() ) {
+					checkReplicaLag(newMasters, newReplicas);
+				}
+				boolean isReplicaDiff = !addedReplicas.isEmpty() || !removedReplicas.isEmpty();
+				
 				/**
 				 * 2、判断是否有新增 master 、移除 master
 				 * 3、判断 master slot range 是否发生变化
@@ -381,6 +441,7 @@ public class RedisClusterPool extends AbstractPool {
 				boolean isNodeAdd = false;
 				boolean isNodeDel = false;
 				boolean isNodeSoltDiff = false;
+				boolean isNodeStatusDiff = false;		// 可用状态变化， 只需重建路由快照
 						
 				for (Map.Entry<String, ClusterNode> newEntry : newMasters.entrySet()) {
 					String masterId = newEntry.getKey();
@@ -395,6 +456,10 @@ public class RedisClusterPool extends AbstractPool {
 						logBuffer.append( "\r\n" );
 						
 					} else {
+						if ( oldMaster.isConnected() != newMaster.isConnected() || oldMaster.isFail() != newMaster.isFail() ) {
+							isNodeStatusDiff = true;
+						}
+						
 						// 状态信息更新
 						oldMaster.setConnectInfo( newMaster.getConnectInfo()  );
 						oldMaster.setConnected( newMaster.isConnected()  );
@@ -462,19 +527,29 @@ public class RedisClusterPool extends AbstractPool {
 						clusterNode.setPhysicalNode( physicalNode );
 					}
 					
-					// 备份old
-					Map<String, ClusterNode> oldMasters = this.masters;
-					
-					// 切换new
-					this.masterIds = newMasterIds;
-					this.masters = newMasters;
+					// 切换new， 旁路构建后整体替换， 与 onMoved 的修正互斥
+					synchronized ( this ) {
+						this.routeTable = ClusterRouteTable.build(this.routeTable.getVersion() + 1, newMasters, newReplicas);
+					}
 					
 					// 清理old
-					for (ClusterNode clusterNode : oldMasters.values()) {	
+					for (ClusterNode clusterNode : masters.values()) {	
 						clusterNode.getPhysicalNode().clearConnections("this node exception, automatic reload", true);
 					}
-					oldMasters.clear();
+					
+				} else if ( isNodeStatusDiff || isReplicaDiff ) {
+					
+					LOGGER.warn("ClusterStatusChange: heartbeat={}, version={}, replicaAdd={}, replicaDel={}", 
+							new Object[]{ heartbeatTime, oldTable.getVersion() + 1, addedReplicas.size(), removedReplicas.size() });
+					synchronized ( this ) {
+						this.routeTable = ClusterRouteTable.build(this.routeTable.getVersion() + 1, masters, newReplicas);
+					}
 				} 
+				
+				// 清理移除的 slave
+				for (ClusterNode slave : removedReplicas) {
+					slave.getPhysicalNode().clearConnections("replica removed", true);
+				}
 			}
 			
 		} finally {
@@ -486,11 +561,17 @@ public class RedisClusterPool extends AbstractPool {
 	public void heartbeatCheck(long timeout) {	
 		
 		// 心跳
-		for (ClusterNode clusterNode : masters.values()) {			
+		for (ClusterNode clusterNode : routeTable.getMasters().values()) {			
 			
 			PhysicalNode physicalNode = clusterNode.getPhysicalNode();
 			this.heartbeatCheck( physicalNode, timeout );
 		}
+		
+		for (ClusterNode[] slaves : routeTable.getReplicas().values()) {
+			for (ClusterNode slave : slaves) {
+				this.heartbeatCheck( slave.getPhysicalNode(), timeout );
+			}
+		}
 	}
 	
 	// 
@@ -501,7 +582,7 @@ public class RedisClusterPool extends AbstractPool {
 		long heartbeatTime = TimeUtil.currentTimeMillis() - timeout;		
 		long closeTime = TimeUtil.currentTimeMillis() - (timeout * 2);
 		
-		LinkedList<BackendConnection> heartBeatCons = getNeedHeartbeatCons(physicalNode.conQueue.getCons(), heartbeatTime, closeTime);			
+		LinkedList<BackendConnection> heartBeatCons = getNeedHeartbeatCons(physicalNode.conQueue, heartbeatTime, closeTime);			
 		if ( !heartBeatCons.isEmpty() ) { 			
 			for (BackendConnection conn : heartBeatCons) {
 				conHeartBeatHanler.doHeartBeat(conn, PING);
@@ -546,6 +627,260 @@ public class RedisClusterPool extends AbstractPool {
 		
 	}
 	
+	// 是否存在使用本池且开启 readReplica 的用户， RELOAD USER 后在下次 availableCheck 生效
+	private boolean isReplicaEnabled() {
+		Map<String, UserCfg> userMap = RedisEngineCtx.INSTANCE().getUserMap();
+		if ( userMap == null ) {
+			return false;
+		}
+		for (UserCfg userCfg : userMap.values()) {
+			if ( userCfg.isReadReplica() && userCfg.getPoolId() == this.getId() ) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 按 masterId 归组 slave， 沿用未变化的 slave 及其连接， 新 slave 建立只读连接
+	 */
+	private Map<String, ClusterNode[]> buildReplicas(List<ClusterNode> clusterNodes, Map<String, ClusterNode[]> oldReplicas,
+			List<ClusterNode> addedReplicas, List<ClusterNode> removedReplicas) {
+		
+		Map<String, ClusterNode> oldSlaves = new HashMap<String, ClusterNode>();
+		for (ClusterNode[] slaves : oldReplicas.values()) {
+			for (ClusterNode slave : slaves) {
+				oldSlaves.put(slave.getId(), slave);
+			}
+		}
+		
+		Map<String, List<ClusterNode>> groups = new HashMap<String, List<ClusterNode>>();
+		if ( isReplicaEnabled() ) {
+			for (ClusterNode clusterNode : clusterNodes) {
+				
+				if ( !clusterNode.getType().equalsIgnoreCase("slave") || clusterNode.getId().equals( clusterNode.getMasterId() ) ) {
+					continue;
+				}
+				
+				ClusterNode slave = oldSlaves.remove( clusterNode.getId() );
+				if ( slave != null && slave.getPort() == clusterNode.getPort() && slave.getHost().equals( clusterNode.getHost() )
+						&& slave.getMasterId().equals( clusterNode.getMasterId() ) ) {
+					
+					// 状态信息更新
+					slave.setConnectInfo( clusterNode.getConnectInfo() );
+					slave.setConnected( clusterNode.isConnected() );
+					slave.setFlagInfo( clusterNode.getFlagInfo() );
+					slave.setFail( clusterNode.isFail() );
+					
+				} else {
+					if ( slave != null ) {
+						removedReplicas.add( slave );
+					}
+					
+					// 探测复制延迟之前不参与读
+					slave = clusterNode;
+					slave.setLagging( true );
+					PhysicalNode physicalNode = new PhysicalNode(replicaConFactory, poolCfg.getType(), poolCfg.getName(), 
+							poolCfg.getMinCon(), poolCfg.getMaxCon(), slave.getHost(), slave.getPort() );
+					physicalNode.initConnections();
+					slave.setPhysicalNode( physicalNode );
+					addedReplicas.add( slave );
+				}
+				
+				List<ClusterNode> group = groups.get( slave.getMasterId() );
+				if ( group == null ) {
+					group = new ArrayList<ClusterNode>(2);
+					groups.put(slave.getMasterId(), group);
+				}
+				group.add( slave );
+			}
+		}
+		removedReplicas.addAll( oldSlaves.values() );
+		
+		Map<String, ClusterNode[]> replicas = new HashMap<String, ClusterNode[]>( groups.size() );
+		for (Map.Entry<String, List<ClusterNode>> entry : groups.entrySet()) {
+			replicas.put(entry.getKey(), entry.getValue().toArray( new ClusterNode[ entry.getValue().size() ] ));
+		}
+		return replicas;
+	}
+	
+	/**
+	 * 比较 master_repl_offset 与 slave_repl_offset， 落后超过 replicaMaxLag 字节或复制链路断开的 slave 不参与读
+	 * 
+	 * 超过 MAX_LAG_CHECK_MILLS 后剩余的 slave 保持原状态， 留待下次检测
+	 */
+	private void checkReplicaLag(Map<String, ClusterNode> masters, Map<String, ClusterNode[]> replicas) {
+		
+		long maxLag = NetSystem.getInstance().getNetConfig().getReplicaMaxLag();
+		long deadline = System.currentTimeMillis() + MAX_LAG_CHECK_MILLS;
+		Set<String> probeAddrs = new HashSet<String>();
+		
+		for (Map.Entry<String, ClusterNode[]> entry : replicas.entrySet()) {
+			
+			ClusterNode master = masters.get( entry.getKey() );
+			if ( master != null ) {
+				probeAddrs.add( master.getHost() + ":" + master.getPort() );
+			}
+			for (ClusterNode slave : entry.getValue()) {
+				probeAddrs.add( slave.getHost() + ":" + slave.getPort() );
+			}
+			
+			if ( System.currentTimeMillis() > deadline ) {
+				LOGGER.warn("replica lag check over {} ms, skip master={}", MAX_LAG_CHECK_MILLS, entry.getKey());
+				continue;
+			}
+			
+			long masterOffset = master == null ? -1 : getReplicationOffset(master, "master_repl_offset:");
+			
+			for (ClusterNode slave : entry.getValue()) {
+				
+				if ( System.currentTimeMillis() > deadline ) {
+					break;
+				}
+				
+				long offset = -1;
+				if ( masterOffset >= 0 && slave.isConnected() && !slave.isFail() ) {
+					offset = getReplicationOffset(slave, "slave_repl_offset:");
+				}
+				
+				boolean isLagging = offset < 0 || masterOffset - offset > maxLag;
+				if ( isLagging != slave.isLagging() ) {
+					LOGGER.warn("replica lag change: node={}:{}, lagging={}, masterOffset={}, offset={}", 
+							new Object[]{ slave.getHost(), slave.getPort(), isLagging, masterOffset, offset });
+					slave.setLagging( isLagging );
+				}
+			}
+		}
+		
+		// 关闭已下线节点的探测连接
+		Iterator<Map.Entry<String, JedisConnection>> it = probeCons.entrySet().iterator();
+		while ( it.hasNext() ) {
+			Map.Entry<String, JedisConnection> entry = it.next();
+			if ( !probeAddrs.contains( entry.getKey() ) ) {
+				it.remove();
+				disconnectQuietly( entry.getValue() );
+			}
+		}
+	}
+	
+	// INFO replication 中的复制偏移量， slave 复制链路断开或查询失败返回 -1
+	private long getReplicationOffset(ClusterNode node, String field) {
+		
+		String addr = node.getHost() + ":" + node.getPort();
+		JedisConnection conn = probeCons.get( addr );
+		if ( conn == null ) {
+			conn = new JedisConnection( node.getHost(), node.getPort(), PROBE_TIMEOUT, PROBE_TIMEOUT);
+			probeCons.put(addr, conn);
+		}
+		
+		boolean isBroken = true;
+		try {
+			conn.sendCommand( RedisCommand.INFO, "replication");
+			String info = conn.getBulkReply();
+			isBroken = false;
+			if ( info == null || info.indexOf("master_link_status:down") > -1 ) {
+				return -1;
+			}
+			
+			for (String line : info.split("\r\n")) {
+				if ( line.startsWith( field ) ) {
+					return Long.parseLong( line.substring( field.length() ).trim() );
+				}
+			}
+			
+		} catch (JedisConnectionException e) {
+			LOGGER.warn("replication offset err: " + node.getHost() + ":" + node.getPort(), e);
+		} catch (NumberFormatException e) {
+			LOGGER.warn("replication offset err: " + node.getHost() + ":" + node.getPort(), e);
+		} finally {
+			// 超时等异常后应答可能错位， 下次重连
+			if ( isBroken ) {
+				probeCons.remove( addr );
+				disconnectQuietly( conn );
+			}
+		}
+		return -1;
+	}
+	
+	private static void disconnectQuietly(JedisConnection conn) {
+		try {
+			conn.disconnect();
+		} catch (JedisConnectionException e) {
+			// ignore
+		}
+	}
+	
+	private static String normalizeHost(String host) {
+		if (host.equals("127.0.0.1") 
+				|| host.startsWith("localhost") 
+				|| host.equals("0.0.0.0")
+				|| host.startsWith("169.254") 
+				|| host.startsWith("::1") 
+				|| host.startsWith("0:0:0:0:0:0:0:1")) {
+			return LOCALHOST_STR;
+		}
+		return host;
+	}
+	
+	/**
+	 * MOVED， slot 已迁移到 host:port， 立即修正路由快照并触发拓扑刷新
+	 * 
+	 * 快照的发布都在 this 锁内， 修正基于当前快照， 刷新后旧快照的节点不再修正
+	 * 
+	 * @return 目标物理节点， 未知节点返回 null
+	 */
+	public PhysicalNode onMoved(int slot, String host, int port) {
+		
+		requestRefresh();
+		
+		ClusterNode master = routeTable.findMaster(normalizeHost( host ), port);
+		if ( master == null ) {
+			LOGGER.warn("moved to unknown node, slot={}, node={}:{}", new Object[]{ slot, host, port });
+			return null;
+		}
+		
+		PhysicalNode physicalNode = master.getPhysicalNode();
+		synchronized ( this ) {
+			ClusterRouteTable table = this.routeTable;
+			if ( table.getNode( slot ) != physicalNode && table.getMasters().containsValue( master ) ) {
+				this.routeTable = table.withSlot(slot, master);
+			}
+		}
+		return physicalNode;
+	}
+	
+	/**
+	 * ASK， 迁移中的单次重定向， 不修改路由
+	 */
+	public PhysicalNode onAsk(int slot, String host, int port) {
+		
+		ClusterNode master = routeTable.findMaster(normalizeHost( host ), port);
+		if ( master == null ) {
+			LOGGER.warn("ask to unknown node, slot={}, node={}:{}", new Object[]{ slot, host, port });
+			requestRefresh();
+			return null;
+		}
+		return master.getPhysicalNode();
+	}
+	
+	/**
+	 * 异步刷新拓扑， REFRESH_INTERVAL 内最多一次
+	 */
+	public void requestRefresh() {
+		long now = TimeUtil.currentTimeMillis();
+		long last = lastRefreshTime.get();
+		if ( now - last < REFRESH_INTERVAL || !lastRefreshTime.compareAndSet(last, now) ) {
+			return;
+		}
+		
+		NetSystem.getInstance().getTimerExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				availableCheck();
+			}
+		});
+	}
+	
 	private static String getLocalHostQuietly() {
 		String localAddress;
 		try {
@@ -557,7 +892,11 @@ public class RedisClusterPool extends AbstractPool {
 	}
 	
 	public Map<String, ClusterNode> getMasters() {
-		return masters;
+		return routeTable.getMasters();
+	}
+	
+	public Map<String, ClusterNode[]> getReplicas() {
+		return routeTable.getReplicas();
 	}
 
 	@Override
@@ -0,0 +1,22 @@
+package com.feeyo.redis.net.backend.pool.cluster;
+
+import java.io.IOException;
+
+import com.feeyo.redis.net.backend.BackendConnection;
+import com.feeyo.redis.net.backend.RedisBackendConnectionFactory;
+import com.feeyo.redis.net.backend.callback.BackendCallback;
+import com.feeyo.redis.net.backend.callback.ReadOnlyCallback;
+import com.feeyo.redis.net.backend.pool.PhysicalNode;
+
+/**
+ * 集群从节点的后端连接， 建立后先进入 READONLY 模式
+ */
+public class ReplicaConnectionFactory extends RedisBackendConnectionFactory {
+
+	@Override
+	public BackendConnection make(PhysicalNode physicalNode, 
+			BackendCallback callback, Object attachement) throws IOException {
+		return super.make(physicalNode, new ReadOnlyCallback( callback ), attachement);
+	}
+
+}
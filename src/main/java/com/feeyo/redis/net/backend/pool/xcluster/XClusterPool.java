@@ -137,7 +137,7 @@ public class XClusterPool extends AbstractPool{
 		long heartbeatTime = System.currentTimeMillis() - timeout;
 		long closeTime = System.currentTimeMillis() - timeout * 2;
 		
-		LinkedList<BackendConnection> heartBeatCons = getNeedHeartbeatCons( physicalNode.conQueue.getCons(), heartbeatTime, closeTime);			
+		LinkedList<BackendConnection> heartBeatCons = getNeedHeartbeatCons( physicalNode.conQueue, heartbeatTime, closeTime);			
 		for (BackendConnection conn : heartBeatCons) {
 			conHeartBeatHanler.doHeartBeat(conn, PING );
 		}
@@ -2,31 +2,138 @@ package com.feeyo.redis.net.codec;
 
 import java.nio.ByteBuffer;
 
+import com.feeyo.redis.net.front.handler.CommandParse;
+import com.feeyo.redis.nio.NetSystem;
+
 public class RedisRequest {
-	
+
 	private static RedisRequestEncoder encode = new RedisRequestEncoder();
 
 	private byte[][] args;
 	private boolean inline = false;
-	
+
 	private RedisRequestPolicy policy;
+	
+	// 指令表中的 id， 路由时解析一次， 后续不再重建指令字符串
+	private static final int UNRESOLVED_CMD_ID = -2;
+	private int cmdId = UNRESOLVED_CMD_ID;
+
+	// 零拷贝模式下，参数以 (buffer, offset, length) 视图的方式引用连接的 readBuffer，按需复制
+	// args[i] == null 表示第 i 个参数尚未物化
+	private ByteBuffer viewBuffer;
+	private int[] viewOffsets;
+	private int[] viewLengths;
+	
+	// 仅保留编码结果的请求， 见 retainEncoded
+	private byte[] encoded;
 
 
 	public byte[][] getArgs() {
+		if ( viewBuffer != null ) {
+			detach();
+		}
 		return args;
 	}
 
 	public void setArgs(byte[][] args) {
 		this.args = args;
+		this.cmdId = UNRESOLVED_CMD_ID;
+		this.viewBuffer = null;
+		this.viewOffsets = null;
+		this.viewLengths = null;
 	}
-	
+
+	/**
+	 * 设置参数视图, offsets 为 buffer 内的绝对位置
+	 */
+	public void setArgViews(ByteBuffer buffer, int[] offsets, int[] lengths) {
+		this.args = new byte[ offsets.length ][];
+		this.cmdId = UNRESOLVED_CMD_ID;
+		this.viewBuffer = buffer;
+		this.viewOffsets = offsets;
+		this.viewLengths = lengths;
+	}
+
+	/**
+	 * 获取单个参数，视图模式下只复制该参数
+	 */
+	public byte[] getArg(int index) {
+		byte[] arg = args[index];
+		if ( arg == null && viewBuffer != null ) {
+			arg = new byte[ viewLengths[index] ];
+			ByteBuffer dup = viewBuffer.duplicate();
+			dup.position( viewOffsets[index] );
+			dup.get( arg );
+			args[index] = arg;
+		}
+		return arg;
+	}
+
+	public void setArg(int index, byte[] arg) {
+		args[index] = arg;
+		if ( index == 0 ) {
+			cmdId = UNRESOLVED_CMD_ID;
+		}
+	}
+
+	public int getArgLength(int index) {
+		byte[] arg = args[index];
+		if ( arg == null && viewBuffer != null ) {
+			return viewLengths[index];
+		}
+		return arg.length;
+	}
+
+	public byte getArgByte(int index, int pos) {
+		byte[] arg = args[index];
+		if ( arg == null && viewBuffer != null ) {
+			return viewBuffer.get( viewOffsets[index] + pos );
+		}
+		return arg[pos];
+	}
+
+	/**
+	 * 将参数写入 dst， 未物化的参数直接从 readBuffer 复制
+	 */
+	void writeArg(int index, ByteBuffer dst) {
+		byte[] arg = args[index];
+		if ( arg == null && viewBuffer != null ) {
+			ByteBuffer dup = viewBuffer.duplicate();
+			dup.limit( viewOffsets[index] + viewLengths[index] );
+			dup.position( viewOffsets[index] );
+			dst.put( dup );
+		} else {
+			dst.put( arg );
+		}
+	}
+
+	public boolean isView() {
+		return viewBuffer != null;
+	}
+
+	/**
+	 * readBuffer 被复用前调用，物化所有未复制的参数，解除对 readBuffer 的引用
+	 */
+	public void detach() {
+		if ( viewBuffer == null ) {
+			return;
+		}
+
+		for (int i = 0; i < args.length; i++) {
+			getArg(i);
+		}
+		viewBuffer = null;
+		viewOffsets = null;
+		viewLengths = null;
+	}
+
 	public int getNumArgs(){
 		if ( args == null )
 			return 0;
 		else
 			return args.length;
 	}
-	
+
 	public boolean isInline() {
 		return inline;
 	}
@@ -38,22 +145,47 @@ public class RedisRequest {
 	public int getSize() {
 		int size = 0;
 		if ( args != null ) {
-			for(byte[] arg: args) {
-				size = size + arg.length;
+			for(int i = 0; i < args.length; i++) {
+				size = size + getArgLength(i);
 			}
 		}
-		return size;		
+		return size;
+	}
+
+	/**
+	 * 复制已编码的请求， 不持有 readBuffer， 用于集群 MOVED / ASK 重发； 返回的请求只支持 encode()
+	 *
+	 * 相比 detach() 逐个物化参数， 只做一次连续复制
+	 */
+	public static RedisRequest retainEncoded(ByteBuffer buffer) {
+		ByteBuffer dup = buffer.duplicate();
+		dup.flip();
+		RedisRequest request = new RedisRequest();
+		request.encoded = new byte[ dup.remaining() ];
+		dup.get( request.encoded );
+		return request;
 	}
 
 	public ByteBuffer encode() {
+		if ( encoded != null ) {
+			ByteBuffer buffer = NetSystem.getInstance().getBufferPool().allocate( encoded.length );
+			buffer.put( encoded );
+			return buffer;
+		}
+		if ( viewBuffer != null ) {
+			return encode.encode( this );
+		}
 		ByteBuffer buffer = encode.encode(args);
-		return buffer;			
+		return buffer;
 	}
-	
+
 	public void clear() {
 		args = null;
+		viewBuffer = null;
+		viewOffsets = null;
+		viewLengths = null;
 	}
-	
+
 	public RedisRequestPolicy getPolicy() {
 		return policy;
 	}
@@ -61,6 +193,33 @@ public class RedisRequest {
 	public void setPolicy(RedisRequestPolicy policy) {
 		this.policy = policy;
 	}
+	
+	public int getCmdId() {
+		if ( cmdId == UNRESOLVED_CMD_ID ) {
+			// 视图模式下直接在 readBuffer 上查找， 不复制
+			if ( args[0] == null && viewBuffer != null ) {
+				cmdId = CommandParse.getCmdId( viewBuffer, viewOffsets[0], viewLengths[0] );
+			} else {
+				cmdId = CommandParse.getCmdId( getArg(0) );
+			}
+		}
+		return cmdId;
+	}
+	
+	public void setCmdId(int cmdId) {
+		this.cmdId = cmdId;
+	}
+	
+	/**
+	 * 大写的指令名， 已知指令直接取指令表内的常量
+	 */
+	public String getCmd() {
+		String cmd = CommandParse.getCmdName( getCmdId() );
+		if ( cmd == null ) {
+			cmd = new String( getArg(0) ).toUpperCase();
+		}
+		return cmd;
+	}
 
 	@Override
 	public String toString() {
@@ -68,7 +227,8 @@ public class RedisRequest {
 		sBuffer.append("\r\n");
 		sBuffer.append("inline=").append( inline ).append("\r\n");
 		if ( args != null ) {
-			for(byte[] arg: args) {
+			for(int i = 0; i < args.length; i++) {
+				byte[] arg = getArg(i);
 				sBuffer.append("arg=").append( arg != null ? new String(arg) : null ).append("\r\n");
 			}
 		}
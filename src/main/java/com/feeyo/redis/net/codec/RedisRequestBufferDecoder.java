@@ -0,0 +1,207 @@
+package com.feeyo.redis.net.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 零拷贝的增量解析器，直接在连接的 readBuffer 上解析 RESP
+ *
+ * 1、参数不复制，以 (buffer, offset, length) 视图挂在 RedisRequest 上，按需物化
+ * 2、半包时记录解析进度，buffer.position 停在未完成请求的起始位置，由连接 compact 后继续读取，
+ *    下次解析从上次的进度继续，不再从头扫描
+ *
+ * 注意：视图只在本次 handleReadEvent 内有效，需要跨越本次调用持有的请求必须先 detach()
+ */
+public class RedisRequestBufferDecoder {
+
+	private enum State {
+		READ_SKIP, 			// 跳过 * 之前的字节
+		READ_ARG_COUNT, 	// 读取参数数量
+		READ_ARG_LENGTH, 	// 读取参数长度
+		READ_ARG  			// 读取参数
+	}
+
+	private State state = State.READ_SKIP;
+
+	// 当前未完成请求已解析的字节数（相对于请求的起始位置）
+	private int _parsed;
+
+	private int argCount;
+	private int argIndex;
+	private int argLength;
+
+	// 相对于请求起始位置的偏移
+	private int[] argOffsets;
+	private int[] argLengths;
+
+	public void reset() {
+		state = State.READ_SKIP;
+		_parsed = 0;
+		argCount = 0;
+		argIndex = 0;
+		argLength = 0;
+		argOffsets = null;
+		argLengths = null;
+	}
+
+	/**
+	 * 解析 [position, limit) 区间的数据, 返回完整的请求；
+	 * 返回后 buffer.position 指向第一个未消费的字节
+	 */
+	public List<RedisRequest> decode(ByteBuffer buffer) throws RedisRequestUnknowException {
+
+		int start = buffer.position();
+		int limit = buffer.limit();
+		int pos = start + _parsed;
+
+		List<RedisRequest> pipeline = null;
+
+		decode : for (;;) {
+			switch (state) {
+			case READ_SKIP: {
+				while (pos < limit && buffer.get(pos) != '*') {
+					pos++;
+				}
+				start = pos;
+				if (pos >= limit) {
+					break decode;
+				}
+				pos++;
+				state = State.READ_ARG_COUNT;
+				break;
+			}
+			case READ_ARG_COUNT: {
+				int end = lineEnd(buffer, pos, limit);
+				if (end == -1) {
+					break decode;
+				}
+				argCount = readInt(buffer, pos, end);
+				pos = end + 2;
+
+				// 空请求, 忽略
+				if (argCount <= 0) {
+					start = pos;
+					state = State.READ_SKIP;
+					break;
+				}
+
+				argIndex = 0;
+				argOffsets = new int[ argCount ];
+				argLengths = new int[ argCount ];
+				state = State.READ_ARG_LENGTH;
+				break;
+			}
+			case READ_ARG_LENGTH: {
+				if (pos >= limit) {
+					break decode;
+				}
+				if (buffer.get(pos) != '$') {
+					throw new RedisRequestUnknowException("Expected '$', got '" + (char) buffer.get(pos) + "'");
+				}
+				int end = lineEnd(buffer, pos + 1, limit);
+				if (end == -1) {
+					break decode;
+				}
+				argLength = readInt(buffer, pos + 1, end);
+				if (argLength < 0) {
+					throw new RedisRequestUnknowException("Invalid bulk length: " + argLength);
+				}
+				pos = end + 2;
+				state = State.READ_ARG;
+				break;
+			}
+			case READ_ARG: {
+				// 等待参数数据及其 CRLF 全部到达
+				if (limit - pos < argLength + 2) {
+					break decode;
+				}
+				argOffsets[argIndex] = pos - start;
+				argLengths[argIndex] = argLength;
+				pos += argLength + 2;
+				argIndex++;
+
+				if (argIndex < argCount) {
+					state = State.READ_ARG_LENGTH;
+					break;
+				}
+
+				// 完整请求
+				for (int i = 0; i < argCount; i++) {
+					argOffsets[i] += start;
+				}
+				RedisRequest request = new RedisRequest();
+				request.setArgViews(buffer, argOffsets, argLengths);
+
+				if (pipeline == null) {
+					pipeline = new ArrayList<RedisRequest>();
+				}
+				pipeline.add(request);
+
+				argOffsets = null;
+				argLengths = null;
+				start = pos;
+				state = State.READ_SKIP;
+				break;
+			}
+			default:
+				throw new RedisRequestUnknowException("Unknown state: " + state);
+			}
+		}
+
+		// 保留未完成请求的数据
+		buffer.position( start );
+		_parsed = pos - start;
+
+		return pipeline;
+	}
+
+	// 返回 \r 的位置， 数据不足返回 -1
+	private int lineEnd(ByteBuffer buffer, int pos, int limit) {
+		for (int i = pos; i < limit - 1; i++) {
+			if (buffer.get(i) == '\r') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int readInt(ByteBuffer buffer, int pos, int end) throws RedisRequestUnknowException {
+		long size = 0;
+		boolean isNeg = false;
+		for (int i = pos; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b == '-') {
+				isNeg = true;
+			} else if (b >= '0' && b <= '9') {
+				size = size * 10 + b - '0';
+				if (size > Integer.MAX_VALUE) {
+					throw new RedisRequestUnknowException("Cannot allocate more than " + Integer.MAX_VALUE + " bytes");
+				}
+			} else {
+				throw new RedisRequestUnknowException("Invalid number: '" + (char) b + "'");
+			}
+		}
+		return (int) (isNeg ? -size : size);
+	}
+
+	public static void main(String[] args) throws RedisRequestUnknowException {
+		RedisRequestBufferDecoder decoder = new RedisRequestBufferDecoder();
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+		byte[] buff = "*2\r\n$3\r\nGET\r\n$2\r\naa\r\n*3\r\n$3\r\nSET\r\n$2\r\naa\r\n$5\r\nhello\r\n".getBytes();
+
+		// 模拟 asynRead： 分两次到达
+		buffer.put(buff, 0, buff.length - 8);
+		buffer.flip();
+		List<RedisRequest> reqs = decoder.decode( buffer );
+		System.out.println( reqs );
+		buffer.compact();
+
+		buffer.put(buff, buff.length - 8, 8);
+		buffer.flip();
+		reqs = decoder.decode( buffer );
+		System.out.println( reqs );
+		buffer.compact();
+	}
+}
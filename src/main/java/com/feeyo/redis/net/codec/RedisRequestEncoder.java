@@ -85,6 +85,45 @@ public class RedisRequestEncoder {
 		}
 	}	
 	
+	/**
+	 * 零拷贝模式，参数视图直接由 readBuffer 复制到 writeBuffer，不经过 byte[]
+	 */
+	public ByteBuffer encode(RedisRequest request) {
+
+		int numArgs = request.getNumArgs();
+		byte[][] lens = new byte[ numArgs + 1 ][];
+		lens[0] = ProtoUtils.convertIntToByteArray( numArgs );
+
+		// 计算 bufferSize
+		int bufferSize = 1 + 2 + lens[0].length;
+		for(int i = 0; i < numArgs; i++) {
+			int argLength = request.getArgLength(i);
+			lens[i+1] = ProtoUtils.convertIntToByteArray( argLength );
+			bufferSize = bufferSize + ( argLength + 5 + lens[i+1].length );  // DOLLAR, CRLF, CRLF, LEN
+		}
+
+		ByteBuffer buffer = NetSystem.getInstance().getBufferPool().allocate( bufferSize );
+		try {
+			buffer.put( ASTERISK );
+			buffer.put( lens[0] );
+			buffer.put( CRLF );
+			for (int i = 0; i < numArgs; i++) {
+				buffer.put( DOLLAR );
+				buffer.put( lens[i+1] );
+				buffer.put( CRLF );
+				request.writeArg(i, buffer);
+				buffer.put( CRLF );
+			}
+			return buffer;
+
+		} catch(BufferOverflowException e) {
+			LOGGER.warn("request enc err: culc size={}, buffer limit={}, capacity={}, postion={}",
+					new Object[] { bufferSize, buffer.limit(), buffer.capacity(), buffer.position() });
+			NetSystem.getInstance().getBufferPool().recycle( buffer );
+			throw e;
+		}
+	}
+
 	public ByteBuffer encode(List<RedisRequest> RedisRequests) {
 		
 		if ( RedisRequests == null ) {
@@ -0,0 +1,152 @@
+package com.feeyo.redis.net.codec;
+
+/**
+ * 只识别应答边界的扫描器，不缓存任何数据， 用于透传
+ *
+ * 逐包扫描，状态跨包保留； bulk 数据按长度跳过， 嵌套 multi-bulk 通过剩余元素数的状态栈维护
+ */
+public class RedisResponseFrameScanner {
+
+	private static final byte READ_TYPE = 0;			// 类型
+	private static final byte READ_LINE = 1;			// 状态行, + - :
+	private static final byte READ_NUMBER = 2;			// 长度, $ *
+	private static final byte READ_NUMBER_LF = 3;
+	private static final byte SKIP_BULK = 4;			// bulk 数据 + \r\n
+
+	private byte state = READ_TYPE;
+
+	private byte numberType;
+	private long number;
+	private boolean isNeg;
+
+	private long bulkRemaining;
+
+	// multi-bulk 状态栈
+	private int depth = 0;
+	private int[] remains = new int[ 8 ];
+
+
+	/**
+	 * 扫描 [offset, offset + length)， 返回第一个完整应答结束后的位置， 未结束返回 -1
+	 */
+	public int scan(byte[] buf, int offset, int length) {
+
+		int limit = offset + length;
+		int pos = offset;
+
+		while ( pos < limit ) {
+
+			switch( state ) {
+			case READ_TYPE: {
+				byte type = buf[ pos++ ];
+				if ( type == '+' || type == '-' || type == ':' ) {
+					state = READ_LINE;
+
+				} else if ( type == '$' || type == '*' ) {
+					numberType = type;
+					number = 0;
+					isNeg = false;
+					state = READ_NUMBER;
+				}
+				// 其它字节忽略
+				break;
+			}
+			case READ_LINE: {
+				while ( pos < limit && buf[ pos ] != '\n' ) {
+					pos++;
+				}
+				if ( pos < limit ) {
+					pos++;
+					if ( elementDone() ) {
+						return pos;
+					}
+				}
+				break;
+			}
+			case READ_NUMBER: {
+				byte b = buf[ pos++ ];
+				if ( b == '\r' ) {
+					state = READ_NUMBER_LF;
+				} else if ( b == '-' ) {
+					isNeg = true;
+				} else {
+					number = number * 10 + b - '0';
+				}
+				break;
+			}
+			case READ_NUMBER_LF: {
+				pos++;	// \n
+
+				long n = isNeg ? -number : number;
+				if ( numberType == '$' ) {
+					if ( n < 0 ) {
+						if ( elementDone() ) {
+							return pos;
+						}
+					} else {
+						bulkRemaining = n + 2;
+						state = SKIP_BULK;
+					}
+
+				} else {
+					if ( n <= 0 ) {
+						if ( elementDone() ) {
+							return pos;
+						}
+					} else {
+						push( (int) n );
+						state = READ_TYPE;
+					}
+				}
+				break;
+			}
+			case SKIP_BULK: {
+				int skip = (int) Math.min( bulkRemaining, limit - pos );
+				pos += skip;
+				bulkRemaining -= skip;
+				if ( bulkRemaining == 0 ) {
+					if ( elementDone() ) {
+						return pos;
+					}
+				}
+				break;
+			}
+			}
+		}
+		return -1;
+	}
+
+	// 当前元素结束， 返回顶层应答是否完整
+	private boolean elementDone() {
+		state = READ_TYPE;
+		while ( depth > 0 ) {
+			if ( --remains[ depth - 1 ] > 0 ) {
+				return false;
+			}
+			depth--;
+		}
+		return true;
+	}
+
+	private void push(int n) {
+		if ( depth == remains.length ) {
+			int[] newRemains = new int[ depth << 1 ];
+			System.arraycopy(remains, 0, newRemains, 0, depth);
+			remains = newRemains;
+		}
+		remains[ depth++ ] = n;
+	}
+
+	/**
+	 * 是否处于应答的中间
+	 */
+	public boolean isPartial() {
+		return state != READ_TYPE || depth > 0;
+	}
+
+	public void reset() {
+		state = READ_TYPE;
+		depth = 0;
+		bulkRemaining = 0;
+	}
+}
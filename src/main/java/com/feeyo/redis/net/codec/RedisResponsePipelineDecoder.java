@@ -1,13 +1,9 @@
 package com.feeyo.redis.net.codec;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class RedisResponsePipelineDecoder {
 
-	private byte[] _buffer;
-	private int _offset;
-	private List<Integer> index = new ArrayList<Integer>();
+	// 流式解析， 只记录应答边界
+	private RedisResponseStreamParser parser = new RedisResponseStreamParser( false );
 	
 	// 应答
 	public class PipelineResponse {
@@ -40,214 +36,24 @@ public class RedisResponsePipelineDecoder {
 
 	/**
 	 * 解析返回 数量、内容
+	 * 
+	 * 半包时保留解析进度，只返回本次已完整的应答， 调用方按 count 累加
 	 */
 	public PipelineResponse parse(byte[] buffer) {
-		int result = 0;
-		append(buffer);
-		try {
-
-			for (;;) {
-
-				// 至少4字节 :1\r\n
-				if (bytesRemaining() < 4) {
-					return new PipelineResponse(PipelineResponse.ERR, 0, null);
-				}
-
-				byte type = _buffer[_offset++];
-				switch (type) {
-				case '*': // 数组(Array), 以 "*" 开头,表示消息体总共有多少行（不包括当前行）, "*" 是具体行数
-				case '+': // 正确, 表示正确的状态信息, "+" 后就是具体信息
-				case '-': // 错误, 表示错误的状态信息, "-" 后就是具体信息
-				case ':': // 整数, 以 ":" 开头, 返回
-				case '$': // 批量字符串, 以 "$"
-					// 解析，只要不抛出异常，就是完整的一条数据返回
-					parseResponse(type);
-					result ++;
-					index.add(_offset);
-				}
-
-				if (_buffer.length < _offset) {
-					throw new IndexOutOfBoundsException("Not enough data.");
-
-				} else if (_buffer.length == _offset) {
-					_offset = 0;
-					return new PipelineResponse(PipelineResponse.OK, result, getResponses());
-				}
-			}
-
-		} catch (IndexOutOfBoundsException e1) {
-			// 捕获这个错误（没有足够的数据），等待下一个数据包
-			_offset = 0;
-			index.clear();
-			return new PipelineResponse(PipelineResponse.ERR, 0, null);
-		}
-	}
-
-	private void parseResponse(byte type) {
-		int end, offset;
-
-		if (type == '+' || type == '-' || type == ':') {
-
-			offset = _offset;
-			end = readCRLFOffset(); // 分隔符 \r\n
-			_offset = end; // 调整偏移值
-
-			if (end > _buffer.length) {
-				_offset = offset;
-				throw new IndexOutOfBoundsException("Wait for more data.");
-			}
-		} else if (type == '$') {
-
-			offset = _offset;
-
-			// 大小为 -1的数据包被认为是 NULL
-			int packetSize = readInt();
-			if (packetSize == -1) {
-				end = _offset;
-				return; // 此处不减
-			}
-
-			end = _offset + packetSize + 2; // offset + data + \r\n
-			_offset = end; // 调整偏移值
-
-			if (end > _buffer.length) {
-				_offset = offset - 1;
-				throw new IndexOutOfBoundsException("Wait for more data.");
-			}
-		} else if (type == '*') {
-
-			offset = _offset;
-
-			// 大小为 -1的数据包被认为是 NULL
-			int packetSize = readInt();
-			if (packetSize == -1) {
-				end = _offset;
-				return; // 此处不减
-			}
-
-			if (packetSize > bytesRemaining()) {
-				_offset = offset - 1;
-				throw new IndexOutOfBoundsException("Wait for more data.");
-			}
-
-			// 此处多增加一长度，用于存储 *packetSize\r\n
-			end = _offset;
-
-			byte ntype;
-			for (int i = 1; i <= packetSize; i++) {
-				if (_offset + 1 >= _buffer.length) {
-					throw new IndexOutOfBoundsException("Wait for more data.");
-				}
-
-				ntype = _buffer[_offset++];
-				parseResponse(ntype);
-			}
-		}
-	}
-
-	private int bytesRemaining() {
-		return (_buffer.length - _offset) < 0 ? 0 : (_buffer.length - _offset);
-	}
-
-	private int readInt() throws IndexOutOfBoundsException {
-
-		long size = 0;
-		boolean isNeg = false;
-
-		if (_offset >= _buffer.length) {
-			throw new IndexOutOfBoundsException("Not enough data.");
-		}
-
-		byte b = _buffer[_offset];
-		while (b != '\r') {
-			if (b == '-') {
-				isNeg = true;
-			} else {
-				size = size * 10 + b - '0';
-			}
-			_offset++;
-
-			if (_offset >= _buffer.length) {
-				throw new IndexOutOfBoundsException("Not enough data.");
-			}
-			b = _buffer[_offset];
-		}
-
-		// skip \r\n
-		_offset++;
-		_offset++;
-
-		size = (isNeg ? -size : size);
-		if (size > Integer.MAX_VALUE) {
-			throw new RuntimeException("Cannot allocate more than " + Integer.MAX_VALUE + " bytes");
-		}
-		if (size < Integer.MIN_VALUE) {
-			throw new RuntimeException("Cannot allocate less than " + Integer.MIN_VALUE + " bytes");
-		}
-
-		return (int) size;
-	}
-
-	private int readCRLFOffset() throws IndexOutOfBoundsException {
-		int offset = _offset;
-
-		if (offset + 1 >= _buffer.length) {
-			throw new IndexOutOfBoundsException("Not enough data.");
-		}
-
-		while (_buffer[offset] != '\r' && _buffer[offset + 1] != '\n') {
-			offset++;
-			if (offset + 1 == _buffer.length) {
-				throw new IndexOutOfBoundsException("didn't see LF after NL reading multi bulk count (" + offset
-						+ " => " + _buffer.length + ", " + _offset + ")");
-			}
-		}
-		offset++;
-		offset++;
-		return offset;
-	}
-
-	private void append(byte[] newBuffer) {
-
-		if (newBuffer == null) {
-			return;
-		}
-
-		if (_buffer == null) {
-			_buffer = newBuffer;
-			return;
-		}
-
-		// large packet
-		byte[] largeBuffer = new byte[_buffer.length + newBuffer.length];
-		System.arraycopy(_buffer, 0, largeBuffer, 0, _buffer.length);
-		System.arraycopy(newBuffer, 0, largeBuffer, _buffer.length, newBuffer.length);
-
-		_buffer = largeBuffer;
-		_offset = 0;
-		index.clear();
-	}
-
-	// 获取分段后的response
-	private byte[][] getResponses() {
-		byte[][] result = new byte[index.size()][];
 		
-		for (int i = 0; i < index.size(); i++) {
-			int start;
-			if (i == 0) {
-				start = 0;
-			} else {
-				start = index.get(i - 1); 
-			}
-			int end = index.get(i);
-			
-			result[i] = new byte[end - start];
-			System.arraycopy(_buffer, start, result[i], 0, result[i].length);
+		int count = parser.parse( buffer );
+		if ( count == 0 ) {
+			parser.compact();
+			return new PipelineResponse(PipelineResponse.ERR, 0, null);
 		}
 		
-		index.clear();
-		_buffer = null;
-		return result;
+		byte[][] resps = parser.getResponseBytes();
+		parser.compact();
+		return new PipelineResponse(PipelineResponse.OK, count, resps);
+	}
+	
+	public void reset() {
+		parser.reset();
 	}
 
 	public static void main(String[] args) {
@@ -274,7 +80,10 @@ public class RedisResponsePipelineDecoder {
 		// List<RedisResponseV3> resps = decoder.decode(buffer);
 
 		PipelineResponse result  = decoder.parse(buffer1);
-		System.out.println( result );
+		System.out.println( result.isOK() + ", count=" + result.getCount() );
+		
+		result  = decoder.parse(buffer2);
+		System.out.println( result.isOK() + ", count=" + result.getCount() );
 	}
 
 }
@@ -0,0 +1,324 @@
+package com.feeyo.redis.net.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式的应答解析，半包时保留解析进度，新数据到达后从上次的位置继续，不再从头解析
+ *
+ * 1、嵌套的 multi-bulk 通过显式的状态栈（剩余元素数）维护，不使用递归
+ * 2、不使用异常控制流程，数据不足时直接返回
+ * 3、bulk 数据只做长度跳跃，不逐字节扫描；\r\n 的查找位置跨包保留
+ *
+ * @see https://redis.io/topics/protocol
+ */
+public class RedisResponseStreamParser {
+
+	// 是否构建 RedisResponse 树， 否则只记录每个应答的边界
+	private final boolean isBuildTree;
+
+	private byte[] _buffer;
+	private int _limit;
+	private int _offset;				// 当前解析位置
+	private int _start;					// 当前未完成的顶层应答的起始位置
+	private int _crlfScan = -1;			// 当前行 \r\n 的查找进度
+
+	// multi-bulk 状态栈
+	private int depth = 0;
+	private int[] remains = new int[ 8 ];
+	private int[] indexes = new int[ 8 ];
+	private RedisResponse[] nodes = new RedisResponse[ 8 ];
+
+	// 已完成的顶层应答
+	private List<RedisResponse> responses;
+	private int[] bounds = new int[ 16 ];	// start, end
+	private int count = 0;
+
+	public RedisResponseStreamParser(boolean isBuildTree) {
+		this.isBuildTree = isBuildTree;
+	}
+
+	/**
+	 * 追加数据并继续解析，返回本次完成的顶层应答数
+	 */
+	public int parse(byte[] data) {
+
+		append( data );
+
+		count = 0;
+		if ( isBuildTree ) {
+			responses = new ArrayList<RedisResponse>(2);
+		}
+
+		parse : while ( _offset < _limit ) {
+
+			int elemStart = _offset;
+			byte type = _buffer[ _offset ];
+
+			switch ( type ) {
+			case '+':					// 正确, 表示正确的状态信息, "+" 后就是具体信息
+			case '-':					// 错误, 表示错误的状态信息, "-" 后就是具体信息
+			case ':': {					// 整数, 以 ":" 开头, 返回
+				int end = lineEnd( elemStart + 1 );
+				if ( end == -1 )
+					break parse;
+
+				_offset = end;
+				completeElement(type, elemStart, end);
+				break;
+			}
+			case '$': {					// 批量字符串, 以 "$" 开头,表示下一行的字符串长度,具体字符串在下一行中
+				int end = lineEnd( elemStart + 1 );
+				if ( end == -1 )
+					break parse;
+
+				// 大小为 -1的数据包被认为是 NULL
+				int packetSize = readInt( elemStart + 1, end - 2 );
+				if ( packetSize >= 0 ) {
+					end = end + packetSize + 2;		// data + \r\n
+					if ( end > _limit )
+						break parse;
+				}
+				_offset = end;
+				completeElement(type, elemStart, end);
+				break;
+			}
+			case '*': {					// 数组(Array), 以 "*" 开头,表示消息体总共有多少行（不包括当前行）
+				int end = lineEnd( elemStart + 1 );
+				if ( end == -1 )
+					break parse;
+
+				int packetSize = readInt( elemStart + 1, end - 2 );
+				_offset = end;
+
+				if ( packetSize < 0 ) {
+					completeElement(type, elemStart, end);
+
+				} else {
+					// 此处多增加一长度，用于存储 *packetSize\r\n
+					RedisResponse node = null;
+					if ( isBuildTree ) {
+						node = new RedisResponse(type, packetSize + 1);
+						node.set(0, new RedisResponse(type, getBytes(elemStart, end)));
+					}
+
+					if ( packetSize == 0 ) {
+						completeNode( node );
+					} else {
+						push(node, packetSize);
+					}
+				}
+				break;
+			}
+			default:
+				// 无效字节, 跳过
+				_offset++;
+				if ( depth == 0 ) {
+					_start = _offset;
+				}
+				break;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * 本次完成的应答树， 仅 isBuildTree 模式
+	 */
+	public List<RedisResponse> getResponses() {
+		return responses;
+	}
+
+	/**
+	 * 本次完成的应答原始字节
+	 */
+	public byte[][] getResponseBytes() {
+		byte[][] result = new byte[ count ][];
+		for (int i = 0; i < count; i++) {
+			result[i] = getBytes( bounds[ i * 2 ], bounds[ i * 2 + 1 ] );
+		}
+		return result;
+	}
+
+	/**
+	 * 丢弃已完成的数据，未完成的数据移动至头部
+	 */
+	public void compact() {
+
+		if ( _buffer == null ) {
+			return;
+		}
+
+		if ( _start == _limit && depth == 0 ) {
+			// 全部消费
+			_buffer = null;
+			_limit = 0;
+			_offset = 0;
+			_start = 0;
+			_crlfScan = -1;
+
+		} else if ( _start > 0 ) {
+			int shift = _start;
+			System.arraycopy(_buffer, shift, _buffer, 0, _limit - shift);
+			_limit -= shift;
+			_offset -= shift;
+			_start = 0;
+			if ( _crlfScan != -1 ) {
+				_crlfScan -= shift;
+			}
+		}
+		count = 0;
+	}
+
+	public void reset() {
+		_buffer = null;
+		_limit = 0;
+		_offset = 0;
+		_start = 0;
+		_crlfScan = -1;
+		depth = 0;
+		count = 0;
+		responses = null;
+	}
+
+	private void completeElement(byte type, int start, int end) {
+		RedisResponse leaf = null;
+		if ( isBuildTree ) {
+			leaf = new RedisResponse(type, getBytes(start, end));
+		}
+		completeNode( leaf );
+	}
+
+	private void completeNode(RedisResponse node) {
+
+		_crlfScan = -1;
+
+		// 逐层回填
+		while ( depth > 0 ) {
+			int d = depth - 1;
+			if ( isBuildTree ) {
+				nodes[d].set( ++indexes[d], node );
+			}
+
+			if ( --remains[d] > 0 ) {
+				return;
+			}
+
+			// 当前层完成，出栈
+			node = nodes[d];
+			nodes[d] = null;
+			depth--;
+		}
+
+		// 顶层应答完成
+		if ( isBuildTree ) {
+			responses.add( node );
+		}
+
+		if ( (count + 1) * 2 > bounds.length ) {
+			int[] newBounds = new int[ bounds.length << 1 ];
+			System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+			bounds = newBounds;
+		}
+		bounds[ count * 2 ] = _start;
+		bounds[ count * 2 + 1 ] = _offset;
+		count++;
+
+		_start = _offset;
+	}
+
+	private void push(RedisResponse node, int packetSize) {
+		if ( depth == remains.length ) {
+			int newLength = depth << 1;
+
+			int[] newRemains = new int[ newLength ];
+			System.arraycopy(remains, 0, newRemains, 0, depth);
+			remains = newRemains;
+
+			int[] newIndexes = new int[ newLength ];
+			System.arraycopy(indexes, 0, newIndexes, 0, depth);
+			indexes = newIndexes;
+
+			RedisResponse[] newNodes = new RedisResponse[ newLength ];
+			System.arraycopy(nodes, 0, newNodes, 0, depth);
+			nodes = newNodes;
+		}
+
+		remains[ depth ] = packetSize;
+		indexes[ depth ] = 0;
+		nodes[ depth ] = node;
+		depth++;
+
+		_crlfScan = -1;
+	}
+
+	/**
+	 * 返回 \r\n 之后的位置， 数据不足返回 -1 并记录查找进度
+	 */
+	private int lineEnd(int from) {
+		int i = _crlfScan > from ? _crlfScan : from;
+		for (; i + 1 < _limit; i++) {
+			if ( _buffer[i] == '\r' && _buffer[i + 1] == '\n' ) {
+				return i + 2;
+			}
+		}
+		_crlfScan = i;
+		return -1;
+	}
+
+	private int readInt(int start, int end) {
+		long size = 0;
+		boolean isNeg = false;
+		for (int i = start; i < end; i++) {
+			byte b = _buffer[i];
+			if ( b == '-' ) {
+				isNeg = true;
+			} else {
+				size = size * 10 + b - '0';
+			}
+		}
+
+		size = (isNeg ? -size : size);
+		if (size > Integer.MAX_VALUE) {
+			throw new RuntimeException("Cannot allocate more than " + Integer.MAX_VALUE + " bytes");
+		}
+		if (size < Integer.MIN_VALUE) {
+			throw new RuntimeException("Cannot allocate less than " + Integer.MIN_VALUE + " bytes");
+		}
+		return (int) size;
+	}
+
+	// 增加字节流, 容量按 2 倍扩充
+	private void append(byte[] newBuffer) {
+
+		if ( newBuffer == null || newBuffer.length == 0 ) {
+			return;
+		}
+
+		if ( _buffer == null || _limit == 0 ) {
+			_buffer = newBuffer;
+			_limit = newBuffer.length;
+			return;
+		}
+
+		int newLimit = _limit + newBuffer.length;
+		if ( newLimit > _buffer.length ) {
+			int newCapacity = _buffer.length << 1;
+			if ( newCapacity < newLimit ) {
+				newCapacity = newLimit;
+			}
+			byte[] largeBuffer = new byte[ newCapacity ];
+			System.arraycopy(_buffer, 0, largeBuffer, 0, _limit);
+			_buffer = largeBuffer;
+		}
+		System.arraycopy(newBuffer, 0, _buffer, _limit, newBuffer.length);
+		_limit = newLimit;
+	}
+
+	private byte[] getBytes(int start, int end) {
+		byte[] arr = new byte[ end - start ];
+		System.arraycopy(_buffer, start, arr, 0, arr.length);
+		return arr;
+	}
+}
@@ -2,10 +2,13 @@ package com.feeyo.redis.net.front;
 
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.feeyo.redis.config.UserCfg;
 import com.feeyo.redis.net.Connection;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.front.ratelimit.UserRateLimiter;
 import com.feeyo.redis.nio.NetSystem;
 import com.feeyo.redis.nio.util.TimeUtil;
 
@@ -41,7 +44,7 @@ public class RedisFrontConnection extends Connection {
 	protected void asynRead() throws IOException {
 		
 		// 流量超标，执行流量清洗
-		if ( netFlowMonitor != null && netFlowMonitor.isOverproof() && isFlowLimit()) {
+		if ( netFlowMonitor != null && netFlowMonitor.getMaxByteSize() > 0 && netFlowMonitor.isOverproof() && isFlowLimit()) {
 			flowClean();
 			return;
 		}
@@ -113,6 +116,8 @@ public class RedisFrontConnection extends Connection {
 		sbuffer.append(", lastReadTime=").append( TimeUtil.formatTimestamp( lastReadTime ) );
 		sbuffer.append(", lastWriteTime=").append( TimeUtil.formatTimestamp( lastWriteTime ) );
 		sbuffer.append(", writeAttempts=").append( writeAttempts );	//
+		sbuffer.append(", queuedBytes=").append( getQueuedBytes() );
+		sbuffer.append(", readPaused=").append( isReadPaused() );
 		
 		if ( isClosed.get() ) {
 			sbuffer.append(", closeTime=").append( TimeUtil.formatTimestamp( closeTime ) );
@@ -136,10 +141,59 @@ public class RedisFrontConnection extends Connection {
 		return false;
 	}
 	
+	// 应答积压， 不再读取新的请求； 由写入应答的后端 reactor 调用
+	@Override
+	protected void onWriteQueueHigh() {
+		pauseRead( PAUSE_READ_WRITE_QUEUE );
+	}
+	
+	@Override
+	protected void onWriteQueueLow() {
+		resumeRead( PAUSE_READ_WRITE_QUEUE );
+		super.onWriteQueueLow();
+	}
+	
+	// 全局流量超标， 暂停读至下一秒
 	@Override
 	public void flowClean() {
-		super.flowClean();
-		this.write(RedisFrontSession.FLOW_LIMIT);
-		this.close("flow limit");
+		long delayMills = 1000L - TimeUtil.currentTimeMillis() % 1000L;
+		UserRateLimiter.throttle(this, delayMills * 1000L * 1000L);
+	}
+	
+	@Override
+	protected void flowControl(int length) {
+		super.flowControl( length );
+		
+		UserRateLimiter limiter = getRateLimiter();
+		if ( limiter != null ) {
+			UserRateLimiter.throttle(this, limiter.acquireBytes( length ));
+		}
+	}
+	
+	/**
+	 * 路由后按请求数计入用户限流， requests 的 policy 已设置
+	 */
+	public void rateLimit(List<RedisRequest> requests) {
+		
+		UserRateLimiter limiter = getRateLimiter();
+		if ( limiter == null ) {
+			return;
+		}
+		
+		int writeCount = 0;
+		for (RedisRequest request : requests) {
+			if ( request.getPolicy() != null && !request.getPolicy().isRead() ) {
+				writeCount++;
+			}
+		}
+		UserRateLimiter.throttle(this, limiter.acquireOps(requests.size(), writeCount));
+	}
+	
+	private UserRateLimiter getRateLimiter() {
+		UserCfg uc = this.userCfg;
+		if ( uc == null || uc.isAdmin() ) {
+			return null;
+		}
+		return UserRateLimiter.get( uc.getPassword() );
 	}
 }
@@ -1,11 +1,12 @@
 package com.feeyo.redis.net.front;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.feeyo.redis.nio.NIOHandler;
+import com.feeyo.redis.nio.NIOBufferHandler;
 import com.feeyo.redis.nio.util.StringUtil;
 
 /** 
@@ -18,7 +19,7 @@ import com.feeyo.redis.nio.util.StringUtil;
  * @author zhuam
  */
 
-public class RedisFrontConnectionHandler implements NIOHandler<RedisFrontConnection> {
+public class RedisFrontConnectionHandler implements NIOBufferHandler<RedisFrontConnection> {
 	
 	private static Logger LOGGER = LoggerFactory.getLogger( RedisFrontConnectionHandler.class );
 	
@@ -56,4 +57,19 @@ public class RedisFrontConnectionHandler implements NIOHandler<RedisFrontConnect
 		conn.getSession().handle(data);	
 	}
 	
+	@Override
+	public void handleReadEvent(RedisFrontConnection conn, ByteBuffer buffer) throws IOException {
+		// 日志HEX
+		if ( LOGGER.isDebugEnabled() ) {
+			byte[] data = new byte[ buffer.remaining() ];
+			buffer.duplicate().get( data );
+			final String hexs = StringUtil.dumpAsHex(data, 0, data.length);
+			LOGGER.debug("C#{} front request len = {}, buffer bytes\n {}", 
+					new Object[]{ conn.getId(), data.length, hexs });
+		}
+
+		// 分发
+		conn.getSession().handle(buffer);	
+	}
+	
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import com.feeyo.redis.engine.manage.Manage;
 import com.feeyo.redis.net.backend.BackendConnection;
 import com.feeyo.redis.net.backend.callback.AbstractBackendCallback;
 import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.codec.RedisRequestBufferDecoder;
 import com.feeyo.redis.net.codec.RedisRequestDecoder;
 import com.feeyo.redis.net.codec.RedisRequestPolicy;
 import com.feeyo.redis.net.codec.RedisRequestType;
@@ -71,6 +72,7 @@ public class RedisFrontSession {
 	
     // 解析器 
 	private RedisRequestDecoder requestDecoder = new RedisRequestDecoder();
+	private RedisRequestBufferDecoder bufferDecoder = null;
 	
 	private AbstractCommandHandler defaultCommandHandler;
 	private AbstractCommandHandler segmentCommandHandler;
@@ -90,15 +92,54 @@ public class RedisFrontSession {
 
 	public void handle(byte[] byteBuff) {
 		
+		List<RedisRequest> requests = null;
+		try {
+			// parse
+			requests = requestDecoder.decode(byteBuff);
+			
+		} catch (RedisRequestUnknowException e0) {
+			frontCon.close("unknow redis client .");
+			frontCon.releaseLock();
+			return;
+		}
+		
+		handle( requests );
+	}
+	
+	/**
+	 * 零拷贝模式，直接解析 readBuffer，参数为 readBuffer 上的视图
+	 */
+	public void handle(ByteBuffer byteBuff) {
+		
+		if ( bufferDecoder == null ) {
+			bufferDecoder = new RedisRequestBufferDecoder();
+		}
+		
+		List<RedisRequest> requests = null;
+		try {
+			// parse
+			requests = bufferDecoder.decode(byteBuff);
+			
+		} catch (RedisRequestUnknowException e0) {
+			frontCon.close("unknow redis client .");
+			frontCon.releaseLock();
+			return;
+		}
+		
+		handle( requests );
+	}
+
+	private void handle(List<RedisRequest> requests) {
+		
 		// 默认需要立即释放
 		boolean isImmediateReleaseConReadLock = true;
 		
-		List<RedisRequest> requests = null;
+		// 请求在本次调用后仍被持有（pipeline、 分片等待应答），需要解除对 readBuffer 的引用
+		boolean isDetachRequired = false;
+		
 		RedisRequest firstRequest = null;
 		
 		try {
-			// parse
-			requests = requestDecoder.decode(byteBuff);
 			if (requests == null || requests.size() == 0 ) {
 				return;
 			}
@@ -108,15 +149,16 @@ public class RedisFrontSession {
 			// 非pipeline 情况下， 特殊指令前置优化性能
 			if ( requests.size() ==  1 ) {
 				
-				byte[] cmd = firstRequest.getArgs()[0];
-				int len = cmd.length;
+				int len = firstRequest.getArgLength(0);
 				if ( len == 4 ) {
 					
+					byte[] cmd = firstRequest.getArg(0);
+					
 					// AUTH
 					if ( (cmd[0] == 'A' || cmd[0] == 'a') && (cmd[1] == 'U' || cmd[1] == 'u') 
 							&& (cmd[2] == 'T' || cmd[2] == 't') && (cmd[3] == 'H' || cmd[3] == 'h')   ) {
 						
-						if( firstRequest.getArgs().length < 2 ) {
+						if( firstRequest.getNumArgs() < 2 ) {
 							frontCon.write( ERR_NO_AUTH_NO_PASSWORD );
 							return;
 						}
@@ -145,6 +187,9 @@ public class RedisFrontSession {
 					}
 					
 				} else if ( len == 6 ) {
+					
+					byte[] cmd = firstRequest.getArg(0);
+					
 					// SELECT
 					if ( (cmd[0] == 'S' || cmd[0] == 's') && (cmd[1] == 'E' || cmd[1] == 'e') 
 							 && (cmd[2] == 'L' || cmd[2] == 'l') && (cmd[3] == 'E' || cmd[3] == 'e')
@@ -159,7 +204,7 @@ public class RedisFrontSession {
 			// 认证
 			if ( !frontCon.isAuthenticated() ) {
 				
-				byte[] cmd = firstRequest.getArgs()[0];
+				byte[] cmd = firstRequest.getArg(0);
 				if (cmd.length == 4 && 
 						(cmd[0] == 'A' || cmd[0] == 'a') && 
 						(cmd[1] == 'U' || cmd[1] == 'u') && 
@@ -190,8 +235,7 @@ public class RedisFrontSession {
 				// 管理指令检测
 				if ( frontCon.getUserCfg().isAdmin() && requests.size() == 1 ) {
 					
-					String cmd = new String( firstRequest.getArgs()[0] ).toUpperCase();
-					RedisRequestPolicy policy = CommandParse.getPolicy( cmd );
+					RedisRequestPolicy policy = CommandParse.getPolicy( firstRequest.getCmdId() );
 					
 					if( policy.getCategory() == CommandParse.MANAGE_CMD ) {
 						byte[] buff = Manage.execute(firstRequest, frontCon);
@@ -208,11 +252,17 @@ public class RedisFrontSession {
 					return;
 				} 
 				
+				// 用户限流， 超限暂停读
+				frontCon.rateLimit( requests );
+				
 				// 指令提前返回
 				if ( intercept( routeResult ) ) {
 					return;
 				}
 				
+				// 单指令已同步编码写入后端， 其余类型在应答前仍持有请求
+				isDetachRequired = routeResult.getRequestType() != RedisRequestType.DEFAULT;
+				
 				currentCommandHandler = this.getCommandHandler( routeResult.getRequestType() );
 				currentCommandHandler.handle(routeResult);
 				
@@ -254,7 +304,7 @@ public class RedisFrontSession {
 					if (request == null) {
 						continue;
 					}
-					String cmd = new String(request.getArgs()[0]).toUpperCase();
+					String cmd = request.getCmd();
 					if ("AUTH".equals(cmd)) {
 						auth(request);
 					} else if ("ECHO".equals(cmd)) {
@@ -275,15 +325,18 @@ public class RedisFrontSession {
 				frontCon.write( "-ERR node unavailable error \r\n".getBytes() );
 			}
 			
-		} catch (RedisRequestUnknowException e0) {
-			frontCon.close("unknow redis client .");
-
 		} catch (IOException e1) {
 			String error = "-ERR " + e1.getMessage() + ".\r\n";
 			frontCon.write(error.getBytes());
 			
 		} finally {
 			
+			if ( isDetachRequired && requests != null ) {
+				for (RedisRequest request : requests) {
+					request.detach();
+				}
+			}
+			
 			if ( isImmediateReleaseConReadLock )
 				frontCon.releaseLock();
 		}
@@ -488,7 +541,7 @@ public class RedisFrontSession {
 		
 		RouteNode node = routeResult.getRouteNodes().get(0);
 		
-		String cmd = new String(request.getArgs()[0]).toUpperCase();
+		String cmd = request.getCmd();
 		if ( cmd.startsWith("SUBSCRIBE") || cmd.startsWith("PSUBSCRIBE") ) {
 
 			// SUBSCRIBE
@@ -563,7 +616,7 @@ public class RedisFrontSession {
 	
 	// 拦截内部调用指令
 	private boolean interceptKafkaPrivateCmds(RedisRequest request) throws IOException {
-		String cmd = new String(request.getArgs()[0]).toUpperCase();
+		String cmd = request.getCmd();
 		String topic = new String(request.getArgs()[1]);
 		int partition = Integer.parseInt(new String(request.getArgs()[2]));
 		try {
@@ -20,6 +20,8 @@ public class RedisFrontendConnectionFactory extends ConnectionFactory {
 		RedisFrontConnection c = new RedisFrontConnection(channel);
 		NetSystem.getInstance().setSocketParams(c, true);	// 设置连接的参数
 		c.setHandler( new RedisFrontConnectionHandler() );	// 设置NIOHandler
+		c.setZeroCopyRead( NetSystem.getInstance().getNetConfig().getFrontZeroCopyDecode() == 1 );
+		c.setCorkWrite( NetSystem.getInstance().getNetConfig().getFrontWriteCork() == 1 );
 		c.setNetFlowMonitor( RedisEngineCtx.INSTANCE().getFlowMonitor() );
 		return c;
 	}
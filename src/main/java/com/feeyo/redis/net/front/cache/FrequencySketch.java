@@ -0,0 +1,65 @@
+package com.feeyo.redis.net.front.cache;
+
+/**
+ * 访问频率估计 (Count-Min Sketch， 4bit 饱和计数)
+ * 
+ * 累计增量达到采样数时所有计数减半， 使历史热度逐步衰减， 用于 TinyLFU 准入判断； 非线程安全， 由调用方加锁
+ */
+public class FrequencySketch {
+	
+	private static final int[] SEEDS = { 0x97cb3127, 0xb1a2c3d5, 0x5f1e8d3b, 0x2c9277b5 };
+	private static final int MAX_COUNT = 15;
+	
+	private final int[] table;
+	private final int mask;
+	private final int sampleSize;
+	private int size = 0;
+	
+	public FrequencySketch(int expectedSize) {
+		int width = 64;
+		while ( width < expectedSize ) {
+			width <<= 1;
+		}
+		this.table = new int[ width ];
+		this.mask = width - 1;
+		this.sampleSize = width * 10;
+	}
+	
+	public void increment(int hash) {
+		boolean isAdded = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int idx = indexOf(hash, i);
+			if ( table[idx] < MAX_COUNT ) {
+				table[idx]++;
+				isAdded = true;
+			}
+		}
+		
+		if ( isAdded && ++size >= sampleSize ) {
+			reset();
+		}
+	}
+	
+	public int frequency(int hash) {
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < SEEDS.length; i++) {
+			frequency = Math.min(frequency, table[ indexOf(hash, i) ]);
+		}
+		return frequency;
+	}
+	
+	private int indexOf(int hash, int i) {
+		int h = (hash ^ SEEDS[i]) * 0x9e3779b9;
+		h ^= h >>> 16;
+		return h & mask;
+	}
+	
+	// 衰减
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] >>>= 1;
+		}
+		size >>>= 1;
+	}
+
+}
@@ -0,0 +1,497 @@
+package com.feeyo.redis.net.front.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.config.UserCfg;
+import com.feeyo.redis.net.backend.pool.PoolType;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.front.handler.CommandParse;
+import com.feeyo.redis.net.front.handler.SingleFlight;
+import com.feeyo.redis.nio.util.TimeUtil;
+
+/**
+ * 代理侧近端缓存， 仅缓存 user.xml 中 nearCache 前缀白名单内 key 的 GET / HGET 应答
+ *
+ * 1、应答以堆内 byte[] 存放， 不占用网络读写的 BufferPool； 应答及条目开销按字节数计入容量
+ * 2、W-TinyLFU： 新条目先进入小的窗口 LRU， 被挤出窗口时与主区 LRU 尾部比较访问频率， 频率更高才准入
+ * 3、经过 RouteService 的写指令按 key 失效， 路由时失效一次， 写指令应答完整 (写入前端之前) 再失效一次，
+ *    路由与应答之间发起的加载读到的可能是写入前的值， 第二次失效使其 put 被放弃； 同时以 TTL 兜底代理之外的写入
+ * 4、按 key 分段加锁， 同一 key 的 GET 与 HGET 条目位于同一分段； 失效版本按 key 的 hash 条带化， 只影响同一条带的加载
+ * 5、EVAL / EVALSHA 的 key 取 numkeys 之后的参数， BITOP 取目标 key； 其它多 key 写指令的目标为列表、 集合等类型，
+ *    不会是 GET / HGET 缓存的应答， 仅失效第一个 key
+ */
+public class NearCache {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( NearCache.class );
+
+	public static final int MAX_ENTRY_SIZE = 16 * 1024;		// 单条应答上限
+
+	private static final int SEGMENT_COUNT = 64;
+	private static final int SEGMENT_BITS = 6;
+	private static final int STRIPE_COUNT = 16;				// 每个分段的失效版本条带数
+	private static final int ENTRY_OVERHEAD = 96;			// 条目的估算固定开销
+	private static final int AVG_ENTRY_SIZE = 256;
+
+	private static volatile Segment[] segments = null;
+
+	private static final AtomicLong hitCount = new AtomicLong(0);
+	private static final AtomicLong missCount = new AtomicLong(0);
+
+	/**
+	 * capacity 为全部分段的字节数上限， 0 关闭
+	 */
+	public static void init(long capacity) {
+
+		if ( capacity <= 0 ) {
+			segments = null;
+			return;
+		}
+
+		Segment[] newSegments = new Segment[ SEGMENT_COUNT ];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			newSegments[i] = new Segment( capacity / SEGMENT_COUNT );
+		}
+		segments = newSegments;
+
+		LOGGER.info("near cache init, capacity={}", capacity);
+	}
+
+	public static boolean isEnabled() {
+		return segments != null;
+	}
+
+	/**
+	 * 可缓存的请求返回缓存 key， 否则返回 null； 须在 key 前缀构建之后调用
+	 */
+	public static NearCacheKey getCacheKey(UserCfg userCfg, RedisRequest request) {
+
+		byte[][] prefixes = userCfg.getNearCachePrefixes();
+		if ( prefixes == null || segments == null ) {
+			return null;
+		}
+
+		int cmdId = request.getCmdId();
+		boolean isHget = cmdId == HGET_ID;
+		if ( (cmdId != GET_ID || request.getNumArgs() != 2) && (!isHget || request.getNumArgs() != 3) ) {
+			return null;
+		}
+
+		byte[] key = request.getArg(1);
+		if ( !isMatch(prefixes, key) ) {
+			return null;
+		}
+
+		String redisKey = toRedisKey(userCfg, key);
+		String cacheKey = isHget ? redisKey + '\0' + toString( request.getArg(2) ) : redisKey;
+		return new NearCacheKey(redisKey, cacheKey, userCfg.getNearCacheTtl());
+	}
+
+	/**
+	 * 返回的应答与缓存共享， 调用方不可修改
+	 */
+	public static byte[] get(NearCacheKey key) {
+		Segment[] segs = segments;
+		if ( segs == null ) {
+			return null;
+		}
+
+		byte[] reply = segmentFor(segs, hash(key.redisKey)).get(key, TimeUtil.currentTimeMillis());
+		if ( reply != null ) {
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+		}
+		return reply;
+	}
+
+	/**
+	 * 未命中、 向后端加载前调用， 返回的版本用于 put 时判断加载期间是否发生过失效
+	 */
+	public static long beginLoad(NearCacheKey key) {
+		Segment[] segs = segments;
+		if ( segs == null ) {
+			return -1;
+		}
+		int h = hash( key.redisKey );
+		return segmentFor(segs, h).getInvalidateSeq( h );
+	}
+
+	public static void put(NearCacheKey key, long loadSeq, byte[] reply) {
+		Segment[] segs = segments;
+		if ( segs == null || reply.length > MAX_ENTRY_SIZE ) {
+			return;
+		}
+		int h = hash( key.redisKey );
+		segmentFor(segs, h).put(key, h, loadSeq, reply, TimeUtil.currentTimeMillis() + key.ttl);
+	}
+
+	/**
+	 * 写指令涉及的 key， 追加到 redisKeys， 须在 key 前缀构建之后调用
+	 */
+	public static void addInvalidateKeys(UserCfg userCfg, RedisRequest request, List<String> redisKeys) {
+
+		if ( request.getPolicy().isRead() || request.getNumArgs() < 2 ) {
+			return;
+		}
+
+		int cmdId = request.getCmdId();
+		if ( cmdId == DEL_ID || cmdId == UNLINK_ID || cmdId == RENAME_ID || cmdId == RENAMENX_ID ) {
+			for (int i = 1; i < request.getNumArgs(); i++) {
+				redisKeys.add( toRedisKey(userCfg, request.getArg(i)) );
+			}
+
+		} else if ( cmdId == MSET_ID || cmdId == MSETNX_ID ) {
+			for (int i = 1; i < request.getNumArgs(); i += 2) {
+				redisKeys.add( toRedisKey(userCfg, request.getArg(i)) );
+			}
+
+		} else if ( cmdId == BITOP_ID ) {
+			if ( request.getNumArgs() > 2 ) {
+				redisKeys.add( toRedisKey(userCfg, request.getArg(2)) );
+			}
+
+		} else if ( cmdId == EVAL_ID || cmdId == EVALSHA_ID ) {
+			int numKeys = parseInt( request.getArg(2) );
+			for (int i = 3; i < 3 + numKeys && i < request.getNumArgs(); i++) {
+				redisKeys.add( toRedisKey(userCfg, request.getArg(i)) );
+			}
+
+		} else {
+			redisKeys.add( toRedisKey(userCfg, request.getArg(1)) );
+		}
+	}
+
+	/**
+	 * 同时封闭相同 key 的在途合并读请求
+	 */
+	public static void invalidate(List<String> redisKeys) {
+		if ( redisKeys == null ) {
+			return;
+		}
+		
+		SingleFlight.seal( redisKeys );
+		
+		Segment[] segs = segments;
+		if ( segs == null ) {
+			return;
+		}
+		for (String redisKey : redisKeys) {
+			int h = hash( redisKey );
+			segmentFor(segs, h).invalidate(redisKey, h);
+		}
+	}
+
+	public static long getHitCount() {
+		return hitCount.get();
+	}
+
+	public static long getMissCount() {
+		return missCount.get();
+	}
+
+	public static long getUsedBytes() {
+		Segment[] segs = segments;
+		long used = 0;
+		if ( segs != null ) {
+			for (Segment segment : segs) {
+				used += segment.getUsedBytes();
+			}
+		}
+		return used;
+	}
+
+	// ----------------------------------------------------------------------------
+	private static final int GET_ID = CommandParse.getCmdId( "GET".getBytes() );
+	private static final int HGET_ID = CommandParse.getCmdId( "HGET".getBytes() );
+	private static final int DEL_ID = CommandParse.getCmdId( "DEL".getBytes() );
+	private static final int UNLINK_ID = CommandParse.getCmdId( "UNLINK".getBytes() );
+	private static final int RENAME_ID = CommandParse.getCmdId( "RENAME".getBytes() );
+	private static final int RENAMENX_ID = CommandParse.getCmdId( "RENAMENX".getBytes() );
+	private static final int MSET_ID = CommandParse.getCmdId( "MSET".getBytes() );
+	private static final int MSETNX_ID = CommandParse.getCmdId( "MSETNX".getBytes() );
+	private static final int BITOP_ID = CommandParse.getCmdId( "BITOP".getBytes() );
+	private static final int EVAL_ID = CommandParse.getCmdId( "EVAL".getBytes() );
+	private static final int EVALSHA_ID = CommandParse.getCmdId( "EVALSHA".getBytes() );
+
+	private static boolean isMatch(byte[][] prefixes, byte[] key) {
+		for (byte[] prefix : prefixes) {
+			if ( key.length < prefix.length ) {
+				continue;
+			}
+
+			boolean isMatch = true;
+			for (int i = 0; i < prefix.length; i++) {
+				if ( key[i] != prefix[i] ) {
+					isMatch = false;
+					break;
+				}
+			}
+			if ( isMatch ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// 同一后端 key 的标识: poolId、 db、 key
+	public static String toRedisKey(UserCfg userCfg, byte[] key) {
+		int db = userCfg.getPoolType() == PoolType.REDIS_STANDALONE ? userCfg.getSelectDb() : 0;
+		StringBuffer sb = new StringBuffer( key.length + 8 );
+		sb.append( userCfg.getPoolId() ).append(':').append( db ).append(':');
+		sb.append( toString(key) );
+		return sb.toString();
+	}
+
+	// 按字节保留的字符串
+	@SuppressWarnings("deprecation")
+	private static String toString(byte[] buf) {
+		return new String(buf, 0, 0, buf.length);
+	}
+
+	// numkeys 非法时按 0 处理
+	private static int parseInt(byte[] buf) {
+		if ( buf == null || buf.length == 0 || buf.length > 9 ) {
+			return 0;
+		}
+		int n = 0;
+		for (byte b : buf) {
+			if ( b < '0' || b > '9' ) {
+				return 0;
+			}
+			n = n * 10 + (b - '0');
+		}
+		return n;
+	}
+
+	private static int hash(String redisKey) {
+		int h = redisKey.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	// 低位选分段， 其后的位选失效条带
+	private static Segment segmentFor(Segment[] segs, int hash) {
+		return segs[ hash & (SEGMENT_COUNT - 1) ];
+	}
+
+	private static int stripeOf(int hash) {
+		return (hash >>> SEGMENT_BITS) & (STRIPE_COUNT - 1);
+	}
+
+
+	/**
+	 * 缓存 key
+	 */
+	public static class NearCacheKey {
+
+		final String redisKey;
+		final String cacheKey;
+		final long ttl;
+
+		NearCacheKey(String redisKey, String cacheKey, long ttl) {
+			this.redisKey = redisKey;
+			this.cacheKey = cacheKey;
+			this.ttl = ttl;
+		}
+	}
+
+	private static class Entry {
+
+		final String cacheKey;
+		final String redisKey;
+		final int hash;
+		final long expireAt;
+		final int charge;			// 计入容量的字节数
+		final byte[] reply;			// 只读， 命中时直接共享
+
+		Entry(NearCacheKey key, byte[] reply, long expireAt) {
+			this.cacheKey = key.cacheKey;
+			this.redisKey = key.redisKey;
+			this.hash = key.cacheKey.hashCode();
+			this.reply = reply;
+			this.expireAt = expireAt;
+			this.charge = reply.length + ENTRY_OVERHEAD + cacheKey.length();
+		}
+	}
+
+	/**
+	 * 分段， 全部方法在段锁内执行
+	 */
+	private static class Segment {
+
+		private final long windowCapacity;
+		private final long mainCapacity;
+
+		private long windowBytes = 0;
+		private long mainBytes = 0;
+
+		private final LinkedHashMap<String, Entry> window = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		private final LinkedHashMap<String, Entry> main = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+		// redisKey -> cacheKeys， 用于按 key 失效
+		private final Map<String, List<String>> keyIndex = new HashMap<String, List<String>>();
+
+		private final FrequencySketch sketch;
+
+		private final long[] invalidateSeqs = new long[ STRIPE_COUNT ];
+
+		Segment(long capacity) {
+			this.windowCapacity = Math.max(capacity / 100, MAX_ENTRY_SIZE + ENTRY_OVERHEAD);
+			this.mainCapacity = Math.max(capacity - windowCapacity, 0);
+			this.sketch = new FrequencySketch( (int) Math.min(capacity / AVG_ENTRY_SIZE, 1 << 20) );
+		}
+
+		synchronized long getInvalidateSeq(int hash) {
+			return invalidateSeqs[ stripeOf(hash) ];
+		}
+
+		synchronized long getUsedBytes() {
+			return windowBytes + mainBytes;
+		}
+
+		synchronized byte[] get(NearCacheKey key, long now) {
+
+			sketch.increment( key.cacheKey.hashCode() );
+
+			Entry entry = window.get( key.cacheKey );
+			if ( entry == null ) {
+				entry = main.get( key.cacheKey );
+				if ( entry == null ) {
+					return null;
+				}
+			}
+
+			if ( entry.expireAt <= now ) {
+				remove( entry );
+				return null;
+			}
+
+			return entry.reply;
+		}
+
+		synchronized void put(NearCacheKey key, int hash, long loadSeq, byte[] reply, long expireAt) {
+
+			// 加载期间同一条带发生过失效， 放弃
+			if ( loadSeq != invalidateSeqs[ stripeOf(hash) ] ) {
+				return;
+			}
+
+			Entry old = window.get( key.cacheKey );
+			if ( old == null ) {
+				old = main.get( key.cacheKey );
+			}
+			if ( old != null ) {
+				remove( old );
+			}
+
+			Entry entry = new Entry(key, reply, expireAt);
+			window.put(entry.cacheKey, entry);
+			windowBytes += entry.charge;
+			index( entry );
+
+			// 窗口溢出的条目尝试进入主区
+			Iterator<Entry> it = window.values().iterator();
+			while ( windowBytes > windowCapacity && it.hasNext() ) {
+				Entry candidate = it.next();
+				it.remove();
+				windowBytes -= candidate.charge;
+				admit( candidate );
+			}
+		}
+
+		// TinyLFU 准入， 按字节淘汰主区尾部， 候选频率不高于淘汰对象时丢弃候选
+		private void admit(Entry candidate) {
+
+			int candidateFreq = sketch.frequency( candidate.hash );
+
+			List<Entry> victims = null;
+			long freed = 0;
+			Iterator<Entry> it = main.values().iterator();
+			while ( mainBytes - freed + candidate.charge > mainCapacity ) {
+
+				if ( !it.hasNext() ) {
+					unindex( candidate );
+					return;
+				}
+
+				Entry victim = it.next();
+				if ( sketch.frequency( victim.hash ) >= candidateFreq && victim.expireAt > TimeUtil.currentTimeMillis() ) {
+					unindex( candidate );
+					return;
+				}
+
+				if ( victims == null ) {
+					victims = new ArrayList<Entry>(2);
+				}
+				victims.add( victim );
+				freed += victim.charge;
+			}
+
+			if ( victims != null ) {
+				for (Entry victim : victims) {
+					remove( victim );
+				}
+			}
+
+			main.put(candidate.cacheKey, candidate);
+			mainBytes += candidate.charge;
+		}
+
+		synchronized void invalidate(String redisKey, int hash) {
+
+			invalidateSeqs[ stripeOf(hash) ]++;
+
+			List<String> cacheKeys = keyIndex.get( redisKey );
+			if ( cacheKeys == null ) {
+				return;
+			}
+
+			for (String cacheKey : new ArrayList<String>( cacheKeys )) {
+				Entry entry = window.get( cacheKey );
+				if ( entry == null ) {
+					entry = main.get( cacheKey );
+				}
+				if ( entry != null ) {
+					remove( entry );
+				}
+			}
+		}
+
+		private void remove(Entry entry) {
+			if ( window.remove( entry.cacheKey ) != null ) {
+				windowBytes -= entry.charge;
+			} else if ( main.remove( entry.cacheKey ) != null ) {
+				mainBytes -= entry.charge;
+			}
+			unindex( entry );
+		}
+
+		private void index(Entry entry) {
+			List<String> cacheKeys = keyIndex.get( entry.redisKey );
+			if ( cacheKeys == null ) {
+				cacheKeys = new ArrayList<String>(1);
+				keyIndex.put(entry.redisKey, cacheKeys);
+			}
+			cacheKeys.add( entry.cacheKey );
+		}
+
+		private void unindex(Entry entry) {
+			List<String> cacheKeys = keyIndex.get( entry.redisKey );
+			if ( cacheKeys != null ) {
+				cacheKeys.remove( entry.cacheKey );
+				if ( cacheKeys.isEmpty() ) {
+					keyIndex.remove( entry.redisKey );
+				}
+			}
+		}
+	}
+
+}
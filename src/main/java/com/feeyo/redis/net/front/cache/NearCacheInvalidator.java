@@ -0,0 +1,34 @@
+package com.feeyo.redis.net.front.cache;
+
+import java.util.List;
+
+import com.feeyo.redis.net.backend.callback.ResponseListener;
+
+/**
+ * 写指令应答完整后再次失效近端缓存， 先于应答写入前端
+ * 
+ * 路由时的失效之后、 写入生效之前发起的加载可能读到旧值， 再次失效使其被放弃； 出错时同样失效
+ */
+public class NearCacheInvalidator implements ResponseListener {
+	
+	private final List<String> redisKeys;
+	
+	public NearCacheInvalidator(List<String> redisKeys) {
+		this.redisKeys = redisKeys;
+	}
+
+	@Override
+	public void onData(byte[] data) {
+		// ignore
+	}
+
+	@Override
+	public void onComplete() {
+		NearCache.invalidate( redisKeys );
+	}
+
+	@Override
+	public void onError(String reason) {
+		NearCache.invalidate( redisKeys );
+	}
+}
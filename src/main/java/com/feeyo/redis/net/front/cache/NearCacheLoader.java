@@ -0,0 +1,74 @@
+package com.feeyo.redis.net.front.cache;
+
+import com.feeyo.redis.net.backend.callback.ResponseListener;
+import com.feeyo.redis.net.front.cache.NearCache.NearCacheKey;
+
+/**
+ * 未命中时随透传收集后端应答， 应答完整后写入近端缓存
+ * 
+ * 仅收集 '$' 应答， 超过单条上限即放弃； nil ($-1) 不缓存， 避免不存在的 key 占用容量
+ */
+public class NearCacheLoader implements ResponseListener {
+	
+	private final NearCacheKey key;
+	private final long loadSeq;
+	
+	private byte[] buf = null;
+	private int size = 0;
+	private boolean isGiveUp = false;
+	
+	public NearCacheLoader(NearCacheKey key) {
+		this.key = key;
+		this.loadSeq = NearCache.beginLoad( key );
+	}
+	
+	@Override
+	public void onData(byte[] data) {
+		
+		if ( isGiveUp || data.length == 0 ) {
+			return;
+		}
+		
+		if ( size == 0 && data[0] != '$' ) {
+			isGiveUp = true;
+			return;
+		}
+		
+		int newSize = size + data.length;
+		if ( newSize > NearCache.MAX_ENTRY_SIZE ) {
+			isGiveUp = true;
+			buf = null;
+			return;
+		}
+		
+		if ( buf == null || buf.length < newSize ) {
+			byte[] newBuf = new byte[ Math.max(newSize, size * 2) ];
+			if ( buf != null ) {
+				System.arraycopy(buf, 0, newBuf, 0, size);
+			}
+			buf = newBuf;
+		}
+		System.arraycopy(data, 0, buf, size, data.length);
+		size = newSize;
+	}
+	
+	@Override
+	public void onComplete() {
+		if ( isGiveUp || size == 0 || (size > 1 && buf[1] == '-') ) {
+			return;
+		}
+		
+		byte[] reply = buf;
+		if ( reply.length != size ) {
+			reply = new byte[ size ];
+			System.arraycopy(buf, 0, reply, 0, size);
+		}
+		NearCache.put(key, loadSeq, reply);
+	}
+	
+	@Override
+	public void onError(String reason) {
+		isGiveUp = true;
+		buf = null;
+	}
+}
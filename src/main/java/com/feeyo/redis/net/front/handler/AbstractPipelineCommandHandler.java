@@ -7,8 +7,8 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,10 +20,12 @@ import com.feeyo.redis.net.codec.RedisRequestEncoder;
 import com.feeyo.redis.net.codec.RedisResponse;
 import com.feeyo.redis.net.codec.RedisResponseDecoder;
 import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.net.front.cache.NearCache;
 import com.feeyo.redis.net.front.handler.segment.Segment;
 import com.feeyo.redis.net.front.handler.segment.SegmentType;
 import com.feeyo.redis.net.front.route.RouteResult;
 import com.feeyo.redis.net.front.route.RouteNode;
+import com.feeyo.redis.nio.NetSystem;
 import com.feeyo.redis.virtualmemory.Message;
 import com.feeyo.redis.virtualmemory.PutMessageResult;
 import com.feeyo.redis.virtualmemory.Util;
@@ -42,12 +44,14 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 		
 		public static final byte VIRTUAL_MEMORY = 0;	// 虚拟内存
 		public static final byte HEAP_MEMORY = 1;		// 堆内存
+		public static final byte BUFFER_MEMORY = 2;		// 池化 buffer， 占用 ResponseSpillPolicy 额度
 		
 		private byte type;
 		
 		private long offset;
 		private int size;
 		private byte[] data;
+		private ByteBuffer buffer;
 		
 		public DataOffset(long offset, int size) {
 			super();
@@ -61,6 +65,13 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 			this.type = HEAP_MEMORY;
 			this.data = data;
 		}
+		
+		public DataOffset(ByteBuffer buffer, int size) {
+			super();
+			this.type = BUFFER_MEMORY;
+			this.buffer = buffer;
+			this.size = size;
+		}
 
 		public long getOffset() {
 			return offset;
@@ -73,6 +84,15 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 		public byte[] getData() {
 			if ( type == VIRTUAL_MEMORY ) {
 				return RedisEngineCtx.INSTANCE().getVirtualMemoryService().getMessageBodyAndMarkAsConsumed( offset, size );
+				
+			} else if ( type == BUFFER_MEMORY ) {
+				// 读出后即归还 buffer
+				if ( data == null ) {
+					data = new byte[ size ];
+					buffer.flip();
+					buffer.get( data );
+					clearData();
+				}
 			}
 			return data;
 		}
@@ -80,6 +100,11 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 		public void clearData() {
 			if ( type == VIRTUAL_MEMORY ) {
 				RedisEngineCtx.INSTANCE().getVirtualMemoryService().markAsConsumed( offset, size );
+				
+			} else if ( type == BUFFER_MEMORY && buffer != null ) {
+				NetSystem.getInstance().getBufferPool().recycle( buffer );
+				ResponseSpillPolicy.release( size );
+				buffer = null;
 			}
 		}
 	}
@@ -118,24 +143,53 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 	}
 	
 	
-	// 应答节点
+	/**
+	 * 按 pipeline 原始下标重组应答
+	 * 
+	 * 每个下标只由其所属节点的后端 reactor 写入一次， 剩余计数归零的线程负责按序取出， 无需加锁
+	 */
+	public class ResponseSlots {
+		
+		private final RouteResult rrs;
+		private final AtomicReferenceArray<DataOffset> slots;
+		private final AtomicInteger remaining;
+		
+		public ResponseSlots(RouteResult rrs) {
+			this.rrs = rrs;
+			this.slots = new AtomicReferenceArray<DataOffset>( rrs.getRequestCount() );
+			this.remaining = new AtomicInteger( rrs.getThroughtCount() );
+			
+			if ( rrs.getNoThroughtIndexs() != null ) {
+				for (int index : rrs.getNoThroughtIndexs()) {
+					slots.set(index, new DataOffset( "+OK\r\n".getBytes() ));
+				}
+			}
+		}
+	}
+	
+	// 应答节点， 对应一个路由后的子请求
 	public class ResponseNode {
 
-		private RouteNode sourceNode;
+		private final ResponseSlots responseSlots;
+		private final int[] indexs;					// 子请求在 pipeline 中的原始下标
 		
-		private int count = 0;		//应答数
-		private ConcurrentLinkedQueue<DataOffset> dataOffsetQueue = new ConcurrentLinkedQueue<DataOffset>();
+		private int count = 0;						// 应答数， 仅该节点的后端 reactor 线程访问
 		
-		public ResponseNode(RouteNode node) {
-			this.sourceNode = node;
+		public ResponseNode(ResponseSlots responseSlots, RouteNode node) {
+			this.responseSlots = responseSlots;
+			
+			List<Integer> idxs = node.getRequestIndexs();
+			this.indexs = new int[ idxs.size() ];
+			for (int i = 0; i < indexs.length; i++) {
+				indexs[i] = idxs.get(i);
+			}
 		}
 	}
 
 	protected RedisRequestEncoder encoder = new RedisRequestEncoder();
 	protected RouteResult rrs;
 	
-	private ConcurrentHashMap<String, ResponseNode> allResponseNode =  new ConcurrentHashMap<String, ResponseNode>(); 
-	private AtomicInteger allResponseCount = new AtomicInteger(0); 					// 接收到返回数据的条数
+	private volatile ResponseSlots responseSlots;
 	
 	private ConcurrentHashMap<Long, BackendConnection> backendConnections = new ConcurrentHashMap<Long, BackendConnection>();
 	
@@ -149,15 +203,11 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 	protected void commonHandle(RouteResult rrs) throws IOException {
 		
 		this.rrs = rrs;
-		this.allResponseCount.set(0);
-		this.allResponseNode.clear();
-		
-		//
-		for(RouteNode node: rrs.getRouteNodes()) {
-			String address = node.getPhysicalNode().getName();
-			ResponseNode reponseNode = new ResponseNode( node );
-			allResponseNode.put( address, reponseNode );
-		}
+		this.responseSlots = new ResponseSlots( rrs );
+	}
+	
+	protected ResponseNode newResponseNode(RouteNode node) {
+		return new ResponseNode(responseSlots, node);
 	}
 	
 	
@@ -180,13 +230,35 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 		return buffer;
 	}
 
-	//
-	protected synchronized ResponseMargeResult addAndMargeResponse(String address, int count, byte[][] resps) {
+	// 应答写入所属下标， 由节点自身的后端 reactor 调用
+	protected ResponseMargeResult addAndMargeResponse(ResponseNode node, int count, byte[][] resps) {
 		
-		ResponseNode node = allResponseNode.get( address );
+		ResponseSlots responseSlots = node.responseSlots;
+		RouteResult rrs = responseSlots.rrs;
 		
 		if ( resps != null && resps.length > 0) {
-			for (byte[] resp : resps) {
+			
+			int stored = 0;
+			for (int i = 0; i < count; i++) {
+				
+				byte[] resp = resps[i];
+				
+				if ( node.count >= node.indexs.length ) {
+					LOGGER.warn("unexpected response, drop it, conn={}", frontCon);
+					break;
+				}
+				
+				DataOffset dataOffset;
+				
+				// 小应答放在池化 buffer
+				if ( ResponseSpillPolicy.tryReserve( resp.length ) ) {
+					ByteBuffer buffer = NetSystem.getInstance().getBufferPool().allocate( resp.length );
+					buffer.put( resp );
+					dataOffset = new DataOffset(buffer, resp.length);
+					responseSlots.slots.set( node.indexs[ node.count++ ], dataOffset );
+					stored++;
+					continue;
+				}
 				
 				Message msg = new Message();
 				msg.setBody( resp );
@@ -198,8 +270,9 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 				
 				PutMessageResult pmr = RedisEngineCtx.INSTANCE().getVirtualMemoryService().putMessage( msg );
 				if ( pmr.isOk() ) {
-					DataOffset dataOffset = new DataOffset( pmr.getAppendMessageResult().getWroteOffset(), pmr.getAppendMessageResult().getWroteBytes());
-					node.dataOffsetQueue.offer( dataOffset );
+					dataOffset = new DataOffset( pmr.getAppendMessageResult().getWroteOffset(), pmr.getAppendMessageResult().getWroteBytes());
+					responseSlots.slots.set( node.indexs[ node.count++ ], dataOffset );
+					stored++;
 					
 				} else {
 					LOGGER.warn("response append error: appendMessageResult={}, conn={}",
@@ -208,26 +281,13 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 				}
 			}
 			
-			node.count += count;
-			
-			allResponseCount.addAndGet(count);
-			
-			// 判断所有节点是否全部返回
-			if ( allResponseCount.get()  == rrs.getThroughtCount() ) {
+			// 判断所有节点是否全部返回， 只有一个线程会看到归零
+			if ( stored > 0 && responseSlots.remaining.addAndGet( -stored ) == 0 ) {
 				
 				//合并结果
-				DataOffset[] offsets = new DataOffset[ rrs.getRequestCount() ];
-				for(ResponseNode responseNode: allResponseNode.values()) {							//
-					List<Integer> idxs = responseNode.sourceNode.getRequestIndexs();
-					for (int index : idxs) {
-						offsets[index] = responseNode.dataOffsetQueue.poll();
-					}
-				}
-				
-				if ( rrs.getNoThroughtIndexs() != null && !rrs.getNoThroughtIndexs().isEmpty() ) {
-					for (int index : rrs.getNoThroughtIndexs()) {
-						offsets[index] = new DataOffset( "+OK\r\n".getBytes() );
-					}
+				DataOffset[] offsets = new DataOffset[ responseSlots.slots.length() ];
+				for (int i = 0; i < offsets.length; i++) {
+					offsets[i] = responseSlots.slots.getAndSet(i, null);
 				}
 				
 				
@@ -252,7 +312,7 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 			} 
 			
 			// 判断当前节点是否全部返回
-			if ( node.sourceNode.getRequestIndexs().size() == node.count ) {
+			if ( node.indexs.length == node.count ) {
 				return new ResponseMargeResult( ResponseMargeResult.THE_NODE_COMPLETED );
 			}
 			
@@ -298,8 +358,8 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 		case MEXISTS:
 			RedisResponseDecoder responseDecoder = new RedisResponseDecoder();
 			int okCount = 0;
-			for (DataOffset offset : offsets) {
-				byte[] data = offset.getData();
+			for (int index : indexs) {
+				byte[] data = offsets.get(index).getData();
 				RedisResponse response = responseDecoder.decode( data ).get(0);
 				if ( response.is( (byte)':') ) {
 					byte[] _buf1 = (byte[])response.data();
@@ -356,16 +416,19 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 	
 	
 	// VM 资源清理
-	private synchronized void clearVirtualMemoryResource() {
-		for(ResponseNode node: allResponseNode.values()) {
-            while( !node.dataOffsetQueue.isEmpty() ) {
-                // 标记该消息已经被消费
-                DataOffset dataOffset = node.dataOffsetQueue.poll();
-                if ( dataOffset != null ) {
-                	dataOffset.clearData();
-                }
-            }
-        }
+	private void clearVirtualMemoryResource() {
+		ResponseSlots responseSlots = this.responseSlots;
+		if ( responseSlots == null ) {
+			return;
+		}
+		
+		for (int i = 0; i < responseSlots.slots.length(); i++) {
+			// 标记该消息已经被消费
+			DataOffset dataOffset = responseSlots.slots.getAndSet(i, null);
+			if ( dataOffset != null ) {
+				dataOffset.clearData();
+			}
+		}
 	}
 	
 	// 后端链接清理  
@@ -394,9 +457,17 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
 	// ------------------------------------------------------------
 	
 	
+	// 写指令的近端缓存再次失效， 应答写入前端之前或出错时调用
+	protected void invalidateNearCache() {
+		if ( rrs != null ) {
+			NearCache.invalidate( rrs.getNearCacheKeys() );
+		}
+	}
+	
 	// 消息写入出错
 	protected void responseAppendError() {
 		
+		this.invalidateNearCache();
 		this.clearBackendConnections();
         
         if( frontCon != null && !frontCon.isClosed() ) {
@@ -410,6 +481,7 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
     public void backendConnectionError(Exception e) {
         super.backendConnectionError(e);
         
+        invalidateNearCache();
         clearBackendConnections();
         
         if( frontCon != null && !frontCon.isClosed() ) {
@@ -423,6 +495,7 @@ public abstract class AbstractPipelineCommandHandler extends AbstractCommandHand
     public void backendConnectionClose(String reason) {
         super.backendConnectionClose(reason);
         
+        invalidateNearCache();
         clearBackendConnections();
         
         if( frontCon != null && !frontCon.isClosed() ) {
@@ -26,7 +26,7 @@ public class BlockCommandHandler extends AbstractCommandHandler {
 		RouteNode node = rrs.getRouteNodes().get(0);
 		RedisRequest request = rrs.getRequests().get(0);
 		
-		String cmd = new String(request.getArgs()[0]).toUpperCase();
+		String cmd = request.getCmd();
 		byte[] requestKey = request.getNumArgs() > 1 ? request.getArgs()[1] : null;
 		
 		// 埋点
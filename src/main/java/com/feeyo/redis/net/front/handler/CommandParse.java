@@ -1,5 +1,6 @@
 package com.feeyo.redis.net.front.handler;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -45,6 +46,19 @@ public class CommandParse {
 	
 	private static final Map<String, RedisRequestPolicy> _cmds = new HashMap<String, RedisRequestPolicy>( 220 );
 	
+	private static final RedisRequestPolicy UNKNOW_POLICY = new RedisRequestPolicy(UNKNOW_CMD, UNKNOW_CMD, UNKNOW_CMD);
+	
+	public static final int UNKNOW_CMD_ID = -1;
+	
+	// 字节级指令表，开放寻址， 槽位存放 cmdId + 1， 0 为空
+	private static int[] _table;
+	private static int _tableMask;
+	
+	// 按 cmdId 下标
+	private static byte[][] _cmdBytes;
+	private static String[] _cmdNames;
+	private static RedisRequestPolicy[] _policies;
+	
 	static {	
 		
 		// Manage
@@ -275,12 +289,137 @@ public class CommandParse {
 		_cmds.put("TOUCH", 				new RedisRequestPolicy(DISABLED_CMD, THROUGH_CMD, WRITE_CMD));		// 
 		_cmds.put("UNLINK", 			new RedisRequestPolicy(DISABLED_CMD, THROUGH_CMD, WRITE_CMD));		// 
 
+		buildTable();
+	}
+	
+	private static void buildTable() {
+		
+		int size = _cmds.size();
+		_cmdBytes = new byte[ size ][];
+		_cmdNames = new String[ size ];
+		_policies = new RedisRequestPolicy[ size ];
+		
+		// 装载因子 <= 0.25， 探测链很短
+		int capacity = Integer.highestOneBit( size * 4 - 1 ) << 1;
+		_table = new int[ capacity ];
+		_tableMask = capacity - 1;
+		
+		int id = 0;
+		for (Map.Entry<String, RedisRequestPolicy> entry : _cmds.entrySet()) {
+			String name = entry.getKey().intern();
+			byte[] bytes = name.getBytes();
+			
+			_cmdBytes[id] = bytes;
+			_cmdNames[id] = name;
+			_policies[id] = entry.getValue();
+			
+			int idx = hash(bytes, 0, bytes.length) & _tableMask;
+			while ( _table[idx] != 0 ) {
+				idx = (idx + 1) & _tableMask;
+			}
+			_table[idx] = id + 1;
+			id++;
+		}
+	}
+	
+	// 大小写不敏感
+	private static int hash(byte[] buf, int offset, int length) {
+		int h = length;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + (buf[i] & 0xDF);
+		}
+		return h ^ (h >>> 16);
+	}
+	
+	private static int hash(ByteBuffer buf, int offset, int length) {
+		int h = length;
+		for (int i = offset; i < offset + length; i++) {
+			h = 31 * h + (buf.get(i) & 0xDF);
+		}
+		return h ^ (h >>> 16);
+	}
+	
+	private static boolean equalsIgnoreCase(byte[] upper, ByteBuffer buf, int offset, int length) {
+		if ( upper.length != length ) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			byte b = buf.get(offset + i);
+			if ( b >= 'a' && b <= 'z' ) {
+				b -= 32;
+			}
+			if ( upper[i] != b ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean equalsIgnoreCase(byte[] upper, byte[] buf, int offset, int length) {
+		if ( upper.length != length ) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			byte b = buf[offset + i];
+			if ( b >= 'a' && b <= 'z' ) {
+				b -= 32;
+			}
+			if ( upper[i] != b ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * 根据指令字节查找 cmdId， 不产生 String， 未知指令返回 UNKNOW_CMD_ID
+	 */
+	public static int getCmdId(byte[] buf, int offset, int length) {
+		int idx = hash(buf, offset, length) & _tableMask;
+		int slot;
+		while ( (slot = _table[idx]) != 0 ) {
+			if ( equalsIgnoreCase(_cmdBytes[slot - 1], buf, offset, length) ) {
+				return slot - 1;
+			}
+			idx = (idx + 1) & _tableMask;
+		}
+		return UNKNOW_CMD_ID;
+	}
+	
+	/**
+	 * 同上， 参数位于 buffer 的 [offset, offset + length)， 绝对位置读取
+	 */
+	public static int getCmdId(ByteBuffer buf, int offset, int length) {
+		int idx = hash(buf, offset, length) & _tableMask;
+		int slot;
+		while ( (slot = _table[idx]) != 0 ) {
+			if ( equalsIgnoreCase(_cmdBytes[slot - 1], buf, offset, length) ) {
+				return slot - 1;
+			}
+			idx = (idx + 1) & _tableMask;
+		}
+		return UNKNOW_CMD_ID;
+	}
+	
+	public static int getCmdId(byte[] cmd) {
+		return getCmdId(cmd, 0, cmd.length);
+	}
+	
+	/**
+	 * cmdId 对应的大写指令名， 已 intern
+	 */
+	public static String getCmdName(int cmdId) {
+		return cmdId < 0 ? null : _cmdNames[ cmdId ];
+	}
+	
+	public static RedisRequestPolicy getPolicy(int cmdId) {
+		return cmdId < 0 ? UNKNOW_POLICY : _policies[ cmdId ];
 	}
     
     // 解析特殊指令策略
 	public static RedisRequestPolicy getPolicy(String cmd) {
 		RedisRequestPolicy policy = _cmds.get( cmd );
-		return policy == null ? new RedisRequestPolicy(UNKNOW_CMD, UNKNOW_CMD, UNKNOW_CMD) : policy;		
+		return policy == null ? UNKNOW_POLICY : policy;		
 	}
 }
 
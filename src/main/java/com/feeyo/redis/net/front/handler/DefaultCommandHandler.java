@@ -2,12 +2,22 @@ package com.feeyo.redis.net.front.handler;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
 
+import com.feeyo.redis.engine.manage.stat.StatUtil;
 import com.feeyo.redis.net.backend.callback.AbstractBackendCallback;
+import com.feeyo.redis.net.backend.pool.MultiplexConGroup;
 import com.feeyo.redis.net.backend.pool.PhysicalNode;
+import com.feeyo.redis.net.backend.pool.PoolType;
 import com.feeyo.redis.net.codec.RedisRequest;
-import com.feeyo.redis.net.backend.callback.DirectTransTofrontCallBack;
+import com.feeyo.redis.net.backend.callback.CutThroughTransTofrontCallBack;
 import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.net.front.cache.NearCache;
+import com.feeyo.redis.net.front.cache.NearCacheInvalidator;
+import com.feeyo.redis.net.front.cache.NearCacheLoader;
+import com.feeyo.redis.net.front.cache.NearCache.NearCacheKey;
+import com.feeyo.redis.net.front.handler.SingleFlight.Flight;
+import com.feeyo.redis.net.front.handler.SingleFlight.Waiter;
 import com.feeyo.redis.net.front.route.RouteResult;
 import com.feeyo.redis.net.front.route.RouteNode;
 import com.feeyo.redis.nio.util.TimeUtil;
@@ -24,17 +34,103 @@ public class DefaultCommandHandler extends AbstractCommandHandler {
 		RouteNode node = routeResult.getRouteNodes().get(0);
 		RedisRequest request = routeResult.getRequests().get(0);
 		
-		String cmd = new String(request.getArgs()[0]).toUpperCase();
-		byte[] requestKey = request.getNumArgs() > 1 ? request.getArgs()[1] : null;
+		String cmd = request.getCmd();
+		byte[] requestKey = request.getNumArgs() > 1 ? request.getArg(1) : null;
 		
 		// 埋点
-		frontCon.getSession().setRequestTimeMills(TimeUtil.currentTimeMillis());
+		long requestTimeMills = TimeUtil.currentTimeMillis();
+		long requestNanos = System.nanoTime();
+		frontCon.getSession().setRequestTimeMills(requestTimeMills);
 		frontCon.getSession().setRequestCmd( cmd );
 		frontCon.getSession().setRequestKey(requestKey);
 		frontCon.getSession().setRequestSize(request.getSize());
 		
+		// 近端缓存
+		NearCacheKey nearCacheKey = NearCache.getCacheKey(frontCon.getUserCfg(), request);
+		if ( nearCacheKey != null ) {
+			byte[] reply = NearCache.get( nearCacheKey );
+			if ( reply != null ) {
+				frontCon.write( reply );
+				
+				int procTimeMills = (int)(TimeUtil.currentTimeMillis() - requestTimeMills);
+				StatUtil.collect(frontCon.getPassword(), cmd, requestKey, request.getSize(), reply.length, procTimeMills, 0, false);
+				return;
+			}
+		}
+		
+		// 相同读请求合并， 已有在途请求时等待其应答
+		Flight flight = null;
+		if ( SingleFlight.isEnabled() ) {
+			String flightKey = SingleFlight.getFlightKey(frontCon.getUserCfg(), request);
+			if ( flightKey != null ) {
+				flight = SingleFlight.acquire(flightKey, frontCon.getUserCfg(), request, 
+						new Waiter(frontCon, cmd, requestKey, request.getSize(), requestTimeMills, requestNanos));
+				if ( flight == null ) {
+					return;
+				}
+			}
+		}
+		
+		PhysicalNode physicalNode = node.getPhysicalNode();
+		ByteBuffer buffer = request.encode();
+		
+		// 集群保留编码后的请求， 用于 MOVED / ASK 重发； 参数视图在本次读事件后失效
+		RedisRequest redirectRequest = null;
+		if ( physicalNode.getPoolType() == PoolType.REDIS_CLUSTER ) {
+			redirectRequest = RedisRequest.retainEncoded( buffer );
+		}
+		
+		// 写指令的近端缓存在应答完整后再次失效
+		List<String> nearCacheKeys = routeResult.getNearCacheKeys();
+		
+		// 多路复用， 需要旁路收集应答的请求走独占连接
+		MultiplexConGroup multiplexGroup = physicalNode.getMultiplexGroup();
+		if ( multiplexGroup != null && nearCacheKey == null && nearCacheKeys == null && flight == null && isMultiplexable(physicalNode, request) ) {
+			if ( multiplexGroup.write(frontCon, redirectRequest, buffer, cmd, requestKey, request.getSize(), requestTimeMills) ) {
+				return;
+			}
+		}
+		
 		// 透传
-		writeToBackend(node.getPhysicalNode(), request.encode(), new DirectTransTofrontCallBack());
+		CutThroughTransTofrontCallBack callback = new CutThroughTransTofrontCallBack(redirectRequest, 0, false);
+		if ( nearCacheKey != null ) {
+			callback.addResponseListener( new NearCacheLoader( nearCacheKey ) );
+		}
+		if ( flight != null ) {
+			callback.addResponseListener( flight );
+		}
+		if ( nearCacheKeys != null ) {
+			callback.addResponseListener( new NearCacheInvalidator( nearCacheKeys ) );
+		}
+		
+		try {
+			writeToBackend(physicalNode, buffer, callback);
+		} catch (IOException e) {
+			if ( flight != null ) {
+				flight.onError( e.getMessage() );
+			}
+			if ( nearCacheKeys != null ) {
+				NearCache.invalidate( nearCacheKeys );
+			}
+			throw e;
+		}
+	}
+	
+	/*
+	 * 仅普通的透传指令可共享连接
+	 * 阻塞、订阅类指令独占连接； 非集群且需要 SELECT db 的用户独占连接
+	 */
+	private boolean isMultiplexable(PhysicalNode physicalNode, RedisRequest request) {
+		
+		if ( request.getPolicy().getHandleType() != CommandParse.THROUGH_CMD ) {
+			return false;
+		}
+		
+		if ( physicalNode.getPoolType() == PoolType.REDIS_STANDALONE ) {
+			int db = frontCon.getUserCfg().getSelectDb();
+			return db == -1 || db == 0;
+		}
+		return true;
 	}
 	
 	public void writeToCustomerBackend(PhysicalNode physicalNode, ByteBuffer buffer, AbstractBackendCallback callBack) throws IOException {
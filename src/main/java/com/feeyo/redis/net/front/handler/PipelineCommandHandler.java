@@ -35,7 +35,7 @@ public class PipelineCommandHandler extends AbstractPipelineCommandHandler {
     	// 写出
 		for (RouteNode rrn : rrs.getRouteNodes()) {
 			ByteBuffer buffer =  getRequestBufferByRRN(rrn);
-			BackendConnection backendConn = writeToBackend(rrn.getPhysicalNode(), buffer, new PipelineDirectTransTofrontCallBack());
+			BackendConnection backendConn = writeToBackend(rrn.getPhysicalNode(), buffer, new PipelineDirectTransTofrontCallBack( newResponseNode(rrn) ));
 			if ( backendConn != null )
 				this.holdBackendConnection( backendConn );
 		}
@@ -51,6 +51,11 @@ public class PipelineCommandHandler extends AbstractPipelineCommandHandler {
 	private class PipelineDirectTransTofrontCallBack extends DirectTransTofrontCallBack {
 
 		private RedisResponsePipelineDecoder decoder = new RedisResponsePipelineDecoder();
+		private final ResponseNode responseNode;
+		
+		public PipelineDirectTransTofrontCallBack(ResponseNode responseNode) {
+			this.responseNode = responseNode;
+		}
 		
 		@Override
 		public void handleResponse(BackendConnection backendCon, byte[] byteBuff) throws IOException {
@@ -60,9 +65,8 @@ public class PipelineCommandHandler extends AbstractPipelineCommandHandler {
 			if ( !pipelineResponse.isOK() )
 				return;
 			
-			// 这里缓存进文件的是 pipelienDecoder中缓存的数据。 防止断包之后丢数据
-			String address = backendCon.getPhysicalNode().getName();
-			ResponseMargeResult result = addAndMargeResponse(address, pipelineResponse.getCount(), pipelineResponse.getResps());
+			// 应答直接写入所属的 pipeline 下标
+			ResponseMargeResult result = addAndMargeResponse(responseNode, pipelineResponse.getCount(), pipelineResponse.getResps());
 			
 			// 如果所有请求，应答都已经返回
 			if ( result.getStatus() == ResponseMargeResult.ALL_NODE_COMPLETED ) {
@@ -70,6 +74,8 @@ public class PipelineCommandHandler extends AbstractPipelineCommandHandler {
 				// 获取所有应答
 				List<DataOffset> offsets = result.getDataOffsets();
 				if (offsets != null) {
+					
+					invalidateNearCache();
 
 					try {
 						String password = frontCon.getPassword();
@@ -106,6 +112,11 @@ public class PipelineCommandHandler extends AbstractPipelineCommandHandler {
 						}
 						
 					} catch (IOException e2) {
+						
+						// 未写出的应答归还 buffer
+						for (DataOffset offset : offsets) {
+							offset.clearData();
+						}
 
 						if (frontCon != null) {
 							frontCon.close("write err");
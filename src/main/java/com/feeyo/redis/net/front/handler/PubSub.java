@@ -69,6 +69,8 @@ public class PubSub  {
 						RedisFrontConnection frontCon = getFrontCon(backendCon);
 						for (RedisResponse resp : resps)
 							this.writeToFront(frontCon, resp, 0);
+						
+						backPressure(frontCon, backendCon);
 
 						resps.clear();
 						resps = null;
@@ -0,0 +1,49 @@
+package com.feeyo.redis.net.front.handler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.feeyo.redis.nio.NetSystem;
+import com.feeyo.redis.nio.SystemConfig;
+
+/**
+ * pipeline 应答暂存策略
+ * 
+ * 不超过 pipelineSpillThreshold 的应答， 在全局在途字节数不超过 pipelineMemoryBudget 时放在池化的堆外 buffer，
+ * 其余写入虚拟内存 (CommitLog)
+ */
+public class ResponseSpillPolicy {
+	
+	// 全部 pipeline 暂存在 buffer 中的应答字节数
+	private static final AtomicLong inflightBytes = new AtomicLong(0);
+	
+	/**
+	 * 预占内存额度， 返回 false 表示需要写入虚拟内存
+	 */
+	public static boolean tryReserve(int size) {
+		
+		SystemConfig config = NetSystem.getInstance().getNetConfig();
+		if ( size > config.getPipelineSpillThreshold() ) {
+			return false;
+		}
+		
+		long budget = config.getPipelineMemoryBudget();
+		for (;;) {
+			long current = inflightBytes.get();
+			if ( current + size > budget ) {
+				return false;
+			}
+			if ( inflightBytes.compareAndSet(current, current + size) ) {
+				return true;
+			}
+		}
+	}
+	
+	public static void release(int size) {
+		inflightBytes.addAndGet( -size );
+	}
+	
+	public static long getInflightBytes() {
+		return inflightBytes.get();
+	}
+
+}
@@ -0,0 +1,297 @@
+package com.feeyo.redis.net.front.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.config.UserCfg;
+import com.feeyo.redis.engine.manage.stat.StatUtil;
+import com.feeyo.redis.net.backend.callback.ResponseListener;
+import com.feeyo.redis.net.backend.pool.PoolType;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.net.front.cache.NearCache;
+import com.feeyo.redis.nio.NetSystem;
+import com.feeyo.redis.nio.util.TimeUtil;
+
+/**
+ * 相同读请求的合并 (single-flight)
+ * 
+ * 同一 (pool, db, 指令, 参数) 的读请求在途时， 后到的请求不再访问后端， 挂在首个请求上等待，
+ * 首个请求的应答透传给自身前端的同时收集完整， 完成后原样写给全部等待的前端
+ *
+ * 写指令在路由时及应答完整时按 key 递增封闭版本 (条带化)， 版本变化后的在途请求不再接受合并，
+ * 客户端收到写应答之后发出的读不会拿到写入之前发往后端的旧值； 只在请求晚于在途请求发出时才合并
+ */
+public class SingleFlight {
+	
+	private static Logger LOGGER = LoggerFactory.getLogger( SingleFlight.class );
+	
+	// 超过该时长仍未完成的请求不再接受合并， 避免异常情况下等待者无限累积
+	private static final long MAX_FLIGHT_MILLS = 3000L;
+	
+	// 结果不确定的读指令
+	private static final int RANDOMKEY_ID = CommandParse.getCmdId( "RANDOMKEY".getBytes() );
+	private static final int SRANDMEMBER_ID = CommandParse.getCmdId( "SRANDMEMBER".getBytes() );
+	
+	// 策略为读但会修改数据， 或结果依赖第一个参数之外的 key
+	private static final int LPOP_ID = CommandParse.getCmdId( "LPOP".getBytes() );
+	private static final int RPOP_ID = CommandParse.getCmdId( "RPOP".getBytes() );
+	private static final int KEYS_ID = CommandParse.getCmdId( "KEYS".getBytes() );
+	private static final int SDIFF_ID = CommandParse.getCmdId( "SDIFF".getBytes() );
+	private static final int SINTER_ID = CommandParse.getCmdId( "SINTER".getBytes() );
+	private static final int SUNION_ID = CommandParse.getCmdId( "SUNION".getBytes() );
+	
+	// 封闭版本的条带
+	private static final int STRIPE_COUNT = 1024;
+	private static final AtomicLongArray sealSeqs = new AtomicLongArray( STRIPE_COUNT );
+	
+	private static final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+	
+	public static boolean isEnabled() {
+		return NetSystem.getInstance().getNetConfig().getSingleFlight() == 1;
+	}
+	
+	/**
+	 * 可合并的请求返回合并 key， 否则返回 null
+	 */
+	public static String getFlightKey(UserCfg userCfg, RedisRequest request) {
+		
+		if ( !request.getPolicy().isRead() || request.getPolicy().getHandleType() != CommandParse.THROUGH_CMD 
+				|| request.getNumArgs() < 2 ) {
+			return null;
+		}
+		
+		int cmdId = request.getCmdId();
+		if ( cmdId < 0 || cmdId == RANDOMKEY_ID || cmdId == SRANDMEMBER_ID || cmdId == LPOP_ID || cmdId == RPOP_ID
+				|| cmdId == KEYS_ID || cmdId == SDIFF_ID || cmdId == SINTER_ID || cmdId == SUNION_ID ) {
+			return null;
+		}
+		
+		int db = userCfg.getPoolType() == PoolType.REDIS_STANDALONE ? userCfg.getSelectDb() : 0;
+		StringBuffer sb = new StringBuffer( request.getSize() + 16 );
+		sb.append( userCfg.getPoolId() ).append(':').append( db ).append(':').append( cmdId );
+		for (int i = 1; i < request.getNumArgs(); i++) {
+			byte[] arg = request.getArg(i);
+			sb.append(':').append( arg.length ).append(':');
+			for (byte b : arg) {
+				sb.append( (char) (b & 0xFF) );
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * 没有相同请求在途时返回新的 Flight， 由调用方立即发往后端； 已合并到在途请求返回 null
+	 */
+	public static Flight acquire(String flightKey, UserCfg userCfg, RedisRequest request, Waiter waiter) {
+		
+		int stripe = stripeOf( NearCache.toRedisKey(userCfg, request.getArg(1)) );
+		long now = TimeUtil.currentTimeMillis();
+		for (;;) {
+			Flight flight = flights.get( flightKey );
+			if ( flight == null ) {
+				flight = new Flight(flightKey, now, stripe);
+				if ( flights.putIfAbsent(flightKey, flight) == null ) {
+					return flight;
+				}
+				continue;
+			}
+			
+			// 先于在途请求发出到达的请求单独访问后端， 在途请求不替换
+			if ( waiter.requestNanos < flight.sendNanos ) {
+				return new Flight(flightKey, now, stripe);
+			}
+			
+			if ( now - flight.startTime < MAX_FLIGHT_MILLS && !flight.isSealed() && flight.join( waiter ) ) {
+				return null;
+			}
+			
+			// 已完成、 已超时或已被写封闭， 替换
+			Flight newFlight = new Flight(flightKey, now, stripe);
+			if ( flights.replace(flightKey, flight, newFlight) ) {
+				return newFlight;
+			}
+		}
+	}
+	
+	/**
+	 * 写指令涉及的 key (NearCache.toRedisKey 格式)， 封闭其在途的合并请求
+	 */
+	public static void seal(List<String> redisKeys) {
+		if ( redisKeys == null ) {
+			return;
+		}
+		for (String redisKey : redisKeys) {
+			sealSeqs.incrementAndGet( stripeOf(redisKey) );
+		}
+	}
+	
+	private static int stripeOf(String redisKey) {
+		int h = redisKey.hashCode();
+		h ^= (h >>> 16);
+		return h & (STRIPE_COUNT - 1);
+	}
+	
+	public static int getFlightCount() {
+		return flights.size();
+	}
+	
+	/**
+	 * 等待合并结果的请求
+	 */
+	public static class Waiter {
+		
+		final RedisFrontConnection frontCon;
+		final String cmd;
+		final byte[] key;
+		final int requestSize;
+		final long requestTimeMills;
+		final long requestNanos;
+		
+		public Waiter(RedisFrontConnection frontCon, String cmd, byte[] key, int requestSize, long requestTimeMills, long requestNanos) {
+			this.frontCon = frontCon;
+			this.cmd = cmd;
+			this.key = key;
+			this.requestSize = requestSize;
+			this.requestTimeMills = requestTimeMills;
+			this.requestNanos = requestNanos;
+		}
+	}
+	
+	/**
+	 * 在途的后端请求
+	 */
+	public static class Flight implements ResponseListener {
+		
+		private final String flightKey;
+		private final long startTime;
+		private final long sendNanos;
+		
+		// 创建时的封闭版本
+		private final int stripe;
+		private final long sealSeq;
+		
+		private List<Waiter> waiters = null;
+		private boolean isDone = false;
+		
+		// 仅后端 reactor 线程访问
+		private boolean isCollecting = false;
+		private byte[] buf = null;
+		private int size = 0;
+		
+		Flight(String flightKey, long startTime, int stripe) {
+			this.flightKey = flightKey;
+			this.startTime = startTime;
+			this.stripe = stripe;
+			this.sealSeq = sealSeqs.get( stripe );
+			this.sendNanos = System.nanoTime();
+		}
+		
+		boolean isSealed() {
+			return sealSeqs.get( stripe ) != sealSeq;
+		}
+		
+		synchronized boolean join(Waiter waiter) {
+			if ( isDone ) {
+				return false;
+			}
+			if ( waiters == null ) {
+				waiters = new ArrayList<Waiter>(4);
+			}
+			waiters.add( waiter );
+			return true;
+		}
+		
+		// 不再接受合并， 返回已合并的请求
+		private List<Waiter> finish() {
+			flights.remove(flightKey, this);
+			synchronized ( this ) {
+				isDone = true;
+				return waiters;
+			}
+		}
+
+		/*
+		 * 首个应答片段到达时仍无人等待， 则不再接受合并， 避免无竞争时复制应答；
+		 * 之后到达的相同请求另起一次
+		 */
+		@Override
+		public void onData(byte[] data) {
+			
+			if ( !isCollecting ) {
+				synchronized ( this ) {
+					if ( waiters == null ) {
+						isDone = true;
+					}
+				}
+				if ( isDone ) {
+					flights.remove(flightKey, this);
+					return;
+				}
+				isCollecting = true;
+			}
+			
+			int newSize = size + data.length;
+			if ( buf == null || buf.length < newSize ) {
+				byte[] newBuf = new byte[ Math.max(newSize, size * 2) ];
+				if ( buf != null ) {
+					System.arraycopy(buf, 0, newBuf, 0, size);
+				}
+				buf = newBuf;
+			}
+			System.arraycopy(data, 0, buf, size, data.length);
+			size = newSize;
+		}
+
+		@Override
+		public void onComplete() {
+			
+			List<Waiter> waiters = finish();
+			if ( waiters == null || buf == null ) {
+				return;
+			}
+			
+			byte[] reply = buf;
+			if ( reply.length != size ) {
+				reply = new byte[ size ];
+				System.arraycopy(buf, 0, reply, 0, size);
+			}
+			buf = null;
+			
+			long now = TimeUtil.currentTimeMillis();
+			for (Waiter waiter : waiters) {
+				RedisFrontConnection frontCon = waiter.frontCon;
+				if ( frontCon.isClosed() ) {
+					continue;
+				}
+				frontCon.write( reply );
+				
+				int procTimeMills = (int)(now - waiter.requestTimeMills);
+				StatUtil.collect(frontCon.getPassword(), waiter.cmd, waiter.key, waiter.requestSize, reply.length, procTimeMills, 0, false);
+			}
+			StatUtil.collectCoalesced(waiters.get(0).cmd, waiters.size());
+		}
+
+		@Override
+		public void onError(String reason) {
+			
+			List<Waiter> waiters = finish();
+			buf = null;
+			if ( waiters == null ) {
+				return;
+			}
+			
+			LOGGER.warn("single flight err: {}, waiters={}", reason, waiters.size());
+			for (Waiter waiter : waiters) {
+				if ( !waiter.frontCon.isClosed() ) {
+					waiter.frontCon.writeErrMessage( reason );
+				}
+			}
+		}
+	}
+}
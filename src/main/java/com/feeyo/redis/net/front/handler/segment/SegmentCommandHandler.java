@@ -2,6 +2,7 @@ package com.feeyo.redis.net.front.handler.segment;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -9,13 +10,18 @@ import org.slf4j.LoggerFactory;
 
 import com.feeyo.redis.engine.manage.stat.StatUtil;
 import com.feeyo.redis.net.backend.BackendConnection;
-import com.feeyo.redis.net.backend.callback.DirectTransTofrontCallBack;
+import com.feeyo.redis.net.backend.callback.AbstractBackendCallback;
+import com.feeyo.redis.net.codec.RedisRequest;
+import com.feeyo.redis.net.codec.RedisRequestEncoder;
 import com.feeyo.redis.net.codec.RedisResponsePipelineDecoder;
 import com.feeyo.redis.net.codec.RedisResponsePipelineDecoder.PipelineResponse;
 import com.feeyo.redis.net.front.RedisFrontConnection;
-import com.feeyo.redis.net.front.handler.AbstractPipelineCommandHandler;
+import com.feeyo.redis.net.front.cache.NearCache;
+import com.feeyo.redis.net.front.handler.AbstractCommandHandler;
+import com.feeyo.redis.net.front.handler.segment.SegmentFanout.FanoutNode;
 import com.feeyo.redis.net.front.route.RouteResult;
-import com.feeyo.redis.net.front.route.RouteNode;
+import com.feeyo.redis.nio.NetSystem;
+import com.feeyo.redis.nio.SystemConfig;
 import com.feeyo.redis.nio.util.TimeUtil;
 
 /**
@@ -31,40 +37,103 @@ import com.feeyo.redis.nio.util.TimeUtil;
  *   
  * @author Tr!bf wangyamin@variflight.com
  */
-public class SegmentCommandHandler extends AbstractPipelineCommandHandler {
+public class SegmentCommandHandler extends AbstractCommandHandler {
 	
     private static Logger LOGGER = LoggerFactory.getLogger(SegmentCommandHandler.class);
     
+    private RedisRequestEncoder encoder = new RedisRequestEncoder();
+    
     public SegmentCommandHandler(RedisFrontConnection frontCon) {
         super(frontCon);
     }
 
     @Override
-    protected void commonHandle(RouteResult rrs) throws IOException {
-    	
-    	super.commonHandle(rrs);
+    protected void commonHandle(final RouteResult rrs) throws IOException {
     	
-    	// 写出
-		for (RouteNode rrn : rrs.getRouteNodes()) {
-			
-			ByteBuffer buffer = getRequestBufferByRRN(rrn);
-			
-		    BackendConnection backendConn = writeToBackend( rrn.getPhysicalNode(), buffer, new SegmentCallBack()); 
-		    
-		    if ( backendConn != null )
-				this.holdBackendConnection(backendConn);
-		}
-		
-		// 埋点
+		// 埋点， 应答可能先于写出循环结束到达
 		frontCon.getSession().setRequestTimeMills(TimeUtil.currentTimeMillis());
 		frontCon.getSession().setRequestCmd( rrs.getRequestType().getCmd());
 		frontCon.getSession().setRequestKey( rrs.getRequestType().getCmd().getBytes());
 		frontCon.getSession().setRequestSize( rrs.getRequestSize() );
+		
+		SystemConfig config = NetSystem.getInstance().getNetConfig();
+		SegmentFanout fanout = new SegmentFanout(rrs, config.getSegmentNilOnFailure() == 1) {
+			@Override
+			protected void onComplete(List<byte[]> replies) {
+				// 写指令的近端缓存再次失效， 先于应答
+				NearCache.invalidate( rrs.getNearCacheKeys() );
+				writeToFront(replies, getBackendWaitTimeMills());
+			}
+		};
+    	
+    	// 写出， 单个节点失败不影响其它节点
+		for (FanoutNode node : fanout.getNodes()) {
+			
+			ByteBuffer buffer = encode(rrs.getRequests(), node.getIndexs());
+			try {
+				BackendConnection backendConn = writeToBackend( node.getPhysicalNode(), buffer, new SegmentCallBack(node)); 
+				node.setBackendCon( backendConn );
+				
+			} catch (IOException e) {
+				LOGGER.warn("segment write err, node=" + node.getPhysicalNode().getName(), e);
+				NetSystem.getInstance().getBufferPool().recycle( buffer );
+				node.fail( "unavailable" );
+			}
+		}
+		
+		fanout.start( config.getSegmentNodeTimeout() );
+    }
+    
+    private ByteBuffer encode(List<RedisRequest> requests, int[] indexs) {
+		if ( indexs.length == 1 ) {
+			return requests.get( indexs[0] ).encode();
+		} 
+		
+		List<RedisRequest> tmpRequests = new ArrayList<RedisRequest>( indexs.length );
+		for (int idx : indexs) {
+			tmpRequests.add( requests.get( idx ) );
+		}
+		return encoder.encode( tmpRequests );
+    }
+    
+    // 组包结果写出
+    private void writeToFront(List<byte[]> replies, int backendWaitTimeMills) {
+    	
+    	try {
+    		if ( frontCon.isClosed() ) {
+    			return;
+    		}
+    		
+			String password = frontCon.getPassword();
+			String cmd = frontCon.getSession().getRequestCmd();
+			byte[] key = frontCon.getSession().getRequestKey();
+			int requestSize = frontCon.getSession().getRequestSize();
+			long requestTimeMills = frontCon.getSession().getRequestTimeMills();
+			
+			int responseSize = 0;
+			for (byte[] data : replies) {
+				frontCon.write( data );
+				responseSize += data.length;
+			}
+			
+			// 数据收集
+			int procTimeMills =  (int)(TimeUtil.currentTimeMillis() - requestTimeMills);
+			StatUtil.collect(password, cmd, key, requestSize, responseSize, procTimeMills, backendWaitTimeMills, false);
+			
+    	} finally {
+			// 释放锁
+			frontCon.releaseLock();
+		}
     }
     
-    private class SegmentCallBack extends DirectTransTofrontCallBack {
+    private class SegmentCallBack extends AbstractBackendCallback {
 
-        private RedisResponsePipelineDecoder decoder = new RedisResponsePipelineDecoder();
+        private final FanoutNode node;
+        private final RedisResponsePipelineDecoder decoder = new RedisResponsePipelineDecoder();
+        
+        public SegmentCallBack(FanoutNode node) {
+        	this.node = node;
+        }
 
         @Override
         public void handleResponse(BackendConnection backendCon, byte[] byteBuff) throws IOException {
@@ -72,67 +141,37 @@ public class SegmentCommandHandler extends AbstractPipelineCommandHandler {
         	PipelineResponse pipelineResponse = decoder.parse(byteBuff);
         	if ( !pipelineResponse.isOK() )
                 return;
+        	
+        	// 最后一个节点的应答会触发组包， 等待时间需先记录
+        	int backendWaitTimeMills = (int)(backendCon.getLastReadTime() - backendCon.getLastWriteTime());
+        	node.setBackendWaitTimeMills( backendWaitTimeMills );
+        	
+        	// 本节点应答完毕， 释放连接
+        	if ( node.onResponse(pipelineResponse.getResps(), pipelineResponse.getCount()) ) {
+        		int procTimeMills = (int)(TimeUtil.currentTimeMillis() - frontCon.getSession().getRequestTimeMills());
+        		backendCon.release();
+        		
+        		StatUtil.collectNode(backendCon.getPhysicalNode().getName(), procTimeMills, backendWaitTimeMills);
+        	}
+        }
+        
+        @Override
+		public void connectionAcquired(BackendConnection backendCon) {
+        	node.setBackendCon( backendCon );
+        	super.connectionAcquired( backendCon );
+        }
 
-            String address = backendCon.getPhysicalNode().getName();
-            
-            ResponseMargeResult result = addAndMargeResponse(address, pipelineResponse.getCount(), pipelineResponse.getResps());
-			if ( result.getStatus() == ResponseMargeResult.ALL_NODE_COMPLETED ) {
-				List<DataOffset> offsets = result.getDataOffsets();
-				if (offsets != null) {
-                    try {
-                        String password = frontCon.getPassword();
-        				String cmd = frontCon.getSession().getRequestCmd();
-        				byte[] key = frontCon.getSession().getRequestKey();
-                        int requestSize = frontCon.getSession().getRequestSize();
-                        long requestTimeMills = frontCon.getSession().getRequestTimeMills();
-                        long responseTimeMills = TimeUtil.currentTimeMillis();
-
-                        int responseSize = 0;
-                        for (DataOffset offset : offsets) {
-							byte[] data = offset.getData();
-							responseSize += this.writeToFront(frontCon, data, 0);
-						}
-                        
-                        
-                        int procTimeMills =  (int)(responseTimeMills - requestTimeMills);
-						int backendWaitTimeMills = (int)(backendCon.getLastReadTime() - backendCon.getLastWriteTime());
-						
-						if( backendWaitTimeMills > procTimeMills ) {
-							LOGGER.warn("proc time err:  requestTime={}, responseTime={}, lastReadTime={}, lastWriteTime={}",
-									new Object[]{ requestTimeMills, responseTimeMills, backendCon.getLastReadTime(), backendCon.getLastWriteTime() } );
-						}
-                        
-             
-                        // 释放
-                        releaseBackendConnection(backendCon);
-                        
-                        // 数据收集
-                        StatUtil.collect(password, cmd, key, requestSize, responseSize, procTimeMills, backendWaitTimeMills, false);
-                        
-                    } catch (IOException e2) {
-                        if (frontCon != null) {
-                            frontCon.close("write err");
-                        }
+		@Override
+		public void connectionError(Exception e, BackendConnection backendCon) {
+			node.fail( "error" );
+		}
 
-                        // 由 reactor close
-                        LOGGER.error("backend write to front err:", e2);
-                        throw e2;
-                        
-                    } finally {
-						// 释放锁
-                    	frontCon.releaseLock();;
-					}
-                }
-                
-			} else if ( result.getStatus() == ResponseMargeResult.THE_NODE_COMPLETED  ) {
-				
-                // 如果此后端节点数据已经返回完毕，则释放链接
-				releaseBackendConnection(backendCon);
-				
-            } else if ( result.getStatus() == ResponseMargeResult.ERROR ) {
-				// 添加回复到虚拟内存中出错。
-				responseAppendError();
-			}
-        }
+		@Override
+		public void connectionClose(BackendConnection backendCon, String reason) {
+			node.fail( "closed" );
+			
+			// 后端连接关闭, 清理连接池内的 connection
+			backendCon.getPhysicalNode().removeConnection( backendCon );
+		}
     }
 }
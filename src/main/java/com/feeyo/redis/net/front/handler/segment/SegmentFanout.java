@@ -0,0 +1,349 @@
+package com.feeyo.redis.net.front.handler.segment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.net.backend.BackendConnection;
+import com.feeyo.redis.net.backend.pool.PhysicalNode;
+import com.feeyo.redis.net.front.route.RouteNode;
+import com.feeyo.redis.net.front.route.RouteResult;
+import com.feeyo.redis.nio.NameableThreadFactory;
+import com.feeyo.util.ProtoUtils;
+
+/**
+ * 分片指令 (MGET/MSET/DEL/EXISTS) 的扇出结果收集
+ *
+ * 各节点的应答按原始下标直接写入预分配的结果数组， 每个位置只接受第一次写入 (应答或失败填充)，
+ * 剩余计数归零的线程负责组包； 节点超过期限仍未完成时， 其余位置以错误填充， MGET 可选择填充 nil
+ */
+public abstract class SegmentFanout {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( SegmentFanout.class );
+
+	private static final byte[] OK = "+OK\r\n".getBytes();
+	private static final byte[] NIL = "$-1\r\n".getBytes();
+
+	// 节点期限检查
+	private static final ScheduledThreadPoolExecutor deadlineExecutor;
+	static {
+		deadlineExecutor = new ScheduledThreadPoolExecutor(1, new NameableThreadFactory("SegmentDeadline", true));
+		deadlineExecutor.setRemoveOnCancelPolicy( true );
+	}
+
+	private final RouteResult rrs;
+	private final boolean isNilOnFailure;
+
+	private final AtomicReferenceArray<byte[]> results;
+	private final AtomicInteger remaining;
+
+	private final FanoutNode[] nodes;
+	private final int[] slotNodes;				// 下标 -> 节点序号， 非透传为 -1
+
+	private final AtomicBoolean isCompleted = new AtomicBoolean( false );
+	private volatile ScheduledFuture<?> deadlineFuture;
+
+	public SegmentFanout(RouteResult rrs, boolean isNilOnFailure) {
+
+		this.rrs = rrs;
+		this.isNilOnFailure = isNilOnFailure;
+
+		int count = rrs.getRequestCount();
+		this.results = new AtomicReferenceArray<byte[]>( count );
+		this.slotNodes = new int[ count ];
+		Arrays.fill(slotNodes, -1);
+
+		List<RouteNode> routeNodes = rrs.getRouteNodes();
+		this.nodes = new FanoutNode[ routeNodes.size() ];
+		for (int i = 0; i < nodes.length; i++) {
+			RouteNode routeNode = routeNodes.get(i);
+			List<Integer> idxs = routeNode.getRequestIndexs();
+			int[] indexs = new int[ idxs.size() ];
+			for (int j = 0; j < indexs.length; j++) {
+				indexs[j] = idxs.get(j);
+				slotNodes[ indexs[j] ] = i;
+			}
+			nodes[i] = new FanoutNode(routeNode.getPhysicalNode(), indexs);
+		}
+
+		// 非透传直接应答
+		if ( rrs.getNoThroughtIndexs() != null ) {
+			for (int index : rrs.getNoThroughtIndexs()) {
+				results.set(index, OK);
+			}
+		}
+		this.remaining = new AtomicInteger( rrs.getThroughtCount() );
+	}
+
+	public FanoutNode[] getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * 最慢节点的后端等待时间
+	 */
+	public int getBackendWaitTimeMills() {
+		int waitTimeMills = 0;
+		for (FanoutNode node : nodes) {
+			waitTimeMills = Math.max(waitTimeMills, node.backendWaitTimeMills);
+		}
+		return waitTimeMills;
+	}
+
+	/**
+	 * 请求全部写出后调用， timeoutMills <= 0 不限期
+	 */
+	public void start(long timeoutMills) {
+
+		if ( remaining.get() == 0 ) {
+			complete();
+			return;
+		}
+
+		if ( timeoutMills > 0 && !isCompleted.get() ) {
+			deadlineFuture = deadlineExecutor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					for (FanoutNode node : nodes) {
+						node.fail("timeout");
+					}
+				}
+			}, timeoutMills, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void countDown(int filled) {
+		if ( filled > 0 && remaining.addAndGet( -filled ) == 0 ) {
+			complete();
+		}
+	}
+
+	private void complete() {
+
+		if ( !isCompleted.compareAndSet(false, true) ) {
+			return;
+		}
+
+		ScheduledFuture<?> future = deadlineFuture;
+		if ( future != null ) {
+			future.cancel( false );
+		}
+
+		try {
+			onComplete( pack() );
+		} catch (Exception e) {
+			LOGGER.error("segment complete err:", e);
+		}
+	}
+
+	/**
+	 * 全部位置就绪， 由最后写入的线程 (后端 reactor 或期限线程) 回调
+	 */
+	protected abstract void onComplete(List<byte[]> replies);
+
+
+	// 组包
+	// ------------------------------------------------------------------------
+	private List<byte[]> pack() {
+
+		List<Segment> segments = rrs.getSegments();
+		List<byte[]> replies = new ArrayList<byte[]>( segments.size() );
+		for (Segment segment : segments) {
+
+			int[] indexs = segment.getIndexs();
+			switch ( segment.getType() ) {
+			case MGET:
+				replies.add( packMget(indexs) );
+				break;
+			case MSET:
+				byte[] err = getFailedReply(indexs);
+				replies.add( err != null ? err : OK );
+				break;
+			case MDEL:
+			case MEXISTS:
+				err = getFailedReply(indexs);
+				replies.add( err != null ? err : packSum(indexs) );
+				break;
+			case DEFAULT:
+				replies.add( results.get( indexs[0] ) );
+				break;
+			}
+		}
+		return replies;
+	}
+
+	private byte[] packMget(int[] indexs) {
+
+		if ( !isNilOnFailure ) {
+			byte[] err = getFailedReply(indexs);
+			if ( err != null ) {
+				return err;
+			}
+		}
+
+		byte[] countBytes = ProtoUtils.convertIntToByteArray( indexs.length );
+		int len = 1 + countBytes.length + 2;
+		byte[][] datas = new byte[ indexs.length ][];
+		for (int i = 0; i < indexs.length; i++) {
+			datas[i] = isFailed( indexs[i] ) ? NIL : results.get( indexs[i] );
+			len += datas[i].length;
+		}
+
+		byte[] buf = new byte[ len ];
+		int pos = 0;
+		buf[pos++] = '*';
+		System.arraycopy(countBytes, 0, buf, pos, countBytes.length);
+		pos += countBytes.length;
+		buf[pos++] = '\r';
+		buf[pos++] = '\n';
+		for (byte[] data : datas) {
+			System.arraycopy(data, 0, buf, pos, data.length);
+			pos += data.length;
+		}
+		return buf;
+	}
+
+	// 整数应答求和， 任一节点回错误 (如 WRONGTYPE) 时整段返回该错误
+	private byte[] packSum(int[] indexs) {
+
+		long sum = 0;
+		for (int index : indexs) {
+			byte[] data = results.get( index );
+			if ( data[0] == '-' ) {
+				return data;
+			} else if ( data[0] != ':' ) {
+				continue;
+			}
+
+			int pos = 1;
+			boolean isNeg = data[pos] == '-';
+			if ( isNeg ) {
+				pos++;
+			}
+			long value = 0;
+			while ( data[pos] != '\r' ) {
+				value = value * 10 + (data[pos++] - '0');
+			}
+			sum += isNeg ? -value : value;
+		}
+
+		byte[] countBytes = String.valueOf( sum ).getBytes();
+		byte[] buf = new byte[ 1 + countBytes.length + 2 ];
+		buf[0] = ':';
+		System.arraycopy(countBytes, 0, buf, 1, countBytes.length);
+		buf[ buf.length - 2 ] = '\r';
+		buf[ buf.length - 1 ] = '\n';
+		return buf;
+	}
+
+	private boolean isFailed(int index) {
+		int nodeIdx = slotNodes[ index ];
+		return nodeIdx != -1 && results.get( index ) == nodes[ nodeIdx ].errReply;
+	}
+
+	private byte[] getFailedReply(int[] indexs) {
+		for (int index : indexs) {
+			if ( isFailed(index) ) {
+				return results.get( index );
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * 单个后端节点的子请求
+	 */
+	public class FanoutNode {
+
+		private final PhysicalNode physicalNode;
+		private final int[] indexs;
+
+		private int received = 0;				// 仅该节点的后端 reactor 线程访问
+		private final AtomicBoolean isDone = new AtomicBoolean( false );
+
+		private volatile BackendConnection backendCon;
+		private volatile byte[] errReply;
+		private volatile int backendWaitTimeMills;
+
+		FanoutNode(PhysicalNode physicalNode, int[] indexs) {
+			this.physicalNode = physicalNode;
+			this.indexs = indexs;
+		}
+
+		public PhysicalNode getPhysicalNode() {
+			return physicalNode;
+		}
+
+		public int[] getIndexs() {
+			return indexs;
+		}
+
+		public void setBackendCon(BackendConnection backendCon) {
+			this.backendCon = backendCon;
+		}
+
+		/**
+		 * 先于 onResponse 调用， 组包时取各节点的最大值
+		 */
+		public void setBackendWaitTimeMills(int backendWaitTimeMills) {
+			this.backendWaitTimeMills = backendWaitTimeMills;
+		}
+
+		/**
+		 * 按顺序写入本节点的应答， 节点全部应答完成时返回 true， 由调用方释放后端连接
+		 */
+		public boolean onResponse(byte[][] resps, int count) {
+
+			int filled = 0;
+			for (int i = 0; i < count && received < indexs.length; i++) {
+				if ( results.compareAndSet(indexs[ received++ ], null, resps[i]) ) {
+					filled++;
+				}
+			}
+
+			boolean isNodeDone = received >= indexs.length && isDone.compareAndSet(false, true);
+			countDown( filled );
+			return isNodeDone;
+		}
+
+		/**
+		 * 节点失败， 未应答的位置以错误填充， 关闭仍在途的后端连接
+		 */
+		public void fail(String reason) {
+
+			if ( !isDone.compareAndSet(false, true) ) {
+				return;
+			}
+
+			LOGGER.warn("segment node fail: node={}, reason={}, received={}/{}",
+					new Object[]{ physicalNode.getName(), reason, received, indexs.length });
+
+			errReply = ("-ERR node " + physicalNode.getName() + " " + reason + "\r\n").getBytes();
+
+			int filled = 0;
+			for (int index : indexs) {
+				if ( results.compareAndSet(index, null, errReply) ) {
+					filled++;
+				}
+			}
+
+			BackendConnection con = backendCon;
+			if ( con != null ) {
+				con.close("segment node " + reason);
+			}
+
+			countDown( filled );
+		}
+	}
+
+}
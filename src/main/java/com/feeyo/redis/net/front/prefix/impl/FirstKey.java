@@ -15,8 +15,7 @@ public class FirstKey extends KeyPrefixStrategy {
 		if ( request.getNumArgs() < 2) {
 			return;
 		}		
-		byte[][] args = request.getArgs();
-		args[1] = concat(prefix, args[1]);		
+		request.setArg(1, concat(prefix, request.getArg(1)) );		
 	}
 
 	@Override
@@ -24,8 +23,7 @@ public class FirstKey extends KeyPrefixStrategy {
 		if ( request.getNumArgs() < 2) {
 			return null;
 		}
-		byte[][] args = request.getArgs();
-		return args[1];
+		return request.getArg(1);
 	}
 
 }
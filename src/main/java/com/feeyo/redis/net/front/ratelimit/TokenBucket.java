@@ -0,0 +1,58 @@
+package com.feeyo.redis.net.front.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶， 按纳秒平滑补充 (GCRA)
+ *
+ * 不保存令牌数， 只保存理论到达时间 tat： 每次获取把 tat 后移 n 个令牌对应的时长，
+ * tat 最多落后当前时间 burst 时长， 即空闲时最多积累 burst 时长的令牌；
+ * 获取总是成功， 返回需等待的纳秒数， 由调用方暂停读来偿还欠账
+ */
+public class TokenBucket {
+
+	private static final long NANOS_PER_SECOND = 1000L * 1000L * 1000L;
+
+	private volatile long ratePerSecond;
+	private volatile long burstNanos;
+
+	private final AtomicLong tat = new AtomicLong( System.nanoTime() );
+
+	public TokenBucket(long ratePerSecond, long burstMills) {
+		setRate(ratePerSecond, burstMills);
+	}
+
+	/**
+	 * 修改速率， 保留已有的欠账及积累
+	 */
+	public void setRate(long ratePerSecond, long burstMills) {
+		this.ratePerSecond = ratePerSecond;
+		this.burstNanos = burstMills * 1000L * 1000L;
+	}
+
+	/**
+	 * 返回 0 表示未超限， 否则为需等待的纳秒数
+	 */
+	public long acquire(long tokens) {
+
+		long rate = this.ratePerSecond;
+		if ( rate <= 0 || tokens <= 0 ) {
+			return 0;
+		}
+
+		long cost = tokens >= Integer.MAX_VALUE ? (tokens / rate) * NANOS_PER_SECOND : tokens * NANOS_PER_SECOND / rate;
+		long now = System.nanoTime();
+		for (;;) {
+			long current = tat.get();
+			long next = Math.max(current, now - burstNanos) + cost;
+			if ( tat.compareAndSet(current, next) ) {
+				return next > now ? next - now : 0;
+			}
+		}
+	}
+
+	public long getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+}
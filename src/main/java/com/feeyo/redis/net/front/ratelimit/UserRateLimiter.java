@@ -0,0 +1,123 @@
+package com.feeyo.redis.net.front.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.config.UserCfg;
+import com.feeyo.redis.nio.AbstractConnection;
+import com.feeyo.redis.nio.NameableThreadFactory;
+
+/**
+ * 用户级限流， 指令数/秒 (可单独限制写指令) 及入口流量字节/秒
+ *
+ * 超限时不断开连接， 暂停该连接的读， 欠账偿还后恢复， 由 TCP 窗口向客户端施加背压；
+ * 限流器按 password 登记， RELOAD USER 时原地修改速率， 已建立的连接即时生效
+ */
+public class UserRateLimiter {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( UserRateLimiter.class );
+
+	// 单次暂停的上限， 欠账较多时恢复后下一次读会再次暂停
+	private static final long MAX_PAUSE_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
+	private static final ConcurrentHashMap<String, UserRateLimiter> limiters = new ConcurrentHashMap<String, UserRateLimiter>();
+
+	// 恢复读
+	private static final ScheduledThreadPoolExecutor resumeExecutor;
+	static {
+		resumeExecutor = new ScheduledThreadPoolExecutor(1, new NameableThreadFactory("RateLimitResume", true));
+		resumeExecutor.setRemoveOnCancelPolicy( true );
+	}
+
+	private final TokenBucket opsBucket;
+	private final TokenBucket writeOpsBucket;
+	private final TokenBucket bytesBucket;
+
+	private UserRateLimiter(UserCfg userCfg) {
+		this.opsBucket = new TokenBucket(userCfg.getOpsLimit(), userCfg.getLimitBurst());
+		this.writeOpsBucket = new TokenBucket(userCfg.getWriteOpsLimit(), userCfg.getLimitBurst());
+		this.bytesBucket = new TokenBucket(userCfg.getBytesLimit(), userCfg.getLimitBurst());
+	}
+
+	private void update(UserCfg userCfg) {
+		opsBucket.setRate(userCfg.getOpsLimit(), userCfg.getLimitBurst());
+		writeOpsBucket.setRate(userCfg.getWriteOpsLimit(), userCfg.getLimitBurst());
+		bytesBucket.setRate(userCfg.getBytesLimit(), userCfg.getLimitBurst());
+	}
+
+	/**
+	 * 返回需暂停读的纳秒数
+	 */
+	public long acquireOps(int count, int writeCount) {
+		long delay = opsBucket.acquire( count );
+		if ( writeCount > 0 ) {
+			delay = Math.max(delay, writeOpsBucket.acquire( writeCount ));
+		}
+		return delay;
+	}
+
+	public long acquireBytes(int length) {
+		return bytesBucket.acquire( length );
+	}
+
+
+	/**
+	 * 未配置限流返回 null
+	 */
+	public static UserRateLimiter get(String password) {
+		return password == null ? null : limiters.get( password );
+	}
+
+	/**
+	 * 加载或重载 user.xml 后调用
+	 */
+	public static void reload(Map<String, UserCfg> userMap) {
+
+		for (UserCfg userCfg : userMap.values()) {
+			String password = userCfg.getPassword();
+			if ( !userCfg.isRateLimit() ) {
+				limiters.remove( password );
+				continue;
+			}
+
+			UserRateLimiter limiter = limiters.get( password );
+			if ( limiter == null ) {
+				limiters.put(password, new UserRateLimiter( userCfg ));
+			} else {
+				limiter.update( userCfg );
+			}
+		}
+
+		for (String password : limiters.keySet()) {
+			if ( !userMap.containsKey( password ) ) {
+				limiters.remove( password );
+			}
+		}
+
+		LOGGER.info("rate limit users: {}", limiters.keySet());
+	}
+
+	/**
+	 * 暂停连接的读， delayNanos 后恢复
+	 */
+	public static void throttle(final AbstractConnection con, long delayNanos) {
+
+		if ( delayNanos <= 0 || con.isClosed() ) {
+			return;
+		}
+
+		con.pauseRead( AbstractConnection.PAUSE_READ_RATE_LIMIT );
+		resumeExecutor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				con.resumeRead( AbstractConnection.PAUSE_READ_RATE_LIMIT );
+			}
+		}, Math.min(delayNanos, MAX_PAUSE_NANOS), TimeUnit.NANOSECONDS);
+	}
+
+}
@@ -21,6 +21,7 @@ public class RouteResult {
 	
 	private List<Integer> noThroughIndexs = null;				// 需要自动应答的 request index 集合
 	private List<Segment> segments = null;
+	private List<String> nearCacheKeys = null;				// 写指令需失效的近端缓存 key， 应答完整后再次失效
     
 	public RouteResult(RedisRequestType requestType, List<RedisRequest> requests, List<RouteNode> nodes) {
 		
@@ -58,6 +59,14 @@ public class RouteResult {
 		return segments;
 	}
 
+	public List<String> getNearCacheKeys() {
+		return nearCacheKeys;
+	}
+
+	public void setNearCacheKeys(List<String> nearCacheKeys) {
+		this.nearCacheKeys = nearCacheKeys;
+	}
+
 	// 请求数
 	public int getRequestCount() {
 		return requests.size();				
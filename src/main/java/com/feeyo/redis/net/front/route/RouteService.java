@@ -9,7 +9,9 @@ import com.feeyo.redis.net.backend.pool.PoolType;
 import com.feeyo.redis.net.codec.RedisRequest;
 import com.feeyo.redis.net.codec.RedisRequestPolicy;
 import com.feeyo.redis.net.front.RedisFrontConnection;
+import com.feeyo.redis.net.front.cache.NearCache;
 import com.feeyo.redis.net.front.handler.CommandParse;
+import com.feeyo.redis.net.front.handler.SingleFlight;
 import com.feeyo.redis.net.front.prefix.KeyPrefixStrategy;
 import com.feeyo.redis.net.front.prefix.KeyPrefixStrategyFactory;
 import com.feeyo.redis.net.front.route.strategy.AbstractRouteStrategy;
@@ -61,16 +63,16 @@ public class RouteService {
 
 		List<Integer> noThroughtIndexs = null;
 		boolean isNeedSegment = false;
+		List<String> nearCacheKeys = null;
 		
 		for(int i = 0; i < requests.size(); i++) {
 			
 			RedisRequest request = requests.get(i);
-			if (request == null || request.getArgs().length == 0) {
+			if (request == null || request.getNumArgs() == 0) {
 				return null;
 			}
 			
-			String cmd = new String( request.getArgs()[0] ).toUpperCase();
-			RedisRequestPolicy policy = CommandParse.getPolicy( cmd );
+			RedisRequestPolicy policy = CommandParse.getPolicy( request.getCmdId() );
 			request.setPolicy( policy );
 			
 			// 是否存在无效指令
@@ -90,17 +92,29 @@ public class RouteService {
 			// 包含批量操作命令，则采用分段的路由策略
 			if(!isNeedSegment && ( 
 					policy.getHandleType() == CommandParse.MGETSET_CMD 
-					|| (policy.getHandleType() == CommandParse.DEL_CMD && request.getArgs().length > 2 )
-					|| (policy.getHandleType() == CommandParse.EXISTS_CMD && request.getArgs().length > 2) ) ) {
+					|| (policy.getHandleType() == CommandParse.DEL_CMD && request.getNumArgs() > 2 )
+					|| (policy.getHandleType() == CommandParse.EXISTS_CMD && request.getNumArgs() > 2) ) ) {
 				isNeedSegment = true;
 			}
 						
 			// 前缀构建 
 			byte[] prefix = userCfg.getPrefix();
 			if (prefix != null) {
-				KeyPrefixStrategy strategy = KeyPrefixStrategyFactory.getStrategy(cmd);
+				KeyPrefixStrategy strategy = KeyPrefixStrategyFactory.getStrategy( request.getCmd() );
 				strategy.rebuildKey(request, prefix);
 			}
+			
+			// 写指令涉及的近端缓存 key， 同时用于封闭在途的合并读请求
+			if ( (NearCache.isEnabled() || SingleFlight.isEnabled()) && !policy.isRead() ) {
+				if ( nearCacheKeys == null )
+					nearCacheKeys = new ArrayList<String>(2);
+				NearCache.addInvalidateKeys(userCfg, request, nearCacheKeys);
+			}
+		}
+		
+		// 路由时失效， 应答完整后由 handler 再次失效
+		if ( nearCacheKeys != null ) {
+			NearCache.invalidate( nearCacheKeys );
 		}
 		
 		// 全部自动回复
@@ -113,6 +127,8 @@ public class RouteService {
 		RouteResult routeResult = strategy.route(userCfg, requests);
 		if ( noThroughtIndexs != null )
 			routeResult.setNoThroughtIndexs( noThroughtIndexs );
+		if ( nearCacheKeys != null && !nearCacheKeys.isEmpty() )
+			routeResult.setNearCacheKeys( nearCacheKeys );
 		
 		return routeResult;
 	}
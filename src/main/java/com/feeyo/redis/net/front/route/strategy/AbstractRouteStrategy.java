@@ -7,7 +7,7 @@ import com.feeyo.redis.config.UserCfg;
 import com.feeyo.redis.engine.RedisEngineCtx;
 import com.feeyo.redis.net.backend.pool.AbstractPool;
 import com.feeyo.redis.net.backend.pool.PhysicalNode;
-import com.feeyo.redis.net.backend.pool.cluster.ClusterCRC16Util;
+import com.feeyo.redis.net.backend.pool.cluster.ClusterSlotCalculator;
 import com.feeyo.redis.net.backend.pool.cluster.RedisClusterPool;
 import com.feeyo.redis.net.backend.pool.xcluster.XClusterPool;
 import com.feeyo.redis.net.backend.pool.xcluster.XNodeUtil;
@@ -26,13 +26,13 @@ public abstract class AbstractRouteStrategy {
 	
 	
 	// 分片
-	protected List<RouteNode> doSharding(int poolId, List<RedisRequest> requests) 
+	protected List<RouteNode> doSharding(UserCfg userCfg, List<RedisRequest> requests) 
 			throws PhysicalNodeUnavailableException {
 		
 		List<RouteNode> nodes = new ArrayList<RouteNode>();
 		
 		// 非集群池
-		AbstractPool pool = RedisEngineCtx.INSTANCE().getPoolMap().get( poolId );
+		AbstractPool pool = RedisEngineCtx.INSTANCE().getPoolMap().get( userCfg.getPoolId() );
 		if ( pool.getType() == 0) {
 			RouteNode node = new RouteNode();
 			
@@ -51,6 +51,9 @@ public abstract class AbstractRouteStrategy {
 		} else if ( pool.getType() == 1) {
 			
 			RedisClusterPool clusterPool =  (RedisClusterPool) pool;
+			
+			// 全部为读指令时才走 slave， 避免同一批次内写后读不一致
+			boolean isReplicaRead = userCfg.isReadReplica() && isAllRead( requests );
 			for (int i = 0; i < requests.size(); i++) {
 				
 				RedisRequest request = requests.get(i);
@@ -60,13 +63,13 @@ public abstract class AbstractRouteStrategy {
 
 				// 计算key的slot值。
 				int slot = 0;
-				byte[] requestKey = request.getNumArgs() > 1 ? request.getArgs()[1] : null;
+				byte[] requestKey = request.getNumArgs() > 1 ? request.getArg(1) : null;
 				if (requestKey != null) {
-					slot = ClusterCRC16Util.getSlot( requestKey );
+					slot = ClusterSlotCalculator.getSlot( requestKey );
 				}
 				
 				// 根据 slot 获取 redis物理节点
-				PhysicalNode physicalNode = clusterPool.getPhysicalNodeBySlot(slot) ;
+				PhysicalNode physicalNode = isReplicaRead ? clusterPool.getReplicaNodeBySlot(slot) : clusterPool.getPhysicalNodeBySlot(slot);
 				if ( physicalNode == null )
 					throw new PhysicalNodeUnavailableException("node unavailable.");
 
@@ -94,6 +97,15 @@ public abstract class AbstractRouteStrategy {
 		return nodes;
 	}
 
+	private boolean isAllRead(List<RedisRequest> requests) {
+		for (RedisRequest request : requests) {
+			if ( !request.getPolicy().isNotThrough() && !request.getPolicy().isRead() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private void arrangePhyNode(List<RouteNode> nodes, int requestIdx, PhysicalNode physicalNode) {
 		boolean isFind = false;
 		for (RouteNode node: nodes) {
@@ -22,9 +22,8 @@ public class DefaultRouteStrategy extends AbstractRouteStrategy {
     public RouteResult route(UserCfg userCfg, List<RedisRequest> requests) 
     		throws InvalidRequestExistsException, PhysicalNodeUnavailableException {
     	
-    		int poolId = userCfg.getPoolId();
     		// 切片
-        List<RouteNode> nodes = doSharding(poolId, requests);
+        List<RouteNode> nodes = doSharding(userCfg, requests);
         
 		RedisRequestType requestType;
 		if (requests.size() == 1) {
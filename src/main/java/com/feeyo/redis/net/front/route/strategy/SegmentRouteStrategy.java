@@ -29,8 +29,7 @@ public class SegmentRouteStrategy extends AbstractRouteStrategy {
 
 		byte[][] args = request.getArgs();
 		
-		// 此处待优化
-		String cmd = new String(args[0]).toUpperCase();
+		String cmd = request.getCmd();
 		
 		// mset 分包
 		if (cmd.startsWith("MSET")) {
@@ -143,7 +142,7 @@ public class SegmentRouteStrategy extends AbstractRouteStrategy {
 			}
 		}
 
-		List<RouteNode> nodes = doSharding(userCfg.getPoolId(), newRequests);
+		List<RouteNode> nodes = doSharding(userCfg, newRequests);
 		requestType = requests.size() > 1 ? RedisRequestType.PIPELINE : requestType;
 
 		RouteResult result = new RouteResult(requestType, newRequests, nodes);
@@ -10,6 +10,7 @@ import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,14 +48,19 @@ public abstract class AbstractConnection implements ClosableConnection {
 	protected final SocketChannel channel;
 
 	private SelectionKey processKey;
-	private static final int OP_NOT_READ = ~SelectionKey.OP_READ;
-	private static final int OP_NOT_WRITE = ~SelectionKey.OP_WRITE;
+	private final Object interestOpsLock = new Object();				// interestOps 的读-改-写须串行， 读写两类事件由不同线程修改
 	
 	
 	protected volatile ByteBuffer readBuffer;  //读缓冲区
-	protected volatile ByteBuffer writeBuffer; //写缓冲区 及 queue
 	protected ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
 	
+	// 聚集写，已从 writeQueue 取出但未写完的缓冲（读模式），按顺序存放于 [gatherOffset, gatherLength)
+	protected static final int MAX_GATHER_COUNT = 64;
+	private final ByteBuffer[] gatherBuffers = new ByteBuffer[ MAX_GATHER_COUNT ];
+	private int gatherOffset;
+	private int gatherLength;
+	private boolean isQuitSend = false;
+	
 	protected AtomicBoolean reading = new AtomicBoolean(false);
 	protected AtomicBoolean writing = new AtomicBoolean(false);
 
@@ -86,7 +92,31 @@ public abstract class AbstractConnection implements ClosableConnection {
 	@SuppressWarnings("rawtypes")
 	protected NIOHandler handler;
 	
+	// 零拷贝读取，handler 需实现 NIOBufferHandler
+	protected boolean isZeroCopyRead = false;
+	
+	// 写合并（cork）， reactor 线程处理一批就绪事件期间的小应答先追加到 corkBuffer， 批次结束时统一 flush
+	protected boolean isCorkWrite = false;
+	protected static final int CORK_CHUNK_SIZE = 1024 * 16;
+	private final Object corkLock = new Object();
+	private ByteBuffer corkBuffer;
+	private boolean isCorked = false;
+	
 	protected NetFlowMonitor netFlowMonitor;
+	
+	// 暂停读的原因， 按位组合， 全部解除后恢复读
+	public static final int PAUSE_READ_RATE_LIMIT = 1;
+	public static final int PAUSE_READ_WRITE_QUEUE = 2;
+	private final Object pauseReadLock = new Object();
+	private volatile int pauseReadFlags = 0;				// 锁内修改， show front 等在其它线程读取
+	
+	// 写队列中尚未写出的字节数， 超过高水位后等待写出至低水位以下
+	private final AtomicLong queuedBytes = new AtomicLong(0);
+	private final Object watermarkLock = new Object();
+	private volatile boolean isWriteQueueHigh = false;
+	
+	// 因本连接写队列超过高水位而暂停读的对端连接
+	private final ConcurrentLinkedQueue<AbstractConnection> writableWaiters = new ConcurrentLinkedQueue<AbstractConnection>();
 
 	public AbstractConnection(SocketChannel channel) {
 		this.channel = channel;
@@ -194,6 +224,22 @@ public abstract class AbstractConnection implements ClosableConnection {
 		return this.handler;
 	}
 	
+	public boolean isZeroCopyRead() {
+		return isZeroCopyRead;
+	}
+
+	public void setZeroCopyRead(boolean isZeroCopyRead) {
+		this.isZeroCopyRead = isZeroCopyRead;
+	}
+	
+	public boolean isCorkWrite() {
+		return isCorkWrite;
+	}
+
+	public void setCorkWrite(boolean isCorkWrite) {
+		this.isCorkWrite = isCorkWrite;
+	}
+	
 	public void setNetFlowMonitor(NetFlowMonitor nfm) {
 		this.netFlowMonitor = nfm;
 	}
@@ -256,15 +302,31 @@ public abstract class AbstractConnection implements ClosableConnection {
 			this.readBuffer = null;
 		}
 		
-		if (writeBuffer != null) {
-			recycle(writeBuffer);
-			this.writeBuffer = null;
+		for (int i = gatherOffset; i < gatherLength; i++) {
+			ByteBuffer buffer = gatherBuffers[i];
+			gatherBuffers[i] = null;
+			if ( buffer != null ) {
+				recycle(buffer);
+			}
+		}
+		gatherOffset = 0;
+		gatherLength = 0;
+		
+		synchronized ( corkLock ) {
+			if ( corkBuffer != null ) {
+				recycle( corkBuffer );
+				corkBuffer = null;
+			}
 		}
 		
 		ByteBuffer buffer = null;
 		while ((buffer = writeQueue.poll()) != null) {
 			recycle(buffer);
 		}
+		
+		queuedBytes.set(0);
+		checkWatermark();
+		resumeWaiters();
 	}
 	
 	private void clearSelectionKey() {
@@ -358,7 +420,7 @@ public abstract class AbstractConnection implements ClosableConnection {
 				break;
 			} else {
 				buffer.put(src, offset, remaining);				
-				writeQueue.offer(buffer); // write not send
+				offerWriteQueue(buffer); // write not send
 				
 				int chunkSize = NetSystem.getInstance().getBufferPool().getMinChunkSize();
 				buffer = allocate( chunkSize );
@@ -384,7 +446,7 @@ public abstract class AbstractConnection implements ClosableConnection {
 		ByteBuffer buffer = allocate( size );
 		buffer = writeToBuffer(data, buffer);
 		
-		writeQueue.offer(buffer);
+		offerWriteQueue(buffer);
 		
 		data = null;
 	}
@@ -397,6 +459,10 @@ public abstract class AbstractConnection implements ClosableConnection {
 		int size = data.length;
 		if ( size >= NetSystem.getInstance().getBufferPool().getDecomposeBufferSize() ) {
 			size = NetSystem.getInstance().getBufferPool().getMinChunkSize();
+			
+		} else if ( isCorkWrite && NIOReactor.isInReactor() ) {
+			corkWrite( data );
+			return;
 		}
 		
 		ByteBuffer buffer = allocate( size );
@@ -407,7 +473,7 @@ public abstract class AbstractConnection implements ClosableConnection {
 
 	public void write(ByteBuffer srcBuffer) {
 		
-		this.writeQueue.offer( srcBuffer );
+		offerWriteQueue( srcBuffer );
 		
 		try {
 			this.doNextWriteCheck();
@@ -418,6 +484,170 @@ public abstract class AbstractConnection implements ClosableConnection {
 			//throw new IOException( e );
 		}
 	}
+	
+	// 保证顺序，先入队已合并的数据
+	private void offerWriteQueue(ByteBuffer buffer) {
+		if ( isCorkWrite ) {
+			synchronized ( corkLock ) {
+				if ( corkBuffer != null ) {
+					enqueue( corkBuffer );
+					corkBuffer = null;
+				}
+				enqueue( buffer );
+			}
+		} else {
+			enqueue( buffer );
+		}
+		checkWatermark();
+	}
+	
+	// buffer 处于写模式， position 即待写出的字节数
+	private void enqueue(ByteBuffer buffer) {
+		queuedBytes.addAndGet( buffer.position() );
+		writeQueue.offer( buffer );
+	}
+	
+	/**
+	 * 超过高水位暂停读， 降至低水位恢复
+	 */
+	private void checkWatermark() {
+		
+		SystemConfig config = NetSystem.getInstance().getNetConfig();
+		if ( config == null ) {
+			return;
+		}
+		
+		long bytes = queuedBytes.get();
+		if ( !isWriteQueueHigh ) {
+			
+			long highWatermark = config.getWriteQueueHighWatermark();
+			if ( highWatermark <= 0 || bytes <= highWatermark ) {
+				return;
+			}
+			
+			synchronized ( watermarkLock ) {
+				if ( !isWriteQueueHigh && queuedBytes.get() > highWatermark ) {
+					isWriteQueueHigh = true;
+					onWriteQueueHigh();
+				}
+			}
+			
+		} else {
+			
+			long lowWatermark = config.getWriteQueueLowWatermark();
+			if ( bytes > lowWatermark ) {
+				return;
+			}
+			
+			synchronized ( watermarkLock ) {
+				if ( isWriteQueueHigh && queuedBytes.get() <= lowWatermark ) {
+					isWriteQueueHigh = false;
+					onWriteQueueLow();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 写队列超过高水位， 子类决定是否暂停自身的读
+	 */
+	protected void onWriteQueueHigh() {
+		// ignore
+	}
+	
+	protected void onWriteQueueLow() {
+		resumeWaiters();
+	}
+	
+	/**
+	 * 对端 (如透传应答的后端连接) 暂停读， 直至本连接的写队列降至低水位
+	 * 
+	 * 暂停在写入本连接的线程上执行， 恢复在写出本连接的线程上执行， 均不是对端的 reactor，
+	 * 依赖 updateInterestOps 与对端 reactor 修改 OP_WRITE 串行
+	 */
+	public void pauseReadUntilWritable(AbstractConnection peer) {
+		
+		peer.pauseRead( PAUSE_READ_WRITE_QUEUE );
+		writableWaiters.offer( peer );
+		
+		// 加入前可能已降至低水位
+		if ( !isWriteQueueHigh || isClosed() ) {
+			resumeWaiters();
+		}
+	}
+	
+	private void resumeWaiters() {
+		AbstractConnection peer;
+		while ( (peer = writableWaiters.poll()) != null ) {
+			peer.resumeRead( PAUSE_READ_WRITE_QUEUE );
+		}
+	}
+	
+	public boolean isWriteQueueHigh() {
+		return isWriteQueueHigh;
+	}
+	
+	public long getQueuedBytes() {
+		return queuedBytes.get();
+	}
+	
+	// 追加至 corkBuffer， 写满时立即写出
+	private void corkWrite(byte[] data) {
+		
+		boolean isFull = false;
+		synchronized ( corkLock ) {
+			
+			if ( corkBuffer != null && corkBuffer.remaining() < data.length ) {
+				enqueue( corkBuffer );
+				corkBuffer = null;
+				isFull = true;
+			}
+			
+			if ( corkBuffer == null ) {
+				corkBuffer = allocate( Math.max(CORK_CHUNK_SIZE, data.length) );
+			}
+			corkBuffer.put( data );
+			
+			if ( !isCorked ) {
+				isCorked = true;
+				NIOReactor.addCorked( this );
+			}
+		}
+		
+		if ( isFull ) {
+			flushWrite();
+		}
+	}
+	
+	/**
+	 * reactor 批次结束， 写出合并的数据
+	 */
+	void flushCork() {
+		
+		boolean isFlush = false;
+		synchronized ( corkLock ) {
+			isCorked = false;
+			if ( corkBuffer != null ) {
+				enqueue( corkBuffer );
+				corkBuffer = null;
+				isFlush = true;
+			}
+		}
+		
+		if ( isFlush ) {
+			flushWrite();
+		}
+	}
+	
+	private void flushWrite() {
+		checkWatermark();
+		try {
+			this.doNextWriteCheck();
+		} catch (Exception e) {
+			LOGGER.error("write err:", e);
+			this.close("write err:" + e);
+		}
+	}
 
 	public static String getStackTrace(Throwable t) {
 	    StringWriter sw = new StringWriter();
@@ -427,74 +657,94 @@ public abstract class AbstractConnection implements ClosableConnection {
 	
 	private boolean write0() throws IOException {
 		
-		int written = 0;
-		ByteBuffer buffer = writeBuffer;
-		if (buffer != null) {	
+		for (;;) {
+			
+			// 从缓存队列中补充待写 buffer， 至多 MAX_GATHER_COUNT 个
+			if ( gatherOffset > 0 ) {
+				int n = gatherLength - gatherOffset;
+				System.arraycopy(gatherBuffers, gatherOffset, gatherBuffers, 0, n);
+				for (int i = n; i < gatherLength; i++) {
+					gatherBuffers[i] = null;
+				}
+				gatherOffset = 0;
+				gatherLength = n;
+			}
 			
-			 //只要写缓冲记录中还有数据就不停写入，但如果写入字节为0，证明网络繁忙，则退出
-			while (buffer.hasRemaining()) {
-				written = channel.write(buffer);
+			ByteBuffer buffer;
+			while ( !isQuitSend && gatherLength < MAX_GATHER_COUNT && (buffer = writeQueue.poll()) != null ) {
+				if (buffer.limit() == 0) {
+					recycle(buffer);
+					isQuitSend = true;
+					break;
+				}
+				buffer.flip();
+				gatherBuffers[ gatherLength++ ] = buffer;
+			}
+			
+			if ( gatherLength == 0 ) {
+				if ( isQuitSend ) {
+					close("quit send");
+				}
+				return true;
+			}
+			
+			//只要还有数据就不停写入，但如果写入字节为0，证明网络繁忙，则退出
+			for (;;) {
+				
+				long written;
+				if ( gatherLength - gatherOffset == 1 ) {
+					written = channel.write( gatherBuffers[ gatherOffset ] );	// java.io.IOException:
+																				// Connection reset by peer
+				} else {
+					written = channel.write( gatherBuffers, gatherOffset, gatherLength - gatherOffset );
+				}
+				
 				if (written > 0) {
 					netOutCounter++;
 					netOutBytes += written;
 					lastWriteTime = TimeUtil.currentTimeMillis();
-				} else {
+					
+					queuedBytes.addAndGet( -written );
+					if ( isWriteQueueHigh ) {
+						checkWatermark();
+					}
+				}
+				
+				// 回收已写完的缓冲
+				while ( gatherOffset < gatherLength && !gatherBuffers[ gatherOffset ].hasRemaining() ) {
+					recycle( gatherBuffers[ gatherOffset ] );
+					gatherBuffers[ gatherOffset++ ] = null;
+				}
+				
+				if ( gatherOffset == gatherLength ) {
+					gatherOffset = 0;
+					gatherLength = 0;
 					break;
 				}
-			}
-
-			//如果写缓冲中还有数据证明网络繁忙，计数并退出，否则清空缓冲
-			if (buffer.hasRemaining()) {
-				writeAttempts++;
-				return false;
-			} else {
-				writeBuffer = null;
-				recycle( buffer );
+				
+				//如果还有数据未写完证明网络繁忙，计数并退出，未写完的缓冲保留至下次写
+				if ( written <= 0 ) {
+					writeAttempts++;
+					return false;
+				}
 			}
 		}
-		
-		//读取缓存队列并写channel
-		while ((buffer = writeQueue.poll()) != null) {
-			if (buffer.limit() == 0) {
-				recycle(buffer);
-				close("quit send");
-				return true;
-			}
+	}
 
-			buffer.flip();
-			try {
-				while (buffer.hasRemaining()) {
-					written = channel.write(buffer);   // java.io.IOException:
-													   // Connection reset by peer
-					if (written > 0) {
-						netOutCounter++;
-						netOutBytes += written;
-						lastWriteTime = TimeUtil.currentTimeMillis();
-					} else {
-						break;
-					}
-				}
-			} catch (IOException e1) {
-				recycle(buffer);
-				throw e1;
-			} 
-			
-			 //如果写缓冲中还有数据证明网络繁忙，计数，记录下这次未写完的数据到写缓冲记录并退出，否则回收缓冲
-			if (buffer.hasRemaining()) {
-				writeBuffer = buffer;
-				writeAttempts++;
-				return false;
-			} else {
-				recycle(buffer);
-			}
+	/*
+	 * 修改关注的事件， 暂停读可能来自限流线程或其它 reactor， 写事件来自写入方线程，
+	 * 未串行时并发的读-改-写会覆盖对方刚设置的位， 如丢失 OP_READ 后连接不再读取
+	 */
+	private void updateInterestOps(int add, int remove) {
+		synchronized ( interestOpsLock ) {
+			SelectionKey key = this.processKey;
+			key.interestOps( (key.interestOps() | add) & ~remove );
 		}
-		return true;
 	}
 
 	private void disableWrite() {
 		try {
-			SelectionKey key = this.processKey;
-			key.interestOps(key.interestOps() & OP_NOT_WRITE);
+			updateInterestOps(0, SelectionKey.OP_WRITE);
 		} catch (Exception e) {
 			LOGGER.warn("can't disable write " + this, e);
 		}
@@ -503,8 +753,7 @@ public abstract class AbstractConnection implements ClosableConnection {
 	private void enableWrite(boolean wakeup) {
 		boolean needWakeup = false;
 		try {
-			SelectionKey key = this.processKey;
-			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			updateInterestOps(SelectionKey.OP_WRITE, 0);
 			needWakeup = true;
 		} catch (Exception e) {
 			LOGGER.warn("can't enable write: ", e);
@@ -536,15 +785,13 @@ public abstract class AbstractConnection implements ClosableConnection {
 	}
 
 	public void disableRead() {
-		SelectionKey key = this.processKey;
-		key.interestOps(key.interestOps() & OP_NOT_READ);
+		updateInterestOps(0, SelectionKey.OP_READ);
 	}
 
 	public void enableRead() {
 		boolean needWakeup = false;
 		try {
-			SelectionKey key = this.processKey;
-			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			updateInterestOps(SelectionKey.OP_READ, 0);
 			needWakeup = true;
 		} catch (Exception e) {
 			LOGGER.warn("enable read fail ", e);
@@ -555,6 +802,47 @@ public abstract class AbstractConnection implements ClosableConnection {
 		}
 	}
 
+	/**
+	 * 暂停读， 同一原因可重复调用
+	 */
+	public void pauseRead(int reason) {
+		synchronized ( pauseReadLock ) {
+			if ( processKey == null || isClosed() ) {
+				return;
+			}
+			
+			if ( pauseReadFlags == 0 ) {
+				try {
+					disableRead();
+				} catch (Exception e) {
+					LOGGER.warn("disable read fail " + this, e);
+					return;
+				}
+			}
+			pauseReadFlags |= reason;
+		}
+	}
+	
+	/**
+	 * 解除该原因的暂停， 没有其它原因时恢复读
+	 */
+	public void resumeRead(int reason) {
+		synchronized ( pauseReadLock ) {
+			if ( (pauseReadFlags & reason) == 0 ) {
+				return;
+			}
+			
+			pauseReadFlags &= ~reason;
+			if ( pauseReadFlags == 0 && !isClosed() ) {
+				enableRead();
+			}
+		}
+	}
+	
+	public boolean isReadPaused() {
+		return pauseReadFlags != 0;
+	}
+
 	public void setState(int newState) {
 		
 		this.state = newState;
@@ -613,14 +901,28 @@ public abstract class AbstractConnection implements ClosableConnection {
 				netInCounter++;
 				
 				// 流量检测，超过max 触发限流
-				if ( isFlowLimit() && netFlowMonitor.pool(length) ) {
-					flowClean();
-					return;
-				}
+				flowControl( length );
 				
 				// 空间不足
 				if ( !readBuffer.hasRemaining() ) {
 					
+					// 流式读取，满即交付， 不再扩容
+					if ( isStreamRead() ) {
+						
+						int dataLength = readBuffer.position();
+						readBuffer.position( offset );
+						byte[] data = new byte[ dataLength ];
+						readBuffer.get(data, 0, dataLength);
+						readBuffer.clear();
+						
+						handler.handleReadEvent(this, data);
+						
+						if ( isClosed() || readBuffer == null ) {
+							return;
+						}
+						continue;
+					}
+					
 					if (readBuffer.capacity() >= maxCapacity) {
 						LOGGER.warn("con:{},  packet size over the limit.", this);
 						throw new IllegalArgumentException( "packet size over the limit.");
@@ -649,10 +951,29 @@ public abstract class AbstractConnection implements ClosableConnection {
 				// 负责解析报文并处理
 				int dataLength = readBuffer.position();
 				readBuffer.position( offset );
-				byte[] data = new byte[ dataLength ];
-				readBuffer.get(data, 0, dataLength);
-
-				handler.handleReadEvent(this, data);
+				
+				if ( isZeroCopyRead && handler instanceof NIOBufferHandler ) {
+					
+					// 直接在 readBuffer 上解析，不复制
+					readBuffer.limit( dataLength );
+					((NIOBufferHandler) handler).handleReadEvent(this, readBuffer);
+					
+					if ( isClosed() || readBuffer == null ) {
+						return;
+					}
+					
+					// 剩余半包数据移至 buffer 头部， 等待后续数据
+					if ( readBuffer.hasRemaining() ) {
+						readBuffer.compact();
+						break;
+					}
+					
+				} else {
+					byte[] data = new byte[ dataLength ];
+					readBuffer.get(data, 0, dataLength);
+	
+					handler.handleReadEvent(this, data);
+				}
 				
 				
 				// 存在扩大后的 byte buffer
@@ -736,6 +1057,13 @@ public abstract class AbstractConnection implements ClosableConnection {
 	}
 	
 	
+	/**
+	 * readBuffer 满时直接交付 handler， 由 handler 处理半包， 而不是扩容等待完整的包
+	 */
+	protected boolean isStreamRead() {
+		return false;
+	}
+	
 	@Override
 	public boolean isFlowLimit() {
 		return false;
@@ -747,6 +1075,15 @@ public abstract class AbstractConnection implements ClosableConnection {
 		// ignore
 	}
 	
+	/**
+	 * 每次从 channel 读取后调用， 已读取的数据照常处理
+	 */
+	protected void flowControl(int length) {
+		if ( isFlowLimit() && netFlowMonitor != null && netFlowMonitor.getMaxByteSize() > 0 && netFlowMonitor.pool(length) ) {
+			flowClean();
+		}
+	}
+	
 	public String toSampleString() {
 		StringBuffer sbuffer = new StringBuffer(100);
 		sbuffer.append( "Connection [ " );
@@ -0,0 +1,20 @@
+package com.feeyo.redis.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 零拷贝读取, 直接将连接的 readBuffer 交给 handler 解析
+ * 
+ * handler 需要将 buffer.position 移动到第一个未消费的字节, 剩余的半包数据由连接 compact 后保留
+ */
+public interface NIOBufferHandler<T extends AbstractConnection> extends NIOHandler<T> {
+
+	/**
+	 * 收到数据需要处理
+	 * @param con  当前连接
+	 * @param buffer 处于读模式的 readBuffer, 只在本次调用内有效
+	 */
+	void handleReadEvent(T con, ByteBuffer buffer) throws IOException;
+	
+}
@@ -103,8 +103,15 @@ public final class NIOConnector extends Thread {
 				clearSelectionKey(key);
 				//c.setId( ConnectIdGenerator.getINSTNCE().getId() );
 				
-				//与特定NIOReactor绑定监听读写
-				NIOReactor reactor = reactorPool.getNextReactor();
+				//与特定NIOReactor绑定监听读写, 亲和模式下与前端连接同一 reactor
+				NIOReactor reactor = null;
+				if ( NetSystem.getInstance().getNetConfig().getBackendReactorAffinity() == 1 
+						&& c.getAttachement() instanceof AbstractConnection ) {
+					reactor = reactorPool.getReactor( ((AbstractConnection) c.getAttachement()).getReactor() );
+				}
+				if ( reactor == null ) {
+					reactor = reactorPool.getNextReactor();
+				}
 				reactor.postRegister(c);
 			}
 		} catch (Throwable e) {
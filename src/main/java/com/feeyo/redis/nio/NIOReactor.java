@@ -3,13 +3,18 @@ package com.feeyo.redis.nio;
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.feeyo.redis.nio.util.SelectedSelectionKeySet;
+import com.feeyo.redis.nio.util.SelectorUtil;
+
 /**
  * 网络事件反应器
  * 
@@ -21,13 +26,24 @@ public final class NIOReactor {
 	private static Logger LOGGER = LoggerFactory.getLogger( NIOReactor.class );
 	
 	private final static long SELECTOR_TIMEOUT = 100L; // 500L
+	private final static int SPIN_COUNT = 64;			// 阻塞 select 之前的 selectNow 自旋次数
 	
 	private final String name;
-	private final RW reactorR;
+	private final AbstractRW reactorR;
+	
+	// 写合并，当前 reactor 线程本批次内有待 flush 数据的连接
+	private static final ThreadLocal<ArrayList<AbstractConnection>> CORKED_CONS = new ThreadLocal<ArrayList<AbstractConnection>>();
 
 	public NIOReactor(String name) throws IOException {
+		this(name, false);
+	}
+	
+	/**
+	 * @param isSpin 数组化的 selectedKeys、批量注册、阻塞前自旋
+	 */
+	public NIOReactor(String name, boolean isSpin) throws IOException {
 		this.name = name;
-		this.reactorR = new RW();
+		this.reactorR = isSpin ? new SpinRW() : new RW();
 	}
 
 	public String getName() {
@@ -41,29 +57,130 @@ public final class NIOReactor {
 	final void postRegister(AbstractConnection c) {
 		c.setReactor( this.name );
 		reactorR.pendingQueue.offer(c);
-		reactorR.selector.wakeup();
+		reactorR.wakeupForRegister();
 	}
 
 	final Queue<AbstractConnection> getRegisterQueue() {
 		return reactorR.pendingQueue;
 	}
 
-	final long getReactCount() {
+	public long getReactCount() {
 		return reactorR.reactCount;
 	}
+	
+	/**
+	 * 当前线程是否是 reactor 线程，即处于一个批次内
+	 */
+	static boolean isInReactor() {
+		return CORKED_CONS.get() != null;
+	}
+	
+	/**
+	 * 登记连接，在当前批次结束时 flush
+	 */
+	static void addCorked(AbstractConnection c) {
+		CORKED_CONS.get().add( c );
+	}
 
 	
-	// IO/RW 线程
-	private final class RW implements Runnable {
+	private abstract class AbstractRW implements Runnable {
 		
-		private final Selector selector;
-		private final ConcurrentLinkedQueue<AbstractConnection> pendingQueue;
-		private long reactCount;
-        
-		private RW() throws IOException {
+		protected final Selector selector;
+		protected final ConcurrentLinkedQueue<AbstractConnection> pendingQueue;
+		protected final ArrayList<AbstractConnection> corkedCons = new ArrayList<AbstractConnection>();
+		protected long reactCount;
+		
+		protected AbstractRW() throws IOException {
 			this.selector = Selector.open();
 			this.pendingQueue = new ConcurrentLinkedQueue<AbstractConnection>();  
 		}
+		
+		protected void wakeupForRegister() {
+			selector.wakeup();
+		}
+		
+		protected void processKey(SelectionKey key) {
+			
+			AbstractConnection con = null;
+			
+			try {
+				
+				Object att = key.attachment();
+				if ( att != null ) {
+					
+					con = (AbstractConnection) att;
+					
+					int ops = key.readyOps();
+					
+					// 处理读
+					if ( (ops & SelectionKey.OP_READ) == SelectionKey.OP_READ ) {									
+						try {
+							con.asynRead();
+						} catch (IOException  e) {
+							con.close("program err:" + e.toString());										 
+							return;
+							
+						} catch (Exception e) {
+							LOGGER.warn("caught err:", e);
+							con.close("program err:" + e.toString());
+							return;
+						}
+					}								
+					
+					// 处理写
+					if ( (ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE ) {
+						con.doNextWriteCheck();
+					}
+					
+				} else {
+					key.cancel();
+				}
+
+			} catch (final Throwable e) {
+				
+				key.cancel();
+				
+				// Catch exceptions such as OOM and close connection if exists
+            	//so that the reactor can keep running!
+				if (con != null) {
+					con.close("Bad: " + e);
+				}
+				
+				LOGGER.error("caught err: ", e);
+			}
+		}
+		
+		protected void flushCorked() {
+			for (int i = 0; i < corkedCons.size(); i++) {
+				try {
+					corkedCons.get(i).flushCork();
+				} catch (Throwable e) {
+					LOGGER.error(name +" flush err: ", e);
+				}
+			}
+			corkedCons.clear();
+		}
+		
+		// 注册 IO 读写事件
+		protected void processPendingQueue(Selector selector) {
+			AbstractConnection c = null;
+			while ((c = pendingQueue.poll()) != null) {
+				try {
+					c.register(selector);
+				} catch (Exception e) {
+					LOGGER.warn("register error ", e);
+					c.close("register err");
+				}
+			}
+		}
+	}
+	
+	// IO/RW 线程
+	private final class RW extends AbstractRW {
+        
+		private RW() throws IOException {
+			super();
+		}
 
 		@Override
 		public void run() {
@@ -71,6 +188,8 @@ public final class NIOReactor {
 			final Selector selector = this.selector;
 			long ioTimes = 0;
 			
+			CORKED_CONS.set( corkedCons );
+			
 			for (;;) {
 				++reactCount;
 				try {
@@ -92,59 +211,9 @@ public final class NIOReactor {
 						processPendingQueue(selector); 		// 处理注册队列
 					}
 					
-				
-					
-
 					ioTimes++;
 					for (final SelectionKey key : keys) {
-						
-						AbstractConnection con = null;
-						
-						try {
-							
-							Object att = key.attachment();
-							if ( att != null ) {
-								
-								con = (AbstractConnection) att;
-								
-								int ops = key.readyOps();
-								
-								// 处理读
-								if ( (ops & SelectionKey.OP_READ) == SelectionKey.OP_READ ) {									
-									try {
-										con.asynRead();
-									} catch (IOException  e) {
-										con.close("program err:" + e.toString());										 
-										continue;
-										
-									} catch (Exception e) {
-										LOGGER.warn("caught err:", e);
-										con.close("program err:" + e.toString());
-										continue;
-									}
-								}								
-								
-								// 处理写
-								if ( (ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE ) {
-									con.doNextWriteCheck();
-								}
-								
-							} else {
-								key.cancel();
-							}
-
-						} catch (final Throwable e) {
-							
-							key.cancel();
-							
-							// Catch exceptions such as OOM and close connection if exists
-                        	//so that the reactor can keep running!
-							if (con != null) {
-								con.close("Bad: " + e);
-							}
-							
-							LOGGER.error("caught err: ", e);
-						}
+						processKey( key );
 					}
 					
 					keys.clear();
@@ -152,21 +221,103 @@ public final class NIOReactor {
 				} catch (Throwable e) {
 					// Catch exceptions such as OOM so that the reactor can keep running!
 					LOGGER.error(name +" caught err: ", e);
-				} 
+					
+				} finally {
+					// 批次结束，合并的写统一 flush
+					if ( !corkedCons.isEmpty() ) {
+						flushCorked();
+					}
+				}
 			}
 		}
+	}
+	
+	/**
+	 * IO/RW 线程
+	 * 
+	 * 1、数组化的 selectedKeys， 避免 HashSet 的 hash 与 Iterator 开销
+	 * 2、注册队列每轮批量处理， 只有 reactor 阻塞在 select 上时才 wakeup
+	 * 3、阻塞 select 之前先 selectNow 自旋 SPIN_COUNT 次， 减少繁忙时的阻塞与唤醒
+	 */
+	private final class SpinRW extends AbstractRW {
 		
-		// 注册 IO 读写事件
-		private void processPendingQueue(Selector selector) {
-			AbstractConnection c = null;
-			while ((c = pendingQueue.poll()) != null) {
+		private final SelectedSelectionKeySet selectedKeys = new SelectedSelectionKeySet();
+		private final boolean isOptimized;
+		
+		// reactor 是否阻塞或即将阻塞在 select 上
+		private final AtomicBoolean isBlocking = new AtomicBoolean(false);
+		
+		private SpinRW() throws IOException {
+			super();
+			this.isOptimized = SelectorUtil.replaceSelectedKeys(selector, selectedKeys);
+		}
+		
+		@Override
+		protected void wakeupForRegister() {
+			if ( isBlocking.compareAndSet(true, false) ) {
+				selector.wakeup();
+			}
+		}
+		
+		@Override
+		public void run() {
+			
+			final Selector selector = this.selector;
+			
+			CORKED_CONS.set( corkedCons );
+			
+			for (;;) {
+				++reactCount;
 				try {
-					c.register(selector);
-				} catch (Exception e) {
-					LOGGER.warn("register error ", e);
-					c.close("register err");
+					
+					// 处理注册队列
+					if ( !pendingQueue.isEmpty() ) {
+						processPendingQueue(selector);
+					}
+					
+					int n = 0;
+					for (int i = 0; i < SPIN_COUNT && n == 0; i++) {
+						n = selector.selectNow();
+					}
+					
+					if ( n == 0 ) {
+						isBlocking.set( true );
+						
+						// 避免与 postRegister 竞争
+						if ( !pendingQueue.isEmpty() ) {
+							isBlocking.set( false );
+							continue;
+						}
+						
+						selector.select( SELECTOR_TIMEOUT );
+						isBlocking.set( false );
+					}
+					
+					if ( isOptimized ) {
+						for (int i = 0; i < selectedKeys.size(); i++) {
+							processKey( selectedKeys.get(i) );
+						}
+						selectedKeys.reset();
+						
+					} else {
+						final Set<SelectionKey> keys = selector.selectedKeys();
+						for (final SelectionKey key : keys) {
+							processKey( key );
+						}
+						keys.clear();
+					}
+					
+				} catch (Throwable e) {
+					// Catch exceptions such as OOM so that the reactor can keep running!
+					LOGGER.error(name +" caught err: ", e);
+					
+				} finally {
+					// 批次结束，合并的写统一 flush
+					if ( !corkedCons.isEmpty() ) {
+						flushCorked();
+					}
 				}
 			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -14,9 +14,13 @@ public class NIOReactorPool {
 	private volatile int nextReactor;	// 上一次处理连接的reactor，使用volatile保证多线程操作时内存可见
 
 	public NIOReactorPool(String name, int poolSize) throws IOException {
+		this(name, poolSize, false);
+	}
+	
+	public NIOReactorPool(String name, int poolSize, boolean isSpin) throws IOException {
 		reactors = new NIOReactor[poolSize];
 		for (int i = 0; i < poolSize; i++) {
-			NIOReactor reactor = new NIOReactor(name + "-" + i);
+			NIOReactor reactor = new NIOReactor(name + "-" + i, isSpin);
 			reactors[i] = reactor;
 			reactor.startup();
 		}
@@ -25,6 +29,17 @@ public class NIOReactorPool {
 	public NIOReactor[] getAllReactors() {
 		return reactors;
 	}
+	
+	public NIOReactor getReactor(String name) {
+		if ( name != null ) {
+			for (NIOReactor reactor : reactors) {
+				if ( reactor.getName().equals( name ) ) {
+					return reactor;
+				}
+			}
+		}
+		return null;
+	}
 
 	/**
 	 * 获取下一个处理连接的reactor, 轮询策略
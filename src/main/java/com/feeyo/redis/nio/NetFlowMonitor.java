@@ -61,6 +61,15 @@ public class NetFlowMonitor {
 	public boolean isOverproof() {
 		return overproof;
 	}
+	
+	public long getMaxByteSize() {
+		return maxByteSize;
+	}
+	
+	// 当前秒内剩余的流量
+	public long getRemainingBytes() {
+		return maxByteSize > 0 ? arrs[ currentIndex ].get() : 0;
+	}
 
 	
     private final long decrement(AtomicLong atomicLong, long delta) {
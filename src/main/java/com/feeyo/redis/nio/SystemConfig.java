@@ -23,6 +23,19 @@ public final class SystemConfig {
 	private int frontSocketNoDelay = 1; 				// 0=false
 	private int backSocketNoDelay  = 1; 				// 1=true
 	
+	private int frontZeroCopyDecode = 0;				// 1=前端请求在 readBuffer 上直接解析
+	private int frontWriteCork = 0;						// 1=前端应答在 reactor 一个批次内合并写出
+	private int backendReactorAffinity = 0;				// 1=后端连接池按 reactor 拆分， 优先使用与前端同一 reactor 的连接
+	private int backendMultiplex = 0;					// 每个节点共享的多路复用连接数， 0=关闭
+	private int singleFlight = 0;						// 1=相同的并发读请求合并为一次后端访问
+	private long replicaMaxLag = 1024 * 1024;			// 集群从节点读， 允许落后主节点的最大复制偏移量(字节)
+	private int segmentNodeTimeout = 0;					// MGET/MSET/DEL 扇出时单个节点的应答期限(毫秒)， 0=不限
+	private int segmentNilOnFailure = 0;				// MGET 遇到失败节点时， 1=对应 key 返回 nil， 0=整体返回错误
+	private int pipelineSpillThreshold = 16 * 1024;		// pipeline 单条应答超过该字节数写入虚拟内存
+	private long pipelineMemoryBudget = 64 * 1024 * 1024;	// pipeline 应答暂存在 buffer 中的总字节数上限
+	private long writeQueueHighWatermark = 4 * 1024 * 1024;	// 单连接写队列超过该字节数暂停读， 0=不限
+	private long writeQueueLowWatermark = 1024 * 1024;		// 写队列降至该字节数恢复读
+	
 	public SystemConfig() {
 
 	}
@@ -142,4 +155,100 @@ public final class SystemConfig {
 	public void setBackSocketNoDelay(int backSocketNoDelay) {
 		this.backSocketNoDelay = backSocketNoDelay;
 	}
-}
\ No newline at end of file
+
+	public int getFrontZeroCopyDecode() {
+		return frontZeroCopyDecode;
+	}
+
+	public void setFrontZeroCopyDecode(int frontZeroCopyDecode) {
+		this.frontZeroCopyDecode = frontZeroCopyDecode;
+	}
+
+	public int getFrontWriteCork() {
+		return frontWriteCork;
+	}
+
+	public void setFrontWriteCork(int frontWriteCork) {
+		this.frontWriteCork = frontWriteCork;
+	}
+
+	public int getBackendReactorAffinity() {
+		return backendReactorAffinity;
+	}
+
+	public void setBackendReactorAffinity(int backendReactorAffinity) {
+		this.backendReactorAffinity = backendReactorAffinity;
+	}
+
+	public int getBackendMultiplex() {
+		return backendMultiplex;
+	}
+
+	public void setBackendMultiplex(int backendMultiplex) {
+		this.backendMultiplex = backendMultiplex;
+	}
+
+	public int getSingleFlight() {
+		return singleFlight;
+	}
+
+	public void setSingleFlight(int singleFlight) {
+		this.singleFlight = singleFlight;
+	}
+
+	public int getPipelineSpillThreshold() {
+		return pipelineSpillThreshold;
+	}
+
+	public void setPipelineSpillThreshold(int pipelineSpillThreshold) {
+		this.pipelineSpillThreshold = pipelineSpillThreshold;
+	}
+
+	public long getPipelineMemoryBudget() {
+		return pipelineMemoryBudget;
+	}
+
+	public void setPipelineMemoryBudget(long pipelineMemoryBudget) {
+		this.pipelineMemoryBudget = pipelineMemoryBudget;
+	}
+
+	public long getWriteQueueHighWatermark() {
+		return writeQueueHighWatermark;
+	}
+
+	public void setWriteQueueHighWatermark(long writeQueueHighWatermark) {
+		this.writeQueueHighWatermark = writeQueueHighWatermark;
+	}
+
+	public long getWriteQueueLowWatermark() {
+		return writeQueueLowWatermark;
+	}
+
+	public void setWriteQueueLowWatermark(long writeQueueLowWatermark) {
+		this.writeQueueLowWatermark = writeQueueLowWatermark;
+	}
+
+	public int getSegmentNodeTimeout() {
+		return segmentNodeTimeout;
+	}
+
+	public void setSegmentNodeTimeout(int segmentNodeTimeout) {
+		this.segmentNodeTimeout = segmentNodeTimeout;
+	}
+
+	public int getSegmentNilOnFailure() {
+		return segmentNilOnFailure;
+	}
+
+	public void setSegmentNilOnFailure(int segmentNilOnFailure) {
+		this.segmentNilOnFailure = segmentNilOnFailure;
+	}
+
+	public long getReplicaMaxLag() {
+		return replicaMaxLag;
+	}
+
+	public void setReplicaMaxLag(long replicaMaxLag) {
+		this.replicaMaxLag = replicaMaxLag;
+	}
+}
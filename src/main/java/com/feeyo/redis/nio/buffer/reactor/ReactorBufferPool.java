@@ -0,0 +1,385 @@
+package com.feeyo.redis.nio.buffer.reactor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.feeyo.redis.nio.buffer.BufferPool;
+
+/**
+ * 按 reactor 线程亲和的堆外内存池
+ *
+ * 1、每个 reactor 线程（线程名以 LOCAL_BUF_THREAD_PREX 开头）每个 size 持有一个本地弹匣，分配、回收无锁、无 CAS
+ * 2、弹匣溢出时整批（batch）放入共享仓库，弹匣为空时整批取回，一次 CAS 搬运一批 buffer
+ * 3、非 reactor 线程回收的 buffer 放入无锁的归还队列，由 reactor 在 miss 时批量取回
+ *
+ * 注意：不再维护 address -> reference 的映射，重复回收同一个 buffer 由调用方保证不会发生
+ */
+public class ReactorBufferPool extends BufferPool {
+
+	private static Logger LOGGER = LoggerFactory.getLogger( ReactorBufferPool.class );
+
+	private static final int MIN_MAGAZINE_SIZE = 8;
+	private static final int MAX_MAGAZINE_SIZE = 1024;
+
+	private final int[] chunkSizes;
+	private final SizeClass[] sizeClasses;
+
+	private final int magazineSize;
+	private final int batchSize;
+
+	// 非 reactor 线程的占位
+	private final ReactorCache NON_REACTOR = new ReactorCache("non-reactor", 0);
+
+	private final CopyOnWriteArrayList<ReactorCache> caches = new CopyOnWriteArrayList<ReactorCache>();
+
+	private final ThreadLocal<ReactorCache> localCache = new ThreadLocal<ReactorCache>() {
+		@Override
+		protected ReactorCache initialValue() {
+			Thread thread = Thread.currentThread();
+			if ( !thread.getName().startsWith( LOCAL_BUF_THREAD_PREX ) ) {
+				return NON_REACTOR;
+			}
+
+			ReactorCache cache = new ReactorCache(thread.getName(), sizeClasses.length);
+			caches.add( cache );
+			return cache;
+		}
+	};
+
+	private final AtomicLong sharedOptsCount = new AtomicLong(0);
+
+	public ReactorBufferPool(long minBufferSize, long maxBufferSize, int decomposeBufferSize,
+			int minChunkSize, int[] increments, int maxChunkSize, int threadLocalPercent) {
+
+		super(minBufferSize, maxBufferSize, decomposeBufferSize, minChunkSize, increments, maxChunkSize);
+
+		int classCount;
+		if (increments.length > 1) {
+			classCount = increments.length;
+		} else {
+			classCount = maxChunkSize / increments[0];
+		}
+
+		this.chunkSizes = new int[ classCount ];
+		this.sizeClasses = new SizeClass[ classCount ];
+
+		int chunkSize = 0;
+		for (int i = 0; i < classCount; i++) {
+			chunkSize += increments[i >= increments.length ? 0 : i];
+			chunkSizes[i] = chunkSize;
+			sizeClasses[i] = new SizeClass( chunkSize );
+		}
+
+		// 弹匣容量， 按 threadLocalPercent 折算到每个 size
+		long perClassSize = minBufferSize / classCount;
+		long localSize = perClassSize * threadLocalPercent / 100;
+		int size = (int) Math.min(MAX_MAGAZINE_SIZE, localSize / chunkSizes[0]);
+		this.magazineSize = Math.max(MIN_MAGAZINE_SIZE, size);
+		this.batchSize = magazineSize >> 1;
+
+		// 预分配, 整批放入仓库
+		for (SizeClass sc : sizeClasses) {
+			int chunkCount = (int) (perClassSize / sc.chunkSize);
+			while ( chunkCount > 0 ) {
+				int n = Math.min(chunkCount, batchSize);
+				ByteBuffer[] batch = new ByteBuffer[ n ];
+				for (int j = 0; j < n; j++) {
+					batch[j] = ByteBuffer.allocateDirect( sc.chunkSize );
+				}
+				sc.count.addAndGet( n );
+				usedBufferSize.addAndGet( (long) n * sc.chunkSize );
+				sc.depot.offer( batch );
+				chunkCount -= n;
+			}
+		}
+	}
+
+	// 根据 size 寻找 size class
+	private int classFor(int size) {
+		if (size <= minChunkSize)
+			return -1;
+
+		int idx = Arrays.binarySearch(chunkSizes, size);
+		if ( idx < 0 ) {
+			idx = -idx - 1;
+		}
+		return idx < chunkSizes.length ? idx : -1;
+	}
+
+	@Override
+	public ByteBuffer allocate(int size) {
+
+		int idx = classFor( size );
+		if ( idx == -1 ) {
+			return ByteBuffer.allocate( size );
+		}
+
+		ByteBuffer bb;
+		ReactorCache cache = localCache.get();
+		if ( cache != NON_REACTOR ) {
+			bb = cache.pop( idx );
+			if ( bb != null ) {
+				cache.hit++;
+			} else {
+				cache.miss++;
+				bb = refill(cache, idx);
+			}
+
+		} else {
+			bb = pollShared( idx );
+		}
+
+		if ( bb == null ) {
+			bb = create( sizeClasses[idx] );
+		}
+
+		// 堆内
+		if ( bb == null ) {
+			return ByteBuffer.allocate( size );
+		}
+
+		bb.clear();
+		return bb;
+	}
+
+	@Override
+	public void recycle(ByteBuffer buf) {
+		if (buf == null) {
+			return;
+		}
+
+		if ( !buf.isDirect() ) {
+			return;
+		}
+
+		int idx = classFor( buf.capacity() );
+		if ( idx == -1 || chunkSizes[idx] != buf.capacity() ) {
+			LOGGER.warn("Trying to put a buffer, not created by this pool! Will be just ignored");
+			return;
+		}
+
+		buf.clear();
+
+		ReactorCache cache = localCache.get();
+		if ( cache != NON_REACTOR ) {
+			if ( !cache.push(idx, buf) ) {
+				// 弹匣已满, 整批交给仓库
+				ByteBuffer[] batch = cache.drain(idx, batchSize);
+				sizeClasses[idx].depot.offer( batch );
+				sharedOptsCount.incrementAndGet();
+				cache.push(idx, buf);
+			}
+
+		} else {
+			sizeClasses[idx].returns.offer( buf );
+			sharedOptsCount.incrementAndGet();
+		}
+	}
+
+	// 本地弹匣为空，从归还队列、仓库中批量取回
+	private ByteBuffer refill(ReactorCache cache, int idx) {
+
+		SizeClass sc = sizeClasses[idx];
+
+		ByteBuffer bb;
+		int n = 0;
+		while ( n < batchSize && (bb = sc.returns.poll()) != null ) {
+			cache.push(idx, bb);
+			n++;
+		}
+
+		if ( n == 0 ) {
+			ByteBuffer[] batch = sc.depot.poll();
+			if ( batch != null ) {
+				for (ByteBuffer b : batch) {
+					cache.push(idx, b);
+				}
+				n = batch.length;
+			}
+		}
+
+		if ( n > 0 ) {
+			sharedOptsCount.incrementAndGet();
+		}
+		return cache.pop( idx );
+	}
+
+	// 非 reactor 线程
+	private ByteBuffer pollShared(int idx) {
+		SizeClass sc = sizeClasses[idx];
+		ByteBuffer bb = sc.returns.poll();
+		if ( bb == null ) {
+			ByteBuffer[] batch = sc.depot.poll();
+			if ( batch != null ) {
+				bb = batch[0];
+				for (int i = 1; i < batch.length; i++) {
+					sc.returns.offer( batch[i] );
+				}
+			}
+		}
+
+		if ( bb != null ) {
+			sharedOptsCount.incrementAndGet();
+		}
+		return bb;
+	}
+
+	private ByteBuffer create(SizeClass sc) {
+		// 容量阀值
+		for (;;) {
+			long used = usedBufferSize.get();
+			if ( used + sc.chunkSize >= maxBufferSize ) {
+				return null;
+			}
+			if ( usedBufferSize.compareAndSet(used, used + sc.chunkSize) ) {
+				break;
+			}
+		}
+
+		try {
+			ByteBuffer bb = ByteBuffer.allocateDirect( sc.chunkSize );
+			sc.count.incrementAndGet();
+			return bb;
+		} catch (OutOfMemoryError oom) {
+			LOGGER.warn("Direct buffer OOM occurs: so allocate from heap", oom);
+			usedBufferSize.addAndGet( -sc.chunkSize );
+			return null;
+		}
+	}
+
+	public List<ReactorCache> getReactorCaches() {
+		return new ArrayList<ReactorCache>( caches );
+	}
+
+	public int getMagazineSize() {
+		return magazineSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public long getSharedOptsCount() {
+		return sharedOptsCount.get();
+	}
+
+	@Override
+	public long capacity() {
+		return this.maxBufferSize;
+	}
+
+	@Override
+	public long size() {
+		return this.usedBufferSize.get();
+	}
+
+	@Override
+	public ConcurrentHashMap<Long, Long> getNetDirectMemoryUsage() {
+		return null;
+	}
+
+
+	/**
+	 * 共享部分， 仓库存放整批的 buffer，归还队列存放非 reactor 线程回收的 buffer
+	 */
+	private static class SizeClass {
+
+		final int chunkSize;
+		final AtomicLong count = new AtomicLong(0);
+
+		final ConcurrentLinkedQueue<ByteBuffer[]> depot = new ConcurrentLinkedQueue<ByteBuffer[]>();
+		final ConcurrentLinkedQueue<ByteBuffer> returns = new ConcurrentLinkedQueue<ByteBuffer>();
+
+		SizeClass(int chunkSize) {
+			this.chunkSize = chunkSize;
+		}
+	}
+
+	/**
+	 * reactor 线程本地的弹匣， 只由所属线程读写； 统计项由管理命令跨线程读取
+	 */
+	public class ReactorCache {
+
+		private final String threadName;
+
+		private final ByteBuffer[][] magazines;
+		private final int[] sizes;
+
+		private volatile long hit;
+		private volatile long miss;
+
+		ReactorCache(String threadName, int classCount) {
+			this.threadName = threadName;
+			this.magazines = new ByteBuffer[ classCount ][];
+			this.sizes = new int[ classCount ];
+		}
+
+		ByteBuffer pop(int idx) {
+			int n = sizes[idx];
+			if ( n == 0 ) {
+				return null;
+			}
+
+			ByteBuffer[] magazine = magazines[idx];
+			ByteBuffer bb = magazine[ --n ];
+			magazine[ n ] = null;
+			sizes[idx] = n;
+			return bb;
+		}
+
+		boolean push(int idx, ByteBuffer bb) {
+			ByteBuffer[] magazine = magazines[idx];
+			if ( magazine == null ) {
+				magazine = magazines[idx] = new ByteBuffer[ magazineSize ];
+			}
+
+			int n = sizes[idx];
+			if ( n == magazine.length ) {
+				return false;
+			}
+			magazine[ n ] = bb;
+			sizes[idx] = n + 1;
+			return true;
+		}
+
+		ByteBuffer[] drain(int idx, int count) {
+			ByteBuffer[] batch = new ByteBuffer[ count ];
+			for (int i = 0; i < count; i++) {
+				batch[i] = pop( idx );
+			}
+			return batch;
+		}
+
+		public String getThreadName() {
+			return threadName;
+		}
+
+		public long getHit() {
+			return hit;
+		}
+
+		public long getMiss() {
+			return miss;
+		}
+
+		// 近似值，跨线程读取
+		public int getCachedCount() {
+			int count = 0;
+			for (int n : sizes) {
+				count += n;
+			}
+			return count;
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.feeyo.redis.nio.util;
+
+import java.nio.channels.SelectionKey;
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * 替换 SelectorImpl 内部 HashSet 的数组实现， select 时只做追加，不计算 hash、不产生 Iterator
+ *
+ * 仅供 reactor 线程使用，按下标遍历后调用 reset()
+ */
+public final class SelectedSelectionKeySet extends AbstractSet<SelectionKey> {
+
+	private SelectionKey[] keys = new SelectionKey[ 1024 ];
+	private int size;
+
+	@Override
+	public boolean add(SelectionKey key) {
+		if (key == null) {
+			return false;
+		}
+
+		if ( size == keys.length ) {
+			SelectionKey[] newKeys = new SelectionKey[ size << 1 ];
+			System.arraycopy(keys, 0, newKeys, 0, size);
+			keys = newKeys;
+		}
+		keys[ size++ ] = key;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return false;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<SelectionKey> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	public SelectionKey get(int i) {
+		return keys[i];
+	}
+
+	public void reset() {
+		for (int i = 0; i < size; i++) {
+			keys[i] = null;
+		}
+		size = 0;
+	}
+}
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.ConcurrentModificationException;
@@ -60,5 +61,29 @@ public class SelectorUtil {
         return newSelector;
     }
     
-    
+    /**
+     * 用数组实现的 SelectedSelectionKeySet 替换 sun.nio.ch.SelectorImpl 的 selectedKeys，
+     * 不支持的 JDK 上返回 false， 调用方继续使用原生的 selectedKeys()
+     */
+    public static boolean replaceSelectedKeys(Selector selector, SelectedSelectionKeySet keySet) {
+    	try {
+    		Class<?> selectorImplClass = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+    		if ( !selectorImplClass.isAssignableFrom( selector.getClass() ) ) {
+    			return false;
+    		}
+    		
+    		Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+    		Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+    		selectedKeysField.setAccessible(true);
+    		publicSelectedKeysField.setAccessible(true);
+    		
+    		selectedKeysField.set(selector, keySet);
+    		publicSelectedKeysField.set(selector, keySet);
+    		return true;
+    		
+    	} catch (Throwable e) {
+    		LOGGER.warn("Failed to replace the selected key set, {}", e.toString());
+    		return false;
+    	}
+    }
 }
@@ -81,6 +81,10 @@ public class CommitLog {
 		return this.mappedFileQueue.getMaxOffset();
 	}
 	
+	public long getMappedMemorySize() {
+		return this.mappedFileQueue.getMappedMemorySize();
+	}
+	
     public long remainHowManyDataToFlush() {
         return this.mappedFileQueue.remainHowManyDataToFlush();
     }
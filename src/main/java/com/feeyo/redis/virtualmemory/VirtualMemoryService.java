@@ -162,6 +162,16 @@ public class VirtualMemoryService  {
 		return null;
 	}
 	
+	// CommitLog 已映射的文件大小
+	public long getCommitLogMappedSize() {
+		return commitLog.getMappedMemorySize();
+	}
+	
+	// CommitLog 未清理的数据大小
+	public long getCommitLogSize() {
+		return commitLog.getMaxOffset() - commitLog.getMinOffset();
+	}
+	
 	public byte[] getMessageBodyAndMarkAsConsumed(long commitLogOffset, int size) {
 		byte[] data =  getMessage(commitLogOffset, size).getBody();
 		this.markAsConsumed(commitLogOffset, size);